@@ -0,0 +1,101 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing the <code>PLATFORM</code> and <code>VIRTUAL</code> execution modes of <code>ThreadPool</code> on a blocking workload. <br>
+ * Each task sleeps for a fixed time to simulate a JDBC or HTTP call, an operation is executing all tasks and waiting for them to complete. The
+ * <code>PLATFORM</code> pool has <code>platformThreads</code> threads, the <code>VIRTUAL</code> pool may start one thread per task. On a JVM without
+ * virtual threads the <code>VIRTUAL</code> pool uses platform threads. <br>
+ * Run using <code>mvn -Pjmh test-compile exec:exec -Djmh.args="ExecutionModeBenchmark"</code>.
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExecutionModeBenchmark {
+
+    /**
+     * The pool under test.
+     */
+    @State(Scope.Benchmark)
+    public static class PoolState {
+        @Param({ "PLATFORM", "VIRTUAL" })
+        public ExecutionMode mode;
+
+        @Param({ "2000" })
+        public int tasks;
+
+        @Param({ "200" })
+        public int platformThreads;
+
+        @Param({ "20" })
+        public long blockMillis;
+
+        private ThreadPool threadPool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int maxThreads = this.mode == ExecutionMode.VIRTUAL ? this.tasks : this.platformThreads;
+            this.threadPool = new ThreadPool(this.mode, maxThreads, this.tasks);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            this.threadPool.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A task blocking for a while before counting down a latch.
+     */
+    private static class BlockingTask implements Runnable {
+        private final CountDownLatch latch;
+        private final long blockMillis;
+
+        private BlockingTask(CountDownLatch latch, long blockMillis) {
+            this.latch = latch;
+            this.blockMillis = blockMillis;
+        }
+
+        public void run() {
+            try {
+                Thread.sleep(this.blockMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            this.latch.countDown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public void blockingTasks(PoolState state) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(state.tasks);
+        BlockingTask task = new BlockingTask(latch, state.blockMillis);
+        for (int i = 0; i < state.tasks; i++) {
+            state.threadPool.execute(task);
+        }
+        latch.await();
+    }
+}
@@ -0,0 +1,120 @@
+package org.dmonix.thread;
+
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * JMH benchmark of the acquire/return throughput of the lock-free <code>IdleThreadStack</code> measured against the previous implementation, a
+ * <code>Vector</code> guarded by the pool monitor. <br>
+ * Each benchmark thread returns a thread to the idle structure and acquires a thread from it. Both structures are polled without blocking and an empty
+ * structure is retried after <code>Thread.yield()</code> in the same manner, so only the cost of the structures themselves is compared. <br>
+ * Run using <code>mvn -Pjmh test-compile exec:exec -Djmh.args="IdleThreadStackBenchmark -t 16"</code>, <code>-t</code> sets the number of threads.
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IdleThreadStackBenchmark {
+
+    /**
+     * An idle structure that is acquired from and returned to.
+     */
+    private interface IdleStructure {
+        void returnThread(PooledThread t);
+
+        /**
+         * @return An idle thread, <code>null</code> if there is none
+         */
+        PooledThread poll();
+    }
+
+    /**
+     * The previous implementation of the idle threads in <code>ThreadPool</code>.
+     */
+    private static class MonitorIdleList implements IdleStructure {
+        private List<PooledThread> pool = new Vector<PooledThread>();
+
+        public synchronized void returnThread(PooledThread t) {
+            this.pool.add(t);
+
+            if (this.pool.size() == 1)
+                notifyAll();
+        }
+
+        public synchronized PooledThread poll() {
+            return this.pool.isEmpty() ? null : this.pool.remove(0);
+        }
+    }
+
+    /**
+     * The lock-free stack, the thread objects are never started so signalling them only costs the CAS operations.
+     */
+    private static class LockFreeIdleStack implements IdleStructure {
+        private IdleThreadStack stack = new IdleThreadStack();
+
+        public void returnThread(PooledThread t) {
+            this.stack.push(t);
+        }
+
+        public PooledThread poll() {
+            return this.stack.signal();
+        }
+    }
+
+    /**
+     * The structure under test, holding one idle thread per benchmark thread.
+     */
+    @State(Scope.Benchmark)
+    public static class StructureState {
+        /** <code>MONITOR</code> or <code>LOCK_FREE</code>. */
+        @Param({ "MONITOR", "LOCK_FREE" })
+        public String structure;
+
+        private IdleStructure idle;
+        private ThreadPool owner;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams params) {
+            this.idle = "MONITOR".equals(this.structure) ? new MonitorIdleList() : new LockFreeIdleStack();
+            this.owner = new ThreadPool(0);
+            for (int i = 0; i < params.getThreads(); i++)
+                this.idle.returnThread(new PooledThread(this.owner, "bench" + i));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            this.owner.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(8)
+    public PooledThread acquireAndReturn(StructureState state) {
+        PooledThread t;
+        while ((t = state.idle.poll()) == null)
+            Thread.yield();
+        state.idle.returnThread(t);
+        return t;
+    }
+}
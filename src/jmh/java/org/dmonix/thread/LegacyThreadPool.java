@@ -0,0 +1,116 @@
+package org.dmonix.thread;
+
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * The original implementation of <code>ThreadPool</code> kept as the baseline for the benchmarks. <br>
+ * The idle threads are kept in a <code>Vector</code>, a caller of <code>getThread()</code> waits on the pool monitor while the pool is empty and each thread
+ * waits on a monitor of its own until it is given a runnable. <br>
+ * The threads are daemon threads as the pool can't be shut down.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class LegacyThreadPool {
+    private final List<LegacyPooledThread> pool = new Vector<LegacyPooledThread>();
+
+    /**
+     * Creates a pool with a fixed amount of threads.
+     * 
+     * @param threadCount
+     *            The number of threads
+     */
+    public LegacyThreadPool(int threadCount) {
+        for (int i = 0; i < threadCount; i++) {
+            LegacyPooledThread t = new LegacyPooledThread(this, "LegacyPooledThread" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Executes the runnable on a thread from the pool, waiting for a free thread if necessary.
+     * 
+     * @param runnable
+     *            The runnable to execute
+     */
+    public void execute(Runnable runnable) {
+        LegacyPooledThread t = this.getThread();
+        t.setRunnable(runnable);
+        t.execute();
+    }
+
+    /**
+     * Get a thread from the pool. <br>
+     * If there are no more free threads the method is put on hold using <code>wait()</code>.
+     * 
+     * @return The thread
+     */
+    public synchronized LegacyPooledThread getThread() {
+        while (this.pool.size() == 0) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+            }
+        }
+        return this.pool.remove(0);
+    }
+
+    /**
+     * Returns a thread to the pool.
+     * 
+     * @param t
+     *            The thread
+     */
+    synchronized void returnThread(LegacyPooledThread t) {
+        this.pool.add(t);
+        if (this.pool.size() == 1)
+            notifyAll();
+    }
+
+    /**
+     * The original <code>PooledThread</code>.
+     */
+    static class LegacyPooledThread extends Thread {
+        private final Object mutex = new Object();
+        private final LegacyThreadPool pool;
+        private Runnable runnable = null;
+        private boolean running = false;
+
+        LegacyPooledThread(LegacyThreadPool pool, String name) {
+            super(name);
+            this.pool = pool;
+        }
+
+        void setRunnable(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        void execute() {
+            synchronized (this.mutex) {
+                this.running = true;
+                this.mutex.notifyAll();
+            }
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    this.pool.returnThread(this);
+
+                    synchronized (this.mutex) {
+                        while (!this.running)
+                            this.mutex.wait();
+                    }
+
+                    this.running = false;
+                    this.runnable.run();
+                    this.runnable = null;
+                } catch (InterruptedException ex) {
+                } catch (Exception ex) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of <code>ThreadPool</code> measured against the original Vector and monitor based pool, <code>LegacyThreadPool</code>. <br>
+ * Run using <code>mvn -Pjmh test-compile exec:exec</code>, JMH options are given using <code>-Djmh.args="..."</code>.
+ * <ul>
+ * <li><code>handOff</code> - The latency from a task is submitted to an idle pool until it has been executed.</li>
+ * <li><code>throughput</code> - The rate of executed tasks with several threads submitting tasks concurrently.</li>
+ * <li><code>emptyPoolWakeUp</code> - The cost of submitting a task while all threads are busy, the task has to wait for a thread to return to the pool.</li>
+ * </ul>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ThreadPoolBenchmark {
+
+    /** The number of tasks each submitter executes per operation in the throughput benchmark. */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The pool under test.
+     */
+    @State(Scope.Benchmark)
+    public static class PoolState {
+        /** <code>LEGACY</code> or any of the execution modes of <code>ThreadPool</code>. */
+        @Param({ "LEGACY", "PLATFORM", "VIRTUAL", "WORK_STEALING" })
+        public String pool;
+
+        @Param({ "4" })
+        public int threadCount;
+
+        private Executor executor;
+        private ThreadPool threadPool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if ("LEGACY".equals(this.pool)) {
+                final LegacyThreadPool legacy = new LegacyThreadPool(this.threadCount);
+                this.executor = new Executor() {
+                    public void execute(Runnable command) {
+                        legacy.execute(command);
+                    }
+                };
+            } else {
+                ExecutionMode mode = ExecutionMode.valueOf(this.pool);
+                this.threadPool = mode == ExecutionMode.PLATFORM ? new ThreadPool(this.threadCount) : new ThreadPool(mode, this.threadCount,
+                        ThreadPool.DEFAULT_QUEUE_CAPACITY);
+                this.executor = this.threadPool;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            if (this.threadPool != null)
+                this.threadPool.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A task counting down a latch.
+     */
+    private static class CountDownTask implements Runnable {
+        private final CountDownLatch latch;
+
+        private CountDownTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void run() {
+            this.latch.countDown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void handOff(PoolState state) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        state.executor.execute(new CountDownTask(latch));
+        latch.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(4)
+    public void throughput(PoolState state) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BATCH_SIZE);
+        CountDownTask task = new CountDownTask(latch);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            state.executor.execute(task);
+        }
+        latch.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void emptyPoolWakeUp(PoolState state) throws InterruptedException {
+        // one task more than there are threads, the last task finds no idle thread in the pool
+        CountDownLatch latch = new CountDownLatch(state.threadCount + 1);
+        CountDownTask task = new CountDownTask(latch);
+        for (int i = 0; i <= state.threadCount; i++) {
+            state.executor.execute(task);
+        }
+        latch.await();
+    }
+}
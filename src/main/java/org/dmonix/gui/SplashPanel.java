@@ -9,12 +9,15 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.MouseEvent;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JWindow;
+import javax.swing.SwingUtilities;
 
+import org.dmonix.thread.Scheduler;
 import org.dmonix.util.ImageLoaderUtil;
 
 /**
@@ -32,6 +35,9 @@ import org.dmonix.util.ImageLoaderUtil;
 public class SplashPanel extends JPanel {
     private static final long serialVersionUID = 7526472295622776147L;
 
+    /** The time in milliseconds the splash is shown by <code>showSplash</code>. */
+    private static final long SPLASH_TIME = 5000;
+
     private JWindow splashWindow;
 
     // the size of the panel
@@ -84,7 +90,8 @@ public class SplashPanel extends JPanel {
 
     /**
      * Shows the DMoniX splashpanel. <br>
-     * If the system parameter <code>dm.nosplash</code> is set to <code>true</code> no splash is displayed.
+     * If the system parameter <code>dm.nosplash</code> is set to <code>true</code> no splash is displayed. <br>
+     * The method returns immediately, the splash is closed after five seconds.
      * 
      * @param productName
      *            The name of the product, software
@@ -98,17 +105,13 @@ public class SplashPanel extends JPanel {
             return;
 
         SplashPanel splash = new SplashPanel(productName, majorVersion, minorVersion, false);
-        try {
-            Thread.sleep(5000);
-        } catch (InterruptedException ex) {
-        }
-
-        splash.close();
+        closeLater(splash);
     }
 
     /**
      * Shows the DMoniX splashpanel. <br>
-     * If the system parameter <code>dm.nosplash</code> is set to <code>true</code> no splash is displayed.
+     * If the system parameter <code>dm.nosplash</code> is set to <code>true</code> no splash is displayed. <br>
+     * The method returns immediately, the splash is closed after five seconds.
      * 
      * @param productName
      *            The name of the product, software
@@ -122,12 +125,26 @@ public class SplashPanel extends JPanel {
             return;
 
         SplashPanel splash = new SplashPanel(productName, version, false);
-        try {
-            Thread.sleep(5000);
-        } catch (InterruptedException ex) {
-        }
+        closeLater(splash);
+    }
 
-        splash.close();
+    /**
+     * Closes the splash once it has been shown for the splash time. <br>
+     * The closing is scheduled using the shared <code>Scheduler</code> and performed on the event dispatch thread.
+     * 
+     * @param splash
+     *            The splash to close
+     */
+    private static void closeLater(final SplashPanel splash) {
+        Scheduler.getDefault().schedule(new Runnable() {
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        splash.close();
+                    }
+                });
+            }
+        }, SPLASH_TIME, TimeUnit.MILLISECONDS);
     }
 
     public SplashPanel(String productName, int majorVersion, int minorVersion) {
@@ -9,7 +9,8 @@ import java.util.Vector;
 
 /**
  * The class that monitors an inputstream for incoming objects. <br>
- * The class will create a thread that waits for incoming objects on the monitored input stream. <br>
+ * The class will create a thread that waits for incoming objects on the monitored input stream. Reading an object blocks until the whole object
+ * has arrived, the monitor therefore has a thread of its own instead of using the shared <code>Scheduler</code>. <br>
  * For each incoming object an event is propagated to each registered listener.
  * <p>
  * Copyright: Copyright (c) 2003
@@ -31,7 +32,7 @@ public class ObjectInputStreamMonitor {
 
     private List<ObjectInputStreamListener> listeners = new Vector<ObjectInputStreamListener>();
 
-    private ListenerThread listenerThread = new ListenerThread();
+    private ListenerThread listenerThread = null;
 
     private InputStream is = null;
 
@@ -41,7 +42,7 @@ public class ObjectInputStreamMonitor {
      * @param is
      *            The input stream to monitor
      * @param sleepTime
-     *            The time to sleep after each received object
+     *            The time in milliseconds to wait before reading the stream again once the end of the stream has been reached
      * @throws IOException
      */
     public ObjectInputStreamMonitor(InputStream is, int sleepTime) throws IOException {
@@ -49,7 +50,16 @@ public class ObjectInputStreamMonitor {
         this.sleepTime = sleepTime;
     }
 
-    public void start() {
+    /**
+     * Starts monitoring the input stream, a monitor can only be started once.
+     * 
+     * @throws IllegalStateException
+     *             If the monitor has already been started
+     */
+    public synchronized void start() {
+        if (this.listenerThread != null)
+            throw new IllegalStateException("The monitor has already been started");
+        this.listenerThread = new ListenerThread();
         this.listenerThread.start();
     }
 
@@ -74,14 +84,16 @@ public class ObjectInputStreamMonitor {
     }
 
     /**
-     * Will stop the listener thread and dispose this object.
+     * Will stop monitoring the input stream and dispose this object.
      */
-    public void dispose() {
-        this.listenerThread.interrupt();
+    public synchronized void dispose() {
+        if (this.listenerThread != null)
+            this.listenerThread.interrupt();
     }
 
     /**
-     * Internal thread for monitoring the input stream
+     * Internal thread for monitoring the input stream. <br>
+     * The thread blocks reading the stream, when the end of the stream is reached it sleeps and tries again.
      * <p>
      * Copyright: Copyright (c) 2003
      * </p>
@@ -93,6 +105,10 @@ public class ObjectInputStreamMonitor {
      * @since 1.0
      */
     private class ListenerThread extends Thread {
+        private ListenerThread() {
+            super("ObjectInputStreamMonitor");
+        }
+
         public void run() {
             try {
                 istream = new ObjectInputStream(is);
@@ -104,8 +120,9 @@ public class ObjectInputStreamMonitor {
                         }
                     } catch (EOFException eofEx) {
                         try {
-                            super.sleep(sleepTime);
+                            Thread.sleep(Math.max(sleepTime, 1));
                         } catch (InterruptedException ex1) {
+                            return;
                         }
                     }
                 }
@@ -0,0 +1,205 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dmonix.thread.ThreadPool;
+
+/**
+ * Executes queries asynchronously so a caller can run several independent queries at the same time. <br>
+ * Each query is executed by a thread of a bounded <code>ThreadPool</code>, the thread borrows a connection from the connection pool, executes the query,
+ * maps the rows using a <code>RowMapper</code> and returns the connection to the pool. The result is delivered through a <code>Future</code> and
+ * optionally a <code>QueryCallback</code>.
+ * <p>
+ * The parameters of a query are bound according to their type, see <code>RowCursor</code> for the supported types.
+ * </p>
+ * <p>
+ * The number of threads should not exceed the maximum size of the connection pool, a thread waiting for a connection gains nothing.
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see RowMapper
+ * @see QueryCallback
+ */
+public class AsyncQueryExecutor {
+    private static final Logger log = Logger.getLogger(AsyncQueryExecutor.class.getName());
+
+    private final JDBCConnectionPool pool;
+    private final ThreadPool executor;
+
+    /** If the executor was created by this instance and is to be shut down with it. */
+    private final boolean ownExecutor;
+
+    /**
+     * Constructs an executor with a thread pool of its own.
+     * 
+     * @param pool
+     *            The connection pool
+     * @param threads
+     *            The number of threads executing queries
+     */
+    public AsyncQueryExecutor(JDBCConnectionPool pool, int threads) {
+        this(pool, new ThreadPool(threads, ThreadPool.DEFAULT_QUEUE_CAPACITY), true);
+    }
+
+    /**
+     * Constructs an executor using a shared thread pool, the thread pool is not shut down by <code>shutdown()</code>.
+     * 
+     * @param pool
+     *            The connection pool
+     * @param executor
+     *            The thread pool executing the queries
+     */
+    public AsyncQueryExecutor(JDBCConnectionPool pool, ThreadPool executor) {
+        this(pool, executor, false);
+    }
+
+    private AsyncQueryExecutor(JDBCConnectionPool pool, ThreadPool executor, boolean ownExecutor) {
+        this.pool = pool;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * Executes a query asynchronously.
+     * 
+     * @param sql
+     *            The SQL
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters of the query
+     * @return The future result, a list with the mapped rows
+     * @throws RejectedExecutionException
+     *             If the query was rejected by the thread pool
+     */
+    public <T> Future<List<T>> query(String sql, RowMapper<T> mapper, Object... parameters) {
+        return this.query(sql, mapper, null, parameters);
+    }
+
+    /**
+     * Executes a query asynchronously and passes the outcome to a callback. <br>
+     * The callback is invoked by the thread executing the query before the future completes, it should therefore not block.
+     * 
+     * @param sql
+     *            The SQL
+     * @param mapper
+     *            The mapper of the rows
+     * @param callback
+     *            The callback, <code>null</code> if not used
+     * @param parameters
+     *            The parameters of the query
+     * @return The future result, a list with the mapped rows
+     * @throws RejectedExecutionException
+     *             If the query was rejected by the thread pool
+     */
+    public <T> Future<List<T>> query(final String sql, final RowMapper<T> mapper, final QueryCallback<List<T>> callback, final Object... parameters) {
+        return this.executor.submit(new Callable<List<T>>() {
+            public List<T> call() throws SQLException {
+                List<T> result;
+                try {
+                    result = execute(sql, mapper, parameters);
+                } catch (SQLException ex) {
+                    failed(callback, ex);
+                    throw ex;
+                } catch (RuntimeException ex) {
+                    failed(callback, ex);
+                    throw ex;
+                }
+                completed(callback, result);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Shuts down the thread pool if it was created by this executor, queued queries are still executed.
+     */
+    public void shutdown() {
+        if (this.ownExecutor)
+            this.executor.shutdown();
+    }
+
+    /**
+     * Get the thread pool executing the queries.
+     * 
+     * @return The thread pool
+     */
+    public ThreadPool getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Executes a query using a connection from the pool.
+     * 
+     * @param sql
+     *            The SQL
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters
+     * @return The mapped rows
+     * @throws SQLException
+     */
+    private <T> List<T> execute(String sql, RowMapper<T> mapper, Object[] parameters) throws SQLException {
+        JDBCConnection con = this.pool.getConnection();
+        try {
+            LoggablePreparedStatement stmt = con.prepareStatement(sql);
+            try {
+                Parameters.bind(stmt, parameters);
+                List<T> rows = new ArrayList<T>();
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    while (rs.next())
+                        rows.add(mapper.mapRow(rs, rows.size()));
+                } finally {
+                    rs.close();
+                }
+                return rows;
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            // ends the read transaction before the connection is returned, a failure must not replace the result or the failure of the query
+            try {
+                if (!con.getAutoCommit())
+                    con.rollback();
+            } catch (SQLException ex) {
+                log.log(Level.FINE, "Failed to end the transaction", ex);
+            }
+            try {
+                con.close();
+            } catch (SQLException ex) {
+                log.log(Level.WARNING, "Failed to return the connection", ex);
+            }
+        }
+    }
+
+    private static <T> void completed(QueryCallback<T> callback, T result) {
+        if (callback == null)
+            return;
+        try {
+            callback.completed(result);
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "The query callback failed", ex);
+        }
+    }
+
+    private static void failed(QueryCallback<?> callback, Throwable cause) {
+        if (callback == null)
+            return;
+        try {
+            callback.failed(cause);
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "The query callback failed", ex);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package org.dmonix.jdbc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column of a result set dump, holding the values of one block of rows. <br>
+ * The values are kept in primitive arrays that are reused for every block, the column knows how to read its values from a result set and how to write and
+ * read a block of values to and from a dump.
+ * <p>
+ * Integral values are written as variable length integers, strings are dictionary encoded, i.e. each distinct string is written once and then referred to by
+ * its index in the dictionary. A column with more distinct strings than <code>MAX_DICTIONARY_SIZE</code> writes the strings of the following blocks as they
+ * are.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ * @see ResultSetDumpWriter
+ * @see ResultSetDumpReader
+ */
+final class DumpColumn {
+
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte DOUBLE = 3;
+    static final byte BOOLEAN = 4;
+    static final byte DECIMAL = 5;
+    static final byte TIMESTAMP = 6;
+    static final byte BYTES = 7;
+    static final byte STRING = 8;
+
+    /** The maximum number of distinct strings of a dictionary encoded column. */
+    static final int MAX_DICTIONARY_SIZE = 65536;
+
+    private static final byte PLAIN_ENCODING = 0;
+    private static final byte DICTIONARY_ENCODING = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String label;
+    private final int sqlType;
+    private final byte kind;
+
+    private boolean[] nulls = new boolean[0];
+    private long[] longs;
+    private int[] ints;
+    private double[] doubles;
+    private Object[] objects;
+
+    /** The dictionary of a writer, <code>null</code> once the column has too many distinct strings. */
+    private Map<String, Integer> dictionary;
+
+    /** The dictionary of a reader. */
+    private List<String> entries;
+
+    DumpColumn(String label, int sqlType, byte kind) {
+        this.label = label;
+        this.sqlType = sqlType;
+        this.kind = kind;
+        if (kind == STRING) {
+            this.dictionary = new HashMap<String, Integer>();
+            this.entries = new ArrayList<String>();
+        }
+    }
+
+    /**
+     * Get the kind of values a column of the provided SQL type is dumped as.
+     *
+     * @param sqlType
+     *            The SQL type as defined by <code>java.sql.Types</code>
+     * @return The kind
+     */
+    static byte kindOf(int sqlType) {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            return INT;
+        case Types.BIGINT:
+            return LONG;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return DOUBLE;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return BOOLEAN;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return DECIMAL;
+        case Types.DATE:
+        case Types.TIMESTAMP:
+            return TIMESTAMP;
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+        case Types.BLOB:
+            return BYTES;
+        default:
+            return STRING;
+        }
+    }
+
+    String getLabel() {
+        return this.label;
+    }
+
+    int getSqlType() {
+        return this.sqlType;
+    }
+
+    byte getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Makes sure the column can hold a block of the provided number of rows.
+     *
+     * @param rows
+     *            The number of rows
+     */
+    void ensureCapacity(int rows) {
+        if (this.nulls.length >= rows)
+            return;
+
+        this.nulls = new boolean[rows];
+        switch (this.kind) {
+        case DOUBLE:
+            this.doubles = new double[rows];
+            break;
+        case DECIMAL:
+        case BYTES:
+            this.objects = new Object[rows];
+            break;
+        case STRING:
+            this.objects = new Object[rows];
+            this.ints = new int[rows];
+            break;
+        case TIMESTAMP:
+            this.longs = new long[rows];
+            this.ints = new int[rows];
+            break;
+        default:
+            this.longs = new long[rows];
+        }
+    }
+
+    /**
+     * Reads the value of the column of the current row of a result set.
+     *
+     * @param rs
+     *            The result set
+     * @param column
+     *            The column of the result set
+     * @param row
+     *            The row of the block
+     * @throws SQLException
+     */
+    void read(ResultSet rs, int column, int row) throws SQLException {
+        switch (this.kind) {
+        case INT:
+            this.longs[row] = rs.getInt(column);
+            this.nulls[row] = rs.wasNull();
+            break;
+        case LONG:
+            this.longs[row] = rs.getLong(column);
+            this.nulls[row] = rs.wasNull();
+            break;
+        case DOUBLE:
+            this.doubles[row] = rs.getDouble(column);
+            this.nulls[row] = rs.wasNull();
+            break;
+        case BOOLEAN:
+            this.longs[row] = rs.getBoolean(column) ? 1 : 0;
+            this.nulls[row] = rs.wasNull();
+            break;
+        case TIMESTAMP:
+            Timestamp timestamp = rs.getTimestamp(column);
+            this.nulls[row] = timestamp == null;
+            if (timestamp != null) {
+                this.longs[row] = timestamp.getTime();
+                this.ints[row] = timestamp.getNanos();
+            }
+            break;
+        case DECIMAL:
+            this.objects[row] = rs.getBigDecimal(column);
+            this.nulls[row] = this.objects[row] == null;
+            break;
+        case BYTES:
+            this.objects[row] = rs.getBytes(column);
+            this.nulls[row] = this.objects[row] == null;
+            break;
+        default:
+            this.objects[row] = rs.getString(column);
+            this.nulls[row] = this.objects[row] == null;
+        }
+    }
+
+    /**
+     * Writes the values of a block.
+     *
+     * @param out
+     *            The output
+     * @param rows
+     *            The number of rows of the block
+     * @throws IOException
+     */
+    void writeBlock(DataOutput out, int rows) throws IOException {
+        boolean hasNulls = false;
+        for (int i = 0; i < rows && !hasNulls; i++)
+            hasNulls = this.nulls[i];
+        out.writeBoolean(hasNulls);
+        if (hasNulls) {
+            byte[] bits = new byte[(rows + 7) / 8];
+            for (int i = 0; i < rows; i++) {
+                if (this.nulls[i])
+                    bits[i >> 3] |= 1 << (i & 7);
+            }
+            out.write(bits);
+        }
+
+        if (this.kind == STRING) {
+            this.writeStrings(out, rows);
+            return;
+        }
+
+        for (int i = 0; i < rows; i++) {
+            if (this.nulls[i])
+                continue;
+            switch (this.kind) {
+            case INT:
+            case LONG:
+                writeVarLong(out, zigZag(this.longs[i]));
+                break;
+            case DOUBLE:
+                out.writeDouble(this.doubles[i]);
+                break;
+            case BOOLEAN:
+                out.writeByte((int) this.longs[i]);
+                break;
+            case TIMESTAMP:
+                writeVarLong(out, zigZag(this.longs[i]));
+                writeVarLong(out, this.ints[i]);
+                break;
+            case DECIMAL:
+                BigDecimal decimal = (BigDecimal) this.objects[i];
+                writeVarLong(out, zigZag(decimal.scale()));
+                writeBytes(out, decimal.unscaledValue().toByteArray());
+                break;
+            default:
+                writeBytes(out, (byte[]) this.objects[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the strings of a block, dictionary encoded unless the dictionary is full.
+     *
+     * @param out
+     *            The output
+     * @param rows
+     *            The number of rows of the block
+     * @throws IOException
+     */
+    private void writeStrings(DataOutput out, int rows) throws IOException {
+        int first = this.dictionary == null ? 0 : this.dictionary.size();
+        List<String> added = new ArrayList<String>();
+        for (int i = 0; i < rows && this.dictionary != null; i++) {
+            if (this.nulls[i])
+                continue;
+            String value = (String) this.objects[i];
+            Integer index = this.dictionary.get(value);
+            if (index == null) {
+                if (this.dictionary.size() >= MAX_DICTIONARY_SIZE) {
+                    this.dictionary = null; // too many distinct values, stop encoding
+                    break;
+                }
+                index = this.dictionary.size();
+                this.dictionary.put(value, index);
+                added.add(value);
+            }
+            this.ints[i] = index;
+        }
+
+        if (this.dictionary == null) {
+            out.writeByte(PLAIN_ENCODING);
+            for (int i = 0; i < rows; i++) {
+                if (!this.nulls[i])
+                    writeBytes(out, ((String) this.objects[i]).getBytes(UTF8));
+            }
+            return;
+        }
+
+        out.writeByte(DICTIONARY_ENCODING);
+        writeVarLong(out, first);
+        writeVarLong(out, added.size());
+        for (String value : added)
+            writeBytes(out, value.getBytes(UTF8));
+        for (int i = 0; i < rows; i++) {
+            if (!this.nulls[i])
+                writeVarLong(out, this.ints[i]);
+        }
+    }
+
+    /**
+     * Reads the values of a block.
+     *
+     * @param in
+     *            The input
+     * @param rows
+     *            The number of rows of the block
+     * @throws IOException
+     */
+    void readBlock(DataInput in, int rows) throws IOException {
+        this.ensureCapacity(rows);
+        if (in.readBoolean()) {
+            byte[] bits = new byte[(rows + 7) / 8];
+            in.readFully(bits);
+            for (int i = 0; i < rows; i++)
+                this.nulls[i] = (bits[i >> 3] & (1 << (i & 7))) != 0;
+        } else {
+            Arrays.fill(this.nulls, 0, rows, false);
+        }
+
+        if (this.kind == STRING) {
+            this.readStrings(in, rows);
+            return;
+        }
+
+        for (int i = 0; i < rows; i++) {
+            if (this.nulls[i])
+                continue;
+            switch (this.kind) {
+            case INT:
+            case LONG:
+                this.longs[i] = unZigZag(readVarLong(in));
+                break;
+            case DOUBLE:
+                this.doubles[i] = in.readDouble();
+                break;
+            case BOOLEAN:
+                this.longs[i] = in.readByte();
+                break;
+            case TIMESTAMP:
+                this.longs[i] = unZigZag(readVarLong(in));
+                this.ints[i] = (int) readVarLong(in);
+                break;
+            case DECIMAL:
+                int scale = (int) unZigZag(readVarLong(in));
+                this.objects[i] = new BigDecimal(new BigInteger(readBytes(in)), scale);
+                break;
+            default:
+                this.objects[i] = readBytes(in);
+            }
+        }
+    }
+
+    /**
+     * Reads the strings of a block.
+     *
+     * @param in
+     *            The input
+     * @param rows
+     *            The number of rows of the block
+     * @throws IOException
+     */
+    private void readStrings(DataInput in, int rows) throws IOException {
+        byte encoding = in.readByte();
+        if (encoding == PLAIN_ENCODING) {
+            for (int i = 0; i < rows; i++) {
+                if (!this.nulls[i])
+                    this.objects[i] = new String(readBytes(in), UTF8);
+            }
+            return;
+        }
+        if (encoding != DICTIONARY_ENCODING)
+            throw new IOException("Unknown string encoding [" + encoding + "] of column [" + this.label + "]");
+
+        int first = (int) readVarLong(in);
+        int count = (int) readVarLong(in);
+        if (first != this.entries.size())
+            throw new IOException("Corrupt dictionary of column [" + this.label + "]");
+        for (int i = 0; i < count; i++)
+            this.entries.add(new String(readBytes(in), UTF8));
+        for (int i = 0; i < rows; i++) {
+            if (!this.nulls[i])
+                this.objects[i] = this.entries.get((int) readVarLong(in));
+        }
+    }
+
+    boolean isNull(int row) {
+        return this.nulls[row];
+    }
+
+    /**
+     * Get a value as a <code>long</code>, numeric values are converted.
+     *
+     * @param row
+     *            The row of the block
+     * @return The value, zero (0) if <code>NULL</code>
+     */
+    long getLong(int row) {
+        if (this.nulls[row])
+            return 0;
+        switch (this.kind) {
+        case INT:
+        case LONG:
+        case BOOLEAN:
+        case TIMESTAMP:
+            return this.longs[row];
+        case DOUBLE:
+            return (long) this.doubles[row];
+        case DECIMAL:
+            return ((BigDecimal) this.objects[row]).longValue();
+        default:
+            return Long.parseLong(this.getObject(row).toString());
+        }
+    }
+
+    /**
+     * Get a value as a <code>double</code>, numeric values are converted.
+     *
+     * @param row
+     *            The row of the block
+     * @return The value, zero (0) if <code>NULL</code>
+     */
+    double getDouble(int row) {
+        if (this.nulls[row])
+            return 0;
+        switch (this.kind) {
+        case DOUBLE:
+            return this.doubles[row];
+        case DECIMAL:
+            return ((BigDecimal) this.objects[row]).doubleValue();
+        case STRING:
+            return Double.parseDouble((String) this.objects[row]);
+        default:
+            return this.getLong(row);
+        }
+    }
+
+    /**
+     * Get a value as an object.
+     *
+     * @param row
+     *            The row of the block
+     * @return The value, <code>null</code> if <code>NULL</code>
+     */
+    Object getObject(int row) {
+        if (this.nulls[row])
+            return null;
+        switch (this.kind) {
+        case INT:
+            return Integer.valueOf((int) this.longs[row]);
+        case LONG:
+            return Long.valueOf(this.longs[row]);
+        case DOUBLE:
+            return Double.valueOf(this.doubles[row]);
+        case BOOLEAN:
+            return Boolean.valueOf(this.longs[row] != 0);
+        case TIMESTAMP:
+            return this.getTimestamp(row);
+        default:
+            return this.objects[row];
+        }
+    }
+
+    /**
+     * Get a timestamp value.
+     *
+     * @param row
+     *            The row of the block
+     * @return The value, <code>null</code> if <code>NULL</code>
+     */
+    Timestamp getTimestamp(int row) {
+        if (this.nulls[row])
+            return null;
+        if (this.kind != TIMESTAMP)
+            throw new IllegalArgumentException("The column [" + this.label + "] is not a timestamp");
+        Timestamp timestamp = new Timestamp(this.longs[row]);
+        timestamp.setNanos(this.ints[row]);
+        return timestamp;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an unsigned variable length integer, seven bits per byte.
+     *
+     * @param out
+     *            The output
+     * @param value
+     *            The value
+     * @throws IOException
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable length integer.
+     *
+     * @param in
+     *            The input
+     * @return The value
+     * @throws IOException
+     */
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -77,12 +77,13 @@ public class GenericJDBCConnectionFactory implements JDBCConnectionFactory {
     }
 
     /**
-     * Creates a connection pool. The connections in the pool will be created using the pre-defined user/password
+     * Creates a connection pool. The connections in the pool will be created using the pre-defined user/password. <br>
+     * The pool opens further connections on demand up to the maximum size and closes them again once they have been idle for a while.
      * 
      * @param initialSize
      *            The intial size of the pool
      * @param maxSize
-     *            The maximum size of the pool
+     *            The maximum size of the pool, zero (0) means unlimited amount
      * @see setUser
      * @see setPassword
      */
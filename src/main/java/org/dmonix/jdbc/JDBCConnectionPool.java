@@ -26,10 +26,12 @@ public interface JDBCConnectionPool {
 
     /**
      * The method searches for an available connection in the connection pool.<br>
-     * If no connection is available from the pool, the method is put on hold using <code>wait()</code>. If a connection is available from the pool, the
-     * getConnection method leases the connection and returns it to the calling program
+     * If no connection is available from the pool, the method is put on hold until a connection is returned to the pool or the acquire timeout of the pool
+     * has passed. If a connection is available from the pool, the getConnection method leases the connection and returns it to the calling program
      * 
      * @return The connection
+     * @throws java.sql.SQLTimeoutException
+     *             If no connection was available within the acquire timeout
      * @throws SQLException
      */
     public JDBCConnection getConnection() throws SQLException;
@@ -1,7 +1,11 @@
 package org.dmonix.jdbc;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 
 /**
  * This class is wrapped around a <code>java.sql.PreparedStatement</code> object in order to offer additional functionality not included by the Java JDBC API.
@@ -74,6 +78,68 @@ public interface LoggablePreparedStatement {
      */
     public ResultSet executeQuery() throws SQLException;
 
+    /**
+     * Adds the current set of bind parameters to the batch of this statement. <br>
+     * The batch is sent to the database as soon as it holds <code>getBatchSize()</code> rows, the remaining rows are sent by <code>executeBatch()</code>.
+     * 
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     * @see #setBatchSize(int)
+     */
+    public void addBatch() throws SQLException;
+
+    /**
+     * Sends the rows of the batch not yet sent to the database.
+     * 
+     * @return The update counts of all rows added since the previous call to <code>executeBatch()</code>, in the order they were added
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public int[] executeBatch() throws SQLException;
+
+    /**
+     * Get the number of rows sent to the database in one round trip by <code>addBatch()</code> and <code>executeBatch()</code>.
+     * 
+     * @return The batch size
+     */
+    public int getBatchSize();
+
+    /**
+     * Set the number of rows sent to the database in one round trip by <code>addBatch()</code> and <code>executeBatch()</code>.
+     * 
+     * @param batchSize
+     *            The batch size
+     */
+    public void setBatchSize(int batchSize);
+
+    /**
+     * Get the number of rows the driver is asked to fetch in each round trip by the result sets of this statement.
+     * 
+     * @return The fetch size, zero (0) if the choice is left to the driver
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public int getFetchSize() throws SQLException;
+
+    /**
+     * Set the number of rows the driver is asked to fetch in each round trip by the result sets of this statement. <br>
+     * Must be set before the query is executed to affect the first round trip. A cached statement gets its original fetch size back when closed.
+     * 
+     * @param rows
+     *            The fetch size, zero (0) leaves the choice to the driver
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setFetchSize(int rows) throws SQLException;
+
     /**
      * Sets the designated parameter to the given Java <code>int</code> value. The driver converts this to an SQL <code>INTEGER</code> value when it sends it to
      * the database.
@@ -120,6 +186,133 @@ public interface LoggablePreparedStatement {
      */
     public void setString(int parameterIndex, String value) throws SQLException;
 
+    /**
+     * Sets the designated parameter to the given Java <code>double</code> value. The driver converts this to an SQL <code>DOUBLE</code> value when it sends it
+     * to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setDouble(int parameterIndex, double value) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given Java <code>boolean</code> value. The driver converts this to an SQL <code>BIT</code> or <code>BOOLEAN</code>
+     * value when it sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBoolean(int parameterIndex, boolean value) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given <code>java.math.BigDecimal</code> value. The driver converts this to an SQL <code>NUMERIC</code> value when it
+     * sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBigDecimal(int parameterIndex, BigDecimal value) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given <code>java.sql.Timestamp</code> value. The driver converts this to an SQL <code>TIMESTAMP</code> value when
+     * it sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setTimestamp(int parameterIndex, Timestamp value) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given Java array of bytes. The driver converts this to an SQL <code>VARBINARY</code> or
+     * <code>LONGVARBINARY</code> value (depending on the argument's size relative to the driver's limits on <code>VARBINARY</code> values) when it sends it to
+     * the database. <br>
+     * Only the length of the array is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBytes(int parameterIndex, byte[] value) throws SQLException;
+
+    /**
+     * Sets the designated parameter to SQL <code>NULL</code>.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param sqlType
+     *            the SQL type code defined in <code>java.sql.Types</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setNull(int parameterIndex, int sqlType) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given input stream, which will have the specified number of bytes. Use this to bind large binary values such as
+     * a <code>BLOB</code> without reading them into memory. The stream is read when the statement is executed. <br>
+     * Only the length of the stream is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the stream with the binary value
+     * @param length
+     *            the number of bytes in the stream
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBinaryStream(int parameterIndex, InputStream value, long length) throws SQLException;
+
+    /**
+     * Sets the designated parameter to the given <code>Reader</code> object, which is the given number of characters long. Use this to bind large text
+     * values such as a <code>CLOB</code> without reading them into memory. The reader is read when the statement is executed. <br>
+     * Only the length of the reader is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the reader with the character value
+     * @param length
+     *            the number of characters in the reader
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setCharacterStream(int parameterIndex, Reader value, long length) throws SQLException;
+
     /**
      * Returns a string representation of the SQL statement for this object. The method will attempt to replace all the bind variables with their correct value
      * before returning the SQL statement.
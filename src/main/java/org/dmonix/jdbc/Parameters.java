@@ -0,0 +1,62 @@
+package org.dmonix.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Binds the parameters of a statement according to their types. <br>
+ * Supported types are <code>String</code>, <code>Integer</code>, <code>Short</code>, <code>Byte</code>, <code>Long</code>, <code>Double</code>,
+ * <code>Float</code>, <code>Boolean</code>, <code>BigDecimal</code>, <code>Timestamp</code>, <code>java.util.Date</code> and <code>byte[]</code>. A
+ * <code>null</code> parameter is bound as SQL <code>NULL</code>.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+final class Parameters {
+
+    private Parameters() {
+    }
+
+    /**
+     * Binds the parameters of a statement.
+     * 
+     * @param stmt
+     *            The statement
+     * @param parameters
+     *            The parameters, the first parameter is bound to index 1
+     * @throws SQLException
+     * @throws IllegalArgumentException
+     *             If the type of a parameter is not supported
+     */
+    static void bind(LoggablePreparedStatement stmt, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            Object value = parameters[i];
+            int index = i + 1;
+            if (value == null)
+                stmt.setNull(index, Types.NULL);
+            else if (value instanceof String)
+                stmt.setString(index, (String) value);
+            else if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+                stmt.setInt(index, ((Number) value).intValue());
+            else if (value instanceof Long)
+                stmt.setLong(index, (Long) value);
+            else if (value instanceof Double || value instanceof Float)
+                stmt.setDouble(index, ((Number) value).doubleValue());
+            else if (value instanceof Boolean)
+                stmt.setBoolean(index, (Boolean) value);
+            else if (value instanceof BigDecimal)
+                stmt.setBigDecimal(index, (BigDecimal) value);
+            else if (value instanceof Timestamp)
+                stmt.setTimestamp(index, (Timestamp) value);
+            else if (value instanceof Date)
+                stmt.setTimestamp(index, new Timestamp(((Date) value).getTime()));
+            else if (value instanceof byte[])
+                stmt.setBytes(index, (byte[]) value);
+            else
+                throw new IllegalArgumentException("Unsupported type [" + value.getClass().getName() + "] of parameter [" + index + "]");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.dmonix.jdbc;
+
+/**
+ * Receives the outcome of an asynchronous query.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see AsyncQueryExecutor
+ */
+public interface QueryCallback<T> {
+
+    /**
+     * Invoked when the query has completed.
+     * 
+     * @param result
+     *            The result of the query
+     */
+    public void completed(T result);
+
+    /**
+     * Invoked when the query has failed.
+     * 
+     * @param cause
+     *            The cause of the failure
+     */
+    public void failed(Throwable cause);
+}
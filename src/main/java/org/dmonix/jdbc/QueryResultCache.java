@@ -0,0 +1,437 @@
+package org.dmonix.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the mapped rows of queries in memory to save repeated round trips to the database, e.g. for lookups in reference tables. <br>
+ * A result is cached per SQL, bound parameters and class of the row mapper, i.e. an anonymous mapper created anew on each call at the same place in the
+ * code finds the cached result. Mappers of the same class must therefore map the rows alike, a mapper whose result depends on state of its own, e.g. a captured
+ * variable, should be a class of its own for each such state. The parameters are copied, a caller may change a <code>Date</code> or a
+ * <code>byte[]</code> after the query without affecting the cached result. The cache holds at most a maximum number of results, the least recently used result is
+ * evicted when the cache is full. A result older than the time-to-live is not used but fetched again.
+ * <p>
+ * Each query is tagged with the tables it reads, <code>invalidate(String)</code> removes all results of queries reading a table and should be invoked by
+ * the application when it modifies the table. A result fetched while its tables are invalidated is not cached.
+ * </p>
+ * <p>
+ * The cached lists are shared by all callers and are therefore unmodifiable, the mapped rows should also be immutable. The cache is thread safe.
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see RowMapper
+ */
+public class QueryResultCache {
+
+    /** The default maximum number of cached results. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** The default time in milliseconds a result is used. */
+    public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+
+    /** The cached results in access order, the first result is the least recently used. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /** The keys of the cached results per table. */
+    private final Map<String, Set<Key>> tables = new HashMap<String, Set<Key>>();
+
+    /** The number of times each table has been invalidated. */
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+
+    /** The number of times the whole cache has been invalidated. */
+    private long generation = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs a cache with the default size and time-to-live.
+     */
+    public QueryResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a cache.
+     * 
+     * @param maxEntries
+     *            The maximum number of cached results
+     * @param timeToLive
+     *            The time a result is used
+     * @param unit
+     *            The unit of the time-to-live
+     */
+    public QueryResultCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("The maximum number of entries must be positive");
+        if (timeToLive <= 0)
+            throw new IllegalArgumentException("The time-to-live must be positive");
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * Get the result of a query from the cache, the query is executed using a connection from the pool if the result is not cached.
+     * 
+     * @param pool
+     *            The connection pool
+     * @param tables
+     *            The tables read by the query
+     * @param sql
+     *            The SQL of the query
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters of the query
+     * @return The unmodifiable list of mapped rows
+     * @throws SQLException
+     */
+    public <T> List<T> query(JDBCConnectionPool pool, String[] tables, String sql, RowMapper<T> mapper, Object... parameters) throws SQLException {
+        Key key = new Key(sql, mapper, parameters);
+        List<T> rows = this.get(key);
+        if (rows != null)
+            return rows;
+
+        long[] generations = this.generations(tables);
+        return this.put(key, tables, generations, load(new RowCursor<T>(pool, sql, mapper, parameters)));
+    }
+
+    /**
+     * Get the result of a query from the cache, the query is executed using the provided connection if the result is not cached.
+     * 
+     * @param con
+     *            The connection
+     * @param tables
+     *            The tables read by the query
+     * @param sql
+     *            The SQL of the query
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters of the query
+     * @return The unmodifiable list of mapped rows
+     * @throws SQLException
+     */
+    public <T> List<T> query(JDBCConnection con, String[] tables, String sql, RowMapper<T> mapper, Object... parameters) throws SQLException {
+        Key key = new Key(sql, mapper, parameters);
+        List<T> rows = this.get(key);
+        if (rows != null)
+            return rows;
+
+        long[] generations = this.generations(tables);
+        return this.put(key, tables, generations, load(new RowCursor<T>(con, sql, mapper, parameters)));
+    }
+
+    /**
+     * Removes the results of all queries reading a table.
+     * 
+     * @param table
+     *            The table, the name is not case sensitive
+     */
+    public synchronized void invalidate(String table) {
+        String name = table.toUpperCase(Locale.ENGLISH);
+        Long generation = this.generations.get(name);
+        this.generations.put(name, generation == null ? 1L : generation + 1);
+
+        Set<Key> keys = this.tables.remove(name);
+        if (keys != null) {
+            for (Key key : keys)
+                this.remove(key);
+        }
+    }
+
+    /**
+     * Removes all results from the cache.
+     */
+    public synchronized void invalidateAll() {
+        this.generation++;
+        this.entries.clear();
+        this.tables.clear();
+    }
+
+    /**
+     * Get the number of cached results.
+     * 
+     * @return The number of results
+     */
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /**
+     * Get the time a result is used.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The time-to-live
+     */
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(this.timeToLiveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of queries answered from the cache.
+     * 
+     * @return The number of hits
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Get the number of queries executed as the result was not cached or had expired.
+     * 
+     * @return The number of misses
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Get the share of the queries answered from the cache.
+     * 
+     * @return The hit ratio between 0 and 1
+     */
+    public double getHitRatio() {
+        long hits = this.hitCount.get();
+        long total = hits + this.missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of results evicted as the cache was full or the result had expired.
+     * 
+     * @return The number of evictions
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public void resetStatistics() {
+        this.hitCount.set(0);
+        this.missCount.set(0);
+        this.evictionCount.set(0);
+    }
+
+    public String toString() {
+        return "QueryResultCache [size=" + this.getSize() + "] [hits=" + this.hitCount.get() + "] [misses=" + this.missCount.get() + "]";
+    }
+
+    /**
+     * Reads all rows of a cursor.
+     * 
+     * @param cursor
+     *            The cursor
+     * @return The rows
+     * @throws SQLException
+     */
+    private static <T> List<T> load(RowCursor<T> cursor) throws SQLException {
+        List<T> rows = new ArrayList<T>();
+        try {
+            for (T row : cursor)
+                rows.add(row);
+        } catch (UncheckedSQLException ex) {
+            throw ex.getCause();
+        } finally {
+            cursor.close();
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Get a cached result that has not expired.
+     * 
+     * @param key
+     *            The key of the result
+     * @return The result, <code>null</code> if not cached
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <T> List<T> get(Key key) {
+        Entry entry = this.entries.get(key);
+        if (entry != null && System.nanoTime() - entry.created >= this.timeToLiveNanos) {
+            this.remove(key);
+            this.evictionCount.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        return (List<T>) entry.rows;
+    }
+
+    /**
+     * Caches a result unless any of its tables has been invalidated since the query was executed.
+     * 
+     * @param key
+     *            The key of the result
+     * @param tables
+     *            The tables read by the query
+     * @param generations
+     *            The generations of the tables before the query was executed
+     * @param rows
+     *            The result
+     * @return The result
+     */
+    private synchronized <T> List<T> put(Key key, String[] tables, long[] generations, List<T> rows) {
+        if (!Arrays.equals(generations, this.generations(tables)))
+            return rows;
+
+        Entry entry = new Entry(rows, tables);
+        this.remove(key);
+        this.entries.put(key, entry);
+        for (String table : entry.tables) {
+            Set<Key> keys = this.tables.get(table);
+            if (keys == null) {
+                keys = new HashSet<Key>();
+                this.tables.put(table, keys);
+            }
+            keys.add(key);
+        }
+
+        // evict the least recently used results
+        Iterator<Map.Entry<Key, Entry>> it = this.entries.entrySet().iterator();
+        while (this.entries.size() > this.maxEntries && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            it.remove();
+            this.untag(eldest.getKey(), eldest.getValue());
+            this.evictionCount.incrementAndGet();
+        }
+        return rows;
+    }
+
+    /**
+     * Get the number of times each table has been invalidated, followed by the number of times the whole cache has been invalidated.
+     * 
+     * @param tables
+     *            The tables
+     * @return The generations
+     */
+    private synchronized long[] generations(String[] tables) {
+        long[] result = new long[tables.length + 1];
+        for (int i = 0; i < tables.length; i++) {
+            Long generation = this.generations.get(tables[i].toUpperCase(Locale.ENGLISH));
+            result[i] = generation == null ? 0 : generation;
+        }
+        result[tables.length] = this.generation;
+        return result;
+    }
+
+    /**
+     * Removes a result and its tags.
+     * 
+     * @param key
+     *            The key of the result
+     */
+    private void remove(Key key) {
+        Entry entry = this.entries.remove(key);
+        if (entry != null)
+            this.untag(key, entry);
+    }
+
+    /**
+     * Removes the key of a result from the tables of the result.
+     * 
+     * @param key
+     *            The key
+     * @param entry
+     *            The result
+     */
+    private void untag(Key key, Entry entry) {
+        for (String table : entry.tables) {
+            Set<Key> keys = this.tables.get(table);
+            if (keys != null && keys.remove(key) && keys.isEmpty())
+                this.tables.remove(table);
+        }
+    }
+
+    /**
+     * The key of a cached result, the SQL, the class of the mapper and a copy of the parameters.
+     */
+    private static final class Key {
+        private final String sql;
+        private final Class<?> mapper;
+        private final Object[] parameters;
+        private final int hash;
+
+        private Key(String sql, RowMapper<?> mapper, Object[] parameters) {
+            this.sql = sql;
+            this.mapper = mapper.getClass();
+            this.parameters = new Object[parameters.length];
+            for (int i = 0; i < parameters.length; i++)
+                this.parameters[i] = copy(parameters[i]);
+            this.hash = (sql.hashCode() * 31 + this.mapper.hashCode()) * 31 + Arrays.deepHashCode(this.parameters);
+        }
+
+        /**
+         * Copies a mutable parameter, the other supported parameter types are immutable.
+         * 
+         * @param value
+         *            The parameter
+         * @return The copy
+         */
+        private static Object copy(Object value) {
+            if (value instanceof byte[])
+                return ((byte[]) value).clone();
+            if (value instanceof Date)
+                return ((Date) value).clone(); // also copies the nanos of a Timestamp
+            return value;
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return this.hash == other.hash && this.sql.equals(other.sql) && this.mapper.equals(other.mapper)
+                    && Arrays.deepEquals(this.parameters, other.parameters);
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+        private final List<?> rows;
+        private final String[] tables;
+        private final long created = System.nanoTime();
+
+        private Entry(List<?> rows, String[] tables) {
+            this.rows = rows;
+            this.tables = new String[tables.length];
+            for (int i = 0; i < tables.length; i++)
+                this.tables[i] = tables[i].toUpperCase(Locale.ENGLISH);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.dmonix.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a dump written by the <code>ResultSetDumpWriter</code>. <br>
+ * The reader is a cursor like a <code>ResultSet</code>, it is initially positioned before the first row and <code>next()</code> moves it to the next row.
+ * The values of the current row are read with the getters, columns are numbered from 1. <br>
+ * The rows are read one block at a time, i.e. reading a dump needs no more memory than a block no matter the size of the dump.
+ * <p>
+ * The dump can also be restored into a table using <code>restore(JDBCConnection, String)</code>.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ * @see ResultSetDumpWriter
+ */
+public class ResultSetDumpReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The number of rows sent to the database in one round trip by <code>restore(JDBCConnection, String)</code>. */
+    public static final int RESTORE_BATCH_SIZE = 1000;
+
+    private final DataInputStream in;
+
+    /** The inflater of a compressed dump, <code>null</code> if not compressed. */
+    private final Inflater inflater;
+    private final DumpColumn[] columns;
+
+    private int blockRows = 0;
+    private int row = -1;
+    private boolean lastNull = false;
+    private boolean end = false;
+
+    /**
+     * Constructs a reader and reads the columns of the dump.
+     *
+     * @param istream
+     *            The stream to read the dump from
+     * @throws IOException
+     *             If the stream is not a dump or could not be read
+     */
+    public ResultSetDumpReader(InputStream istream) throws IOException {
+        DataInputStream header = new DataInputStream(istream);
+        if (header.readInt() != ResultSetDumpWriter.MAGIC)
+            throw new IOException("The stream is not a result set dump");
+        int version = header.readByte();
+        if (version != ResultSetDumpWriter.VERSION)
+            throw new IOException("Unsupported dump version [" + version + "]");
+        int flags = header.readByte();
+
+        InputStream is = istream;
+        this.inflater = (flags & ResultSetDumpWriter.FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+        if (this.inflater != null)
+            is = new InflaterInputStream(is, this.inflater, BUFFER_SIZE);
+        this.in = new DataInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+
+        this.columns = new DumpColumn[(int) DumpColumn.readVarLong(this.in)];
+        for (int i = 0; i < this.columns.length; i++) {
+            String label = this.in.readUTF();
+            int sqlType = this.in.readInt();
+            this.columns[i] = new DumpColumn(label, sqlType, this.in.readByte());
+        }
+    }
+
+    /**
+     * Moves the cursor to the next row.
+     *
+     * @return <code>true</code> if there is a next row, <code>false</code> if the end of the dump has been reached
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if (++this.row < this.blockRows)
+            return true;
+        if (this.end)
+            return false;
+
+        this.blockRows = (int) DumpColumn.readVarLong(this.in);
+        this.row = 0;
+        if (this.blockRows == 0) {
+            this.end = true;
+            return false;
+        }
+        for (DumpColumn column : this.columns)
+            column.readBlock(this.in, this.blockRows);
+        return true;
+    }
+
+    /**
+     * Closes the underlying stream and releases the native memory of the inflater of a compressed dump.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        try {
+            this.in.close();
+        } finally {
+            if (this.inflater != null)
+                this.inflater.end();
+        }
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return The number of columns
+     */
+    public int getColumnCount() {
+        return this.columns.length;
+    }
+
+    /**
+     * Get the label of a column.
+     *
+     * @param column
+     *            The column, the first column is 1
+     * @return The label
+     */
+    public String getColumnLabel(int column) {
+        return this.column(column).getLabel();
+    }
+
+    /**
+     * Get the SQL type of a column in the dumped result set.
+     *
+     * @param column
+     *            The column, the first column is 1
+     * @return The type as defined by <code>java.sql.Types</code>
+     */
+    public int getColumnType(int column) {
+        return this.column(column).getSqlType();
+    }
+
+    /**
+     * Reports whether the last column read had a value of SQL <code>NULL</code>.
+     *
+     * @return <code>true</code> if the last column value read was SQL <code>NULL</code>
+     */
+    public boolean wasNull() {
+        return this.lastNull;
+    }
+
+    /**
+     * Get the value of a column as an <code>int</code>.
+     *
+     * @param column
+     *            The column, the first column is 1
+     * @return The value, zero (0) if <code>NULL</code>
+     * @throws ArithmeticException
+     *             If the value does not fit in an <code>int</code>, use <code>getLong(int)</code> for such columns
+     */
+    public int getInt(int column) {
+        long value = this.value(column).getLong(this.row);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new ArithmeticException("The value [" + value + "] of column [" + column + "] does not fit in an int");
+        return (int) value;
+    }
+
+    public long getLong(int column) {
+        return this.value(column).getLong(this.row);
+    }
+
+    public double getDouble(int column) {
+        return this.value(column).getDouble(this.row);
+    }
+
+    public boolean getBoolean(int column) {
+        DumpColumn c = this.value(column);
+        if (c.getKind() == DumpColumn.STRING)
+            return Boolean.parseBoolean((String) c.getObject(this.row));
+        return c.getLong(this.row) != 0;
+    }
+
+    public String getString(int column) {
+        DumpColumn c = this.value(column);
+        if (c.getKind() == DumpColumn.DECIMAL && !c.isNull(this.row))
+            return ((BigDecimal) c.getObject(this.row)).toPlainString();
+        Object value = c.getObject(this.row);
+        return value == null ? null : value.toString();
+    }
+
+    public BigDecimal getBigDecimal(int column) {
+        DumpColumn c = this.value(column);
+        Object value = c.getObject(this.row);
+        if (value == null || value instanceof BigDecimal)
+            return (BigDecimal) value;
+        if (c.getKind() == DumpColumn.DOUBLE)
+            return BigDecimal.valueOf(c.getDouble(this.row));
+        return new BigDecimal(value.toString());
+    }
+
+    public Timestamp getTimestamp(int column) {
+        return this.value(column).getTimestamp(this.row);
+    }
+
+    public byte[] getBytes(int column) {
+        Object value = this.value(column).getObject(this.row);
+        if (value != null && !(value instanceof byte[]))
+            throw new IllegalArgumentException("The column [" + column + "] is not binary");
+        return (byte[]) value;
+    }
+
+    /**
+     * Get the value of a column as an object of the Java type matching its SQL type.
+     *
+     * @param column
+     *            The column, the first column is 1
+     * @return The value, <code>null</code> if SQL <code>NULL</code>
+     */
+    public Object getObject(int column) {
+        return this.value(column).getObject(this.row);
+    }
+
+    /**
+     * Inserts the remaining rows of the dump into a table using batches. <br>
+     * The table must have columns with the same names as the labels of the dump. The transaction is left to the caller, i.e. nothing is committed unless the
+     * connection is in auto commit mode. <br>
+     * The rows are sent to the database in batches of <code>RESTORE_BATCH_SIZE</code> rows as they are added, so the rows of the dump are never held in
+     * memory all at once.
+     *
+     * @param con
+     *            The connection
+     * @param table
+     *            The name of the table
+     * @return The number of inserted rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long restore(JDBCConnection con, String table) throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < this.columns.length; i++)
+            sql.append(i == 0 ? "" : ", ").append(this.columns[i].getLabel());
+        sql.append(") VALUES (");
+        for (int i = 0; i < this.columns.length; i++)
+            sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
+
+        long rows = 0;
+        LoggablePreparedStatement stmt = con.prepareStatement(sql.toString());
+        try {
+            stmt.setBatchSize(RESTORE_BATCH_SIZE);
+            while (this.next()) {
+                for (int i = 0; i < this.columns.length; i++)
+                    this.bind(stmt, i + 1);
+                stmt.addBatch();
+                rows++;
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Binds the value of a column of the current row to a statement.
+     *
+     * @param stmt
+     *            The statement
+     * @param column
+     *            The column, also the parameter index
+     * @throws SQLException
+     */
+    private void bind(LoggablePreparedStatement stmt, int column) throws SQLException {
+        DumpColumn c = this.columns[column - 1];
+        if (c.isNull(this.row)) {
+            stmt.setNull(column, c.getSqlType());
+            return;
+        }
+        switch (c.getKind()) {
+        case DumpColumn.INT:
+            stmt.setInt(column, (int) c.getLong(this.row));
+            break;
+        case DumpColumn.LONG:
+            stmt.setLong(column, c.getLong(this.row));
+            break;
+        case DumpColumn.DOUBLE:
+            stmt.setDouble(column, c.getDouble(this.row));
+            break;
+        case DumpColumn.BOOLEAN:
+            stmt.setBoolean(column, c.getLong(this.row) != 0);
+            break;
+        case DumpColumn.DECIMAL:
+            stmt.setBigDecimal(column, (BigDecimal) c.getObject(this.row));
+            break;
+        case DumpColumn.TIMESTAMP:
+            stmt.setTimestamp(column, c.getTimestamp(this.row));
+            break;
+        case DumpColumn.BYTES:
+            stmt.setBytes(column, (byte[]) c.getObject(this.row));
+            break;
+        default:
+            stmt.setString(column, (String) c.getObject(this.row));
+        }
+    }
+
+    /**
+     * Get a column of the current row and remember if its value is <code>NULL</code>.
+     *
+     * @param column
+     *            The column, the first column is 1
+     * @return The column
+     */
+    private DumpColumn value(int column) {
+        if (this.row < 0 || this.row >= this.blockRows)
+            throw new IllegalStateException("The cursor is not positioned on a row");
+        DumpColumn c = this.column(column);
+        this.lastNull = c.isNull(this.row);
+        return c;
+    }
+
+    private DumpColumn column(int column) {
+        if (column < 1 || column > this.columns.length)
+            throw new IllegalArgumentException("Illegal column [" + column + "], the dump has " + this.columns.length + " columns");
+        return this.columns[column - 1];
+    }
+}
@@ -0,0 +1,236 @@
+package org.dmonix.jdbc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Dumps a result set to a compact binary file that can be read by the <code>ResultSetDumpReader</code>. <br>
+ * The rows are written in blocks, within a block the values are stored column by column with each column in its own type, i.e. numbers are stored as
+ * numbers and not as text. Strings are dictionary encoded so a column with recurring values such as status codes takes little space. The dump can
+ * optionally be compressed.
+ * <p>
+ * The format of a dump is:
+ *
+ * <pre>
+ * magic "DMRS", version, flags (1 = compressed)
+ * column count, per column: label, SQL type, value kind
+ * per block: row count, per column: null bitmap, values
+ * 0 (end of dump)
+ * </pre>
+ *
+ * All but the magic, version and flags are compressed if the dump is compressed.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ * @see ResultSetDumpReader
+ */
+public class ResultSetDumpWriter {
+    private static final Logger log = Logger.getLogger(ResultSetDumpWriter.class.getName());
+
+    static final int MAGIC = 0x444D5253; // "DMRS"
+    static final int VERSION = 1;
+    static final int FLAG_COMPRESSED = 1;
+
+    /** The default number of rows in a block. */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /** The default number of rows the driver is asked to fetch in each round trip. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream ostream;
+    private final boolean compress;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean written = false;
+
+    /**
+     * Constructs an uncompressed writer.
+     *
+     * @param ostream
+     *            The stream to write the dump to
+     */
+    public ResultSetDumpWriter(OutputStream ostream) {
+        this(ostream, false);
+    }
+
+    /**
+     * Constructs a writer.
+     *
+     * @param ostream
+     *            The stream to write the dump to
+     * @param compress
+     *            If the dump should be compressed
+     */
+    public ResultSetDumpWriter(OutputStream ostream, boolean compress) {
+        this.ostream = ostream;
+        this.compress = compress;
+    }
+
+    /**
+     * Executes the query of the statement and dumps the result, a writer can only dump one result set. <br>
+     * The fetch size is set on the statement before the query is executed, so it also applies to the first round trip. Drivers such as PostgreSQL only
+     * stream the result if the fetch size is set before the query is executed, this is the method to use for large dumps. <br>
+     * The stream is flushed but not closed, the statement is not closed.
+     *
+     * @param stmt
+     *            The statement, with its bind parameters set
+     * @return The number of dumped rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long write(LoggablePreparedStatement stmt) throws SQLException, IOException {
+        if (this.written)
+            throw new IllegalStateException("A result set has already been dumped by this writer");
+        stmt.setFetchSize(this.fetchSize);
+        ResultSet rs = stmt.executeQuery();
+        try {
+            return this.write(rs);
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * Dumps a result set, a writer can only dump one result set. <br>
+     * The query has already been executed, so the fetch size set on the result set only applies to the round trips after the first. Drivers that buffer
+     * the whole result at execution time, e.g. PostgreSQL, are not affected at all. Use <code>write(LoggablePreparedStatement)</code> for large dumps. <br>
+     * The stream is flushed but not closed.
+     *
+     * @param rs
+     *            The result set
+     * @return The number of dumped rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long write(ResultSet rs) throws SQLException, IOException {
+        if (this.written)
+            throw new IllegalStateException("A result set has already been dumped by this writer");
+        this.written = true;
+
+        long start = System.nanoTime();
+        DataOutputStream header = new DataOutputStream(this.ostream);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(this.compress ? FLAG_COMPRESSED : 0);
+
+        Deflater deflater = null;
+        OutputStream os = this.ostream;
+        if (this.compress) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            os = new DeflaterOutputStream(os, deflater, BUFFER_SIZE);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+
+        try {
+            rs.setFetchSize(this.fetchSize);
+            ResultSetMetaData rsm = rs.getMetaData();
+            DumpColumn[] columns = new DumpColumn[rsm.getColumnCount()];
+            DumpColumn.writeVarLong(out, columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                int sqlType = rsm.getColumnType(i + 1);
+                columns[i] = new DumpColumn(rsm.getColumnLabel(i + 1), sqlType, DumpColumn.kindOf(sqlType));
+                columns[i].ensureCapacity(this.blockSize);
+                out.writeUTF(columns[i].getLabel());
+                out.writeInt(sqlType);
+                out.writeByte(columns[i].getKind());
+            }
+
+            long rows = 0;
+            int blockRows = 0;
+            while (rs.next()) {
+                for (int i = 0; i < columns.length; i++)
+                    columns[i].read(rs, i + 1, blockRows);
+                rows++;
+                if (++blockRows == this.blockSize) {
+                    writeBlock(out, columns, blockRows);
+                    blockRows = 0;
+                }
+            }
+            if (blockRows > 0)
+                writeBlock(out, columns, blockRows);
+            DumpColumn.writeVarLong(out, 0);
+            out.flush();
+            if (deflater != null)
+                ((DeflaterOutputStream) os).finish();
+            this.ostream.flush();
+
+            if (log.isLoggable(Level.FINE))
+                log.log(Level.FINE, "Dumped " + rows + " rows in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            return rows;
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.ostream.close();
+    }
+
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Set the number of rows in a block, larger blocks compress better but need more memory when writing and reading.
+     *
+     * @param blockSize
+     *            The number of rows
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("The block size must be positive");
+        this.blockSize = blockSize;
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Set the number of rows the driver is asked to fetch in each round trip.
+     *
+     * @param fetchSize
+     *            The fetch size, zero (0) leaves the choice to the driver
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("The fetch size must not be negative");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes a block of rows.
+     *
+     * @param out
+     *            The output
+     * @param columns
+     *            The columns
+     * @param rows
+     *            The number of rows
+     * @throws IOException
+     */
+    private static void writeBlock(DataOutputStream out, DumpColumn[] columns, int rows) throws IOException {
+        DumpColumn.writeVarLong(out, rows);
+        for (DumpColumn column : columns)
+            column.writeBlock(out, rows);
+    }
+}
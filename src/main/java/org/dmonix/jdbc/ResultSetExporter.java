@@ -0,0 +1,431 @@
+package org.dmonix.jdbc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exports result sets as tab or comma separated text, streaming one row at a time so the size of the result set is of no concern. <br>
+ * The fetch size of the statement is set before the query is executed so the driver fetches the rows in large chunks, the text is written through a large buffer that is only flushed
+ * when the export is done and numeric columns are read with the primitive getters of the result set instead of <code>getObject()</code>.
+ * <p>
+ * The exporter logs the progress every <code>getProgressInterval()</code> rows and the number of rows per second once the export is done.
+ * </p>
+ * <p>
+ * An exporter can be reused but not shared by threads exporting at the same time.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ * @see SQLDebugUtil
+ */
+public class ResultSetExporter {
+    private static final Logger log = Logger.getLogger(ResultSetExporter.class.getName());
+
+    /** The default number of rows the driver is asked to fetch in each round trip. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /** The default size in characters of the write buffer. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The default number of rows between two progress reports. */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 100000;
+
+    /**
+     * The text formats of the exporter.
+     */
+    public enum Format {
+        /** Tab separated values, tabs, line breaks and backslashes in values are escaped with a backslash. */
+        TSV,
+        /** Comma separated values according to RFC 4180, values with commas, quotes or line breaks are quoted. */
+        CSV
+    }
+
+    private Format format = Format.TSV;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private boolean header = true;
+
+    private long rowCount = 0;
+    private long elapsedNanos = 0;
+
+    /** The current row, reused for every row. */
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] lineChars = new char[256];
+
+    /**
+     * Constructs a TSV exporter.
+     */
+    public ResultSetExporter() {
+    }
+
+    /**
+     * Constructs an exporter.
+     *
+     * @param format
+     *            The format
+     */
+    public ResultSetExporter(Format format) {
+        this.setFormat(format);
+    }
+
+    /**
+     * Executes the query of the statement and exports the result to a stream using UTF-8. <br>
+     * The stream is flushed but not closed, the statement is not closed.
+     *
+     * @param stmt
+     *            The statement, with its bind parameters set
+     * @param ostream
+     *            The stream
+     * @return The number of exported rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long export(LoggablePreparedStatement stmt, OutputStream ostream) throws SQLException, IOException {
+        return this.export(stmt, new OutputStreamWriter(ostream, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Executes the query of the statement and exports the result to a writer. <br>
+     * The fetch size is set on the statement before the query is executed, so it also applies to the first round trip. Drivers such as PostgreSQL only
+     * stream the result if the fetch size is set before the query is executed, this is the method to use for large exports. <br>
+     * The writer is flushed but not closed, the statement is not closed.
+     *
+     * @param stmt
+     *            The statement, with its bind parameters set
+     * @param writer
+     *            The writer
+     * @return The number of exported rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long export(LoggablePreparedStatement stmt, Writer writer) throws SQLException, IOException {
+        stmt.setFetchSize(this.fetchSize);
+        ResultSet rs = stmt.executeQuery();
+        try {
+            return this.export(rs, writer);
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * Exports the result set to a stream using UTF-8. <br>
+     * The stream is flushed but not closed.
+     *
+     * @see #export(ResultSet, Writer)
+     *
+     * @param rs
+     *            The result set
+     * @param ostream
+     *            The stream
+     * @return The number of exported rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long export(ResultSet rs, OutputStream ostream) throws SQLException, IOException {
+        return this.export(rs, new OutputStreamWriter(ostream, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Exports the result set to a writer. <br>
+     * The query has already been executed, so the fetch size set on the result set only applies to the round trips after the first. Drivers that buffer
+     * the whole result at execution time, e.g. PostgreSQL, are not affected at all. Use <code>export(LoggablePreparedStatement, Writer)</code> for large
+     * exports. <br>
+     * The writer is flushed but not closed.
+     *
+     * @param rs
+     *            The result set
+     * @param writer
+     *            The writer
+     * @return The number of exported rows
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long export(ResultSet rs, Writer writer) throws SQLException, IOException {
+        long start = System.nanoTime();
+        this.rowCount = 0;
+        this.elapsedNanos = 0;
+        this.line.setLength(0);
+
+        rs.setFetchSize(this.fetchSize);
+        ResultSetMetaData rsm = rs.getMetaData();
+        int columns = rsm.getColumnCount();
+        int[] types = new int[columns + 1];
+        for (int i = 1; i <= columns; i++)
+            types[i] = rsm.getColumnType(i);
+
+        BufferedWriter out = new BufferedWriter(writer, this.bufferSize);
+        char separator = this.format == Format.CSV ? ',' : '\t';
+        if (this.header) {
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1)
+                    this.line.append(separator);
+                this.appendText(rsm.getColumnLabel(i));
+            }
+            this.writeLine(out);
+        }
+
+        long rows = 0;
+        while (rs.next()) {
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1)
+                    this.line.append(separator);
+                this.appendColumn(rs, i, types[i]);
+            }
+            this.writeLine(out);
+
+            if (++rows % this.progressInterval == 0 && log.isLoggable(Level.FINE))
+                log.log(Level.FINE, "Exported " + rows + " rows " + rate(rows, System.nanoTime() - start));
+        }
+        out.flush();
+
+        this.rowCount = rows;
+        this.elapsedNanos = System.nanoTime() - start;
+        if (log.isLoggable(Level.INFO))
+            log.log(Level.INFO, "Exported " + rows + " rows in " + TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos) + " ms " + rate(rows, this.elapsedNanos));
+        return rows;
+    }
+
+    /**
+     * Get the number of rows exported by the last export.
+     *
+     * @return The number of rows
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Get the speed of the last export.
+     *
+     * @return The number of rows per second
+     */
+    public double getRowsPerSecond() {
+        return this.elapsedNanos == 0 ? 0 : this.rowCount * 1e9 / this.elapsedNanos;
+    }
+
+    public Format getFormat() {
+        return this.format;
+    }
+
+    public void setFormat(Format format) {
+        if (format == null)
+            throw new IllegalArgumentException("The format must not be null");
+        this.format = format;
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Set the number of rows the driver is asked to fetch in each round trip. <br>
+     * Note that some drivers, e.g. MySQL, need special settings on the connection or statement to stream results.
+     *
+     * @param fetchSize
+     *            The fetch size, zero (0) leaves the choice to the driver
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("The fetch size must not be negative");
+        this.fetchSize = fetchSize;
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * Set the size of the write buffer, the buffer is written to the underlying writer each time it is full.
+     *
+     * @param bufferSize
+     *            The size in characters
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("The buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    public long getProgressInterval() {
+        return this.progressInterval;
+    }
+
+    /**
+     * Set the number of rows between two progress reports, the progress is logged on level FINE.
+     *
+     * @param progressInterval
+     *            The number of rows
+     */
+    public void setProgressInterval(long progressInterval) {
+        if (progressInterval <= 0)
+            throw new IllegalArgumentException("The progress interval must be positive");
+        this.progressInterval = progressInterval;
+    }
+
+    public boolean isHeader() {
+        return this.header;
+    }
+
+    /**
+     * Set if the first line should hold the column labels, the default is <code>true</code>.
+     *
+     * @param header
+     *            If to write a header line
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * Appends the value of a column to the current row, primitive columns are read without boxing. <br>
+     * <code>NULL</code> values are written as empty values.
+     *
+     * @param rs
+     *            The result set
+     * @param column
+     *            The column
+     * @param type
+     *            The SQL type of the column
+     * @throws SQLException
+     */
+    private void appendColumn(ResultSet rs, int column, int type) throws SQLException {
+        switch (type) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER: {
+            int value = rs.getInt(column);
+            if (!rs.wasNull())
+                this.line.append(value);
+            break;
+        }
+        case Types.BIGINT: {
+            long value = rs.getLong(column);
+            if (!rs.wasNull())
+                this.line.append(value);
+            break;
+        }
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE: {
+            double value = rs.getDouble(column);
+            if (!rs.wasNull())
+                this.line.append(value);
+            break;
+        }
+        case Types.BIT:
+        case Types.BOOLEAN: {
+            boolean value = rs.getBoolean(column);
+            if (!rs.wasNull())
+                this.line.append(value);
+            break;
+        }
+        case Types.DECIMAL:
+        case Types.NUMERIC: {
+            BigDecimal value = rs.getBigDecimal(column);
+            if (value != null)
+                this.line.append(value.toPlainString());
+            break;
+        }
+        default: {
+            String value = rs.getString(column);
+            if (value != null)
+                this.appendText(value);
+        }
+        }
+    }
+
+    /**
+     * Appends a text value to the current row, escaped according to the format.
+     *
+     * @param value
+     *            The value
+     */
+    private void appendText(String value) {
+        StringBuilder sb = this.line;
+        int length = value.length();
+        if (this.format == Format.CSV) {
+            boolean quote = false;
+            for (int i = 0; i < length && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                sb.append(value);
+                return;
+            }
+            sb.append('"');
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c == '"')
+                    sb.append('"');
+                sb.append(c);
+            }
+            sb.append('"');
+        } else {
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    sb.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the current row followed by a line break and clears it.
+     *
+     * @param out
+     *            The writer
+     * @throws IOException
+     */
+    private void writeLine(Writer out) throws IOException {
+        StringBuilder sb = this.line;
+        sb.append('\n');
+        int length = sb.length();
+        if (length > this.lineChars.length)
+            this.lineChars = new char[Math.max(length, this.lineChars.length * 2)];
+        sb.getChars(0, length, this.lineChars, 0);
+        out.write(this.lineChars, 0, length);
+        sb.setLength(0);
+    }
+
+    /**
+     * Formats the speed of an export.
+     *
+     * @param rows
+     *            The number of rows
+     * @param nanos
+     *            The elapsed time
+     * @return The speed
+     */
+    private static String rate(long rows, long nanos) {
+        return "[" + (nanos == 0 ? 0 : (long) (rows * 1e9 / nanos)) + " rows/s]";
+    }
+}
@@ -0,0 +1,262 @@
+package org.dmonix.jdbc;
+
+import java.io.Closeable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cursor mapping the rows of a query one at a time, so a query with any number of rows can be processed in constant memory. <br>
+ * The query is executed when the cursor is first iterated and the rows are fetched from the database in chunks of the fetch size. Each row is mapped
+ * using a <code>RowMapper</code> when it is returned by <code>next()</code>.
+ * <p>
+ * The cursor closes itself when the last row has been returned or if the query fails. A cursor that is not iterated to the end must be closed by the
+ * caller. Closing the cursor closes the statement and, if the cursor borrowed the connection from a pool, ends the read transaction and returns the
+ * connection to the pool.
+ * </p>
+ * <p>
+ * A <code>SQLException</code> while iterating is thrown as an <code>UncheckedSQLException</code>. The parameters of the query are bound according to their
+ * type, supported types are <code>String</code>, <code>Integer</code>, <code>Short</code>, <code>Byte</code>, <code>Long</code>, <code>Double</code>,
+ * <code>Float</code>, <code>Boolean</code>, <code>BigDecimal</code>, <code>Timestamp</code>, <code>java.util.Date</code> and <code>byte[]</code>.
+ * </p>
+ * 
+ * <pre>
+ * RowCursor&lt;Item&gt; cursor = new RowCursor&lt;Item&gt;(pool, &quot;SELECT ID, NAME FROM ITEM WHERE TYPE = ?&quot;, mapper, type);
+ * try {
+ *     for (Item item : cursor)
+ *         process(item);
+ * } finally {
+ *     cursor.close();
+ * }
+ * </pre>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see RowMapper
+ */
+public class RowCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private static final Logger log = Logger.getLogger(RowCursor.class.getName());
+
+    /** The default number of rows the driver is asked to fetch in each round trip. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final JDBCConnection con;
+
+    /** If the connection was borrowed from a pool by the cursor and is to be returned when the cursor is closed. */
+    private final boolean ownConnection;
+
+    private final LoggablePreparedStatement stmt;
+    private final RowMapper<T> mapper;
+    private ResultSet rs;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int rowCount = 0;
+
+    /** If the result set is positioned on a row not yet returned. */
+    private boolean fetched = false;
+    private boolean iterated = false;
+    private boolean closed = false;
+
+    /**
+     * Constructs a cursor using a connection borrowed from a pool, the connection is returned when the cursor is closed.
+     * 
+     * @param pool
+     *            The connection pool
+     * @param sql
+     *            The SQL of the query
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters of the query
+     * @throws SQLException
+     *             If no connection could be borrowed or the statement could not be prepared
+     */
+    public RowCursor(JDBCConnectionPool pool, String sql, RowMapper<T> mapper, Object... parameters) throws SQLException {
+        this(pool.getConnection(), true, sql, mapper, parameters);
+    }
+
+    /**
+     * Constructs a cursor using a connection, the connection is left open when the cursor is closed.
+     * 
+     * @param con
+     *            The connection
+     * @param sql
+     *            The SQL of the query
+     * @param mapper
+     *            The mapper of the rows
+     * @param parameters
+     *            The parameters of the query
+     * @throws SQLException
+     *             If the statement could not be prepared
+     */
+    public RowCursor(JDBCConnection con, String sql, RowMapper<T> mapper, Object... parameters) throws SQLException {
+        this(con, false, sql, mapper, parameters);
+    }
+
+    private RowCursor(JDBCConnection con, boolean ownConnection, String sql, RowMapper<T> mapper, Object[] parameters) throws SQLException {
+        this.con = con;
+        this.ownConnection = ownConnection;
+        this.mapper = mapper;
+        LoggablePreparedStatement stmt = null;
+        try {
+            stmt = con.prepareStatement(sql);
+            Parameters.bind(stmt, parameters);
+        } catch (SQLException ex) {
+            this.release(stmt);
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.release(stmt);
+            throw ex;
+        }
+        this.stmt = stmt;
+    }
+
+    /**
+     * Get the cursor itself, a cursor can only be iterated once.
+     * 
+     * @return The cursor
+     */
+    public Iterator<T> iterator() {
+        if (this.iterated)
+            throw new IllegalStateException("The cursor can only be iterated once");
+        this.iterated = true;
+        return this;
+    }
+
+    /**
+     * Checks if there are more rows, the query is executed on the first call. <br>
+     * The cursor is closed when there are no more rows.
+     * 
+     * @return <code>true</code> if there are more rows
+     * @throws UncheckedSQLException
+     *             If the query failed, the cursor is then closed
+     */
+    public boolean hasNext() {
+        if (this.fetched)
+            return true;
+        if (this.closed)
+            return false;
+
+        try {
+            if (this.rs == null) {
+                this.stmt.setFetchSize(this.fetchSize);
+                this.rs = this.stmt.executeQuery();
+            }
+            this.fetched = this.rs.next();
+        } catch (SQLException ex) {
+            this.close();
+            throw new UncheckedSQLException(ex);
+        }
+        if (!this.fetched)
+            this.close();
+        return this.fetched;
+    }
+
+    /**
+     * Get the next row.
+     * 
+     * @return The mapped row
+     * @throws NoSuchElementException
+     *             If there are no more rows
+     * @throws UncheckedSQLException
+     *             If the query or the mapping failed, the cursor is then closed
+     */
+    public T next() {
+        if (!this.hasNext())
+            throw new NoSuchElementException("There are no more rows");
+
+        this.fetched = false;
+        try {
+            return this.mapper.mapRow(this.rs, this.rowCount++);
+        } catch (SQLException ex) {
+            this.close();
+            throw new UncheckedSQLException(ex);
+        } catch (RuntimeException ex) {
+            this.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Not supported.
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("A cursor is read-only");
+    }
+
+    /**
+     * Closes the result set and the statement and returns the connection to the pool if it was borrowed by the cursor. <br>
+     * Closing a closed cursor has no effect.
+     */
+    public void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.fetched = false;
+        if (this.rs != null) {
+            try {
+                this.rs.close();
+            } catch (SQLException ex) {
+                log.log(Level.FINE, "Failed to close the result set", ex);
+            }
+        }
+        this.release(this.stmt);
+    }
+
+    /**
+     * Get the number of rows returned by the cursor so far.
+     * 
+     * @return The number of rows
+     */
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /**
+     * Set the number of rows the driver is asked to fetch in each round trip, must be set before the cursor is iterated. <br>
+     * Note that some drivers, e.g. MySQL, need special settings on the connection or statement to stream results.
+     * 
+     * @param fetchSize
+     *            The fetch size, zero (0) leaves the choice to the driver
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("The fetch size must not be negative");
+        if (this.rs != null)
+            throw new IllegalStateException("The query has already been executed");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Closes the statement and returns the connection if it was borrowed by the cursor.
+     * 
+     * @param stmt
+     *            The statement, <code>null</code> if not prepared
+     */
+    private void release(LoggablePreparedStatement stmt) {
+        if (stmt != null)
+            stmt.close();
+        if (!this.ownConnection)
+            return;
+        try {
+            // ends the read transaction before the connection is returned
+            if (!this.con.getAutoCommit())
+                this.con.rollback();
+        } catch (SQLException ex) {
+            log.log(Level.FINE, "Failed to end the transaction", ex);
+        }
+        try {
+            this.con.close();
+        } catch (SQLException ex) {
+            log.log(Level.WARNING, "Failed to return the connection", ex);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an object.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see AsyncQueryExecutor
+ */
+public interface RowMapper<T> {
+
+    /**
+     * Maps the current row of the result set. <br>
+     * The mapper must not move the cursor of the result set.
+     * 
+     * @param rs
+     *            The result set positioned on the row to map
+     * @param rowNumber
+     *            The number of the row, the first row is 0
+     * @return The mapped row
+     * @throws SQLException
+     */
+    public T mapRow(ResultSet rs, int rowNumber) throws SQLException;
+}
@@ -6,7 +6,8 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 /**
- * Utility class for performing debugging an SQL result sets.
+ * Utility class for performing debugging an SQL result sets. <br>
+ * Use the <code>ResultSetExporter</code> to export large result sets.
  * <p>
  * Copyright: Copyright (c) 2004
  * </p>
@@ -68,7 +69,6 @@ public abstract class SQLDebugUtil {
                 writer.write(TAB);
             }
             writer.write(NEW_LINE);
-            writer.flush();
         }
         writer.flush();
     }
@@ -0,0 +1,98 @@
+package org.dmonix.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dmonix.util.Histogram;
+
+/**
+ * The latency statistics of a SQL statement, all executions of statements with the same normalized SQL are recorded here. <br>
+ * All times are in microseconds.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see SQLStatistics
+ */
+public class SQLStatementStatistics {
+
+    /** The precision of the histogram, 8 sub-buckets per power of two keep the histogram at about 4 KB. */
+    private static final int PRECISION_BITS = 3;
+
+    private final String sql;
+    private final Histogram times = new Histogram(PRECISION_BITS);
+    private final AtomicLong failureCount = new AtomicLong();
+
+    SQLStatementStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Records an execution of the statement.
+     * 
+     * @param nanos
+     *            The time the execution took in nanoseconds
+     * @param failed
+     *            If the execution failed
+     */
+    public void record(long nanos, boolean failed) {
+        this.times.record(nanos);
+        if (failed)
+            this.failureCount.incrementAndGet();
+    }
+
+    /**
+     * Get the normalized SQL of the statement.
+     * 
+     * @return The SQL
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    public long getExecutionCount() {
+        return this.times.getCount();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public double getMeanTime() {
+        return this.times.getMean() / 1000;
+    }
+
+    public long getTime99thPercentile() {
+        return this.times.getValueAtPercentile(99) / 1000;
+    }
+
+    public long getMaxTime() {
+        return this.times.getMax() / 1000;
+    }
+
+    /**
+     * Get the total time spent executing the statement.
+     * 
+     * @return The total time in microseconds
+     */
+    public long getTotalTime() {
+        return (long) (this.times.getMean() * this.times.getCount() / 1000);
+    }
+
+    /**
+     * Get the histogram of the execution times.
+     * 
+     * @return The histogram, the times are in nanoseconds
+     */
+    Histogram histogram() {
+        return this.times;
+    }
+
+    void reset() {
+        this.times.reset();
+        this.failureCount.set(0);
+    }
+
+    public String toString() {
+        return this.sql + " [count=" + this.getExecutionCount() + "] [failures=" + this.getFailureCount() + "] [mean=" + (long) this.getMeanTime()
+                + "us] [99%=" + this.getTime99thPercentile() + "us] [max=" + this.getMaxTime() + "us]";
+    }
+}
@@ -0,0 +1,298 @@
+package org.dmonix.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.dmonix.util.Histogram;
+
+/**
+ * Collects the execution times of the statements of a connection pool, or of the plain connections sharing the statistics returned by
+ * <code>getDefault()</code>. <br>
+ * The times are aggregated per normalized SQL, i.e. SQL with the literals replaced by <code>?</code> and the whitespace collapsed, so statements differing
+ * only in their literal values share statistics. The number of distinct statements is limited to <code>MAX_STATEMENTS</code>, executions of statements
+ * beyond the limit are recorded under the SQL <code>OTHER</code>. <br>
+ * Each statement keeps a histogram of about 4 KB with a precision of about 12%, i.e. the statistics take at most about 2 MB once the limit is reached.
+ * <p>
+ * Executions taking longer than the slow query threshold are logged with their bind values on level WARNING. The slow query log is disabled by default as
+ * logging the bind values requires them to be captured for each execution.
+ * </p>
+ * <p>
+ * The statistics can be monitored using JMX, see <code>registerMBean(String)</code>.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class SQLStatistics implements SQLStatisticsMXBean {
+    private static final Logger log = Logger.getLogger(SQLStatistics.class.getName());
+
+    /** The maximum number of distinct statements with statistics. */
+    public static final int MAX_STATEMENTS = 500;
+
+    /** The SQL under which statements beyond <code>MAX_STATEMENTS</code> are recorded. */
+    public static final String OTHER = "OTHER";
+
+    /** The statistics per normalized SQL. */
+    private final ConcurrentMap<String, SQLStatementStatistics> statements = new ConcurrentHashMap<String, SQLStatementStatistics>();
+
+    /** The statistics per SQL as provided by the caller, saves normalizing the SQL of a statement prepared again. */
+    private final ConcurrentMap<String, SQLStatementStatistics> aliases = new ConcurrentHashMap<String, SQLStatementStatistics>();
+
+    private final SQLStatementStatistics other = new SQLStatementStatistics(OTHER);
+    private final AtomicLong slowQueryCount = new AtomicLong();
+    private volatile long slowQueryThresholdNanos = 0;
+    private ObjectName objectName;
+
+    /**
+     * Lazily creates the shared statistics.
+     */
+    private static class DefaultHolder {
+        private static final SQLStatistics DEFAULT = new SQLStatistics();
+    }
+
+    /**
+     * Get the statistics shared by all connections not belonging to a pool.
+     *
+     * @return The shared statistics
+     */
+    public static SQLStatistics getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Get the statistics of a SQL, the statistics are created if needed.
+     *
+     * @param sql
+     *            The SQL as prepared
+     * @return The statistics
+     */
+    public SQLStatementStatistics getStatement(String sql) {
+        SQLStatementStatistics statement = this.aliases.get(sql);
+        if (statement != null)
+            return statement;
+
+        String normalized = normalize(sql);
+        statement = this.statements.get(normalized);
+        if (statement == null) {
+            if (this.statements.size() >= MAX_STATEMENTS)
+                return this.other;
+            statement = new SQLStatementStatistics(normalized);
+            SQLStatementStatistics existing = this.statements.putIfAbsent(normalized, statement);
+            if (existing != null)
+                statement = existing;
+        }
+        if (this.aliases.size() < MAX_STATEMENTS)
+            this.aliases.putIfAbsent(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Get the histogram of the execution times of a SQL.
+     *
+     * @param sql
+     *            The SQL, it does not need to be normalized
+     * @return The histogram with the times in nanoseconds, <code>null</code> if the SQL has no statistics
+     */
+    public Histogram getHistogram(String sql) {
+        SQLStatementStatistics statement = this.statements.get(normalize(sql));
+        return statement == null ? null : statement.histogram();
+    }
+
+    public SQLStatementStatistics[] getStatements() {
+        List<SQLStatementStatistics> list = new ArrayList<SQLStatementStatistics>(this.statements.values());
+        if (this.other.getExecutionCount() > 0)
+            list.add(this.other);
+
+        // the total times are read once as they may change while sorting
+        final Map<SQLStatementStatistics, Long> totalTimes = new HashMap<SQLStatementStatistics, Long>();
+        for (SQLStatementStatistics statement : list)
+            totalTimes.put(statement, statement.getTotalTime());
+        Collections.sort(list, new Comparator<SQLStatementStatistics>() {
+            public int compare(SQLStatementStatistics s1, SQLStatementStatistics s2) {
+                return totalTimes.get(s2).compareTo(totalTimes.get(s1));
+            }
+        });
+        return list.toArray(new SQLStatementStatistics[list.size()]);
+    }
+
+    public int getStatementCount() {
+        return this.statements.size();
+    }
+
+    public long getExecutionCount() {
+        long count = this.other.getExecutionCount();
+        for (SQLStatementStatistics statement : this.statements.values())
+            count += statement.getExecutionCount();
+        return count;
+    }
+
+    public long getSlowQueryCount() {
+        return this.slowQueryCount.get();
+    }
+
+    /**
+     * Get the slow query threshold.
+     *
+     * @param unit
+     *            The unit of the returned time
+     * @return The threshold, zero (0) if the slow query log is disabled
+     */
+    public long getSlowQueryThreshold(TimeUnit unit) {
+        return unit.convert(this.slowQueryThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the slow query threshold, executions taking longer are logged with their bind values. <br>
+     * The bind values are only captured by statements prepared after the slow query log has been enabled.
+     *
+     * @param threshold
+     *            The threshold, zero (0) disables the slow query log
+     * @param unit
+     *            The unit of the threshold
+     */
+    public void setSlowQueryThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("The slow query threshold must not be negative");
+        this.slowQueryThresholdNanos = unit.toNanos(threshold);
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return this.getSlowQueryThreshold(TimeUnit.MILLISECONDS);
+    }
+
+    public void setSlowQueryThresholdMillis(long threshold) {
+        this.setSlowQueryThreshold(threshold, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * If the slow query log is enabled.
+     *
+     * @return <code>true</code> if enabled
+     */
+    public boolean isSlowQueryLogEnabled() {
+        return this.slowQueryThresholdNanos > 0;
+    }
+
+    /**
+     * Checks if an execution was slow and logs it if so.
+     *
+     * @param nanos
+     *            The time the execution took in nanoseconds
+     * @param statement
+     *            The statement, its <code>toString()</code> is logged
+     * @return <code>true</code> if the execution was slow
+     */
+    public boolean checkSlowQuery(long nanos, Object statement) {
+        long threshold = this.slowQueryThresholdNanos;
+        if (threshold == 0 || nanos < threshold)
+            return false;
+
+        this.slowQueryCount.incrementAndGet();
+        if (log.isLoggable(Level.WARNING))
+            log.log(Level.WARNING, "Slow query [" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms] : \n" + statement);
+        return true;
+    }
+
+    public void resetStatistics() {
+        for (SQLStatementStatistics statement : this.statements.values())
+            statement.reset();
+        this.other.reset();
+        this.slowQueryCount.set(0);
+    }
+
+    /**
+     * Registers the statistics as a MBean in the platform MBean server. <br>
+     * The statistics are registered with the name <code>org.dmonix.jdbc:type=SQLStatistics,name=[name]</code>.
+     *
+     * @param name
+     *            The name of the statistics, e.g. the name of the database
+     * @throws JMException
+     *             If the registration failed
+     * @see SQLStatisticsMXBean
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if (this.objectName != null)
+            throw new IllegalStateException("The statistics are already registered as " + this.objectName);
+
+        ObjectName objectName = new ObjectName("org.dmonix.jdbc:type=SQLStatistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Unregisters the statistics from the platform MBean server. <br>
+     * Does nothing if the statistics are not registered.
+     *
+     * @throws JMException
+     *             If the unregistration failed
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Normalizes a SQL by replacing string and numeric literals with <code>?</code> and collapsing all whitespace outside string literals to a single space.
+     *
+     * @param sql
+     *            The SQL
+     * @return The normalized SQL
+     */
+    public static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // a string literal, a quote within the literal is escaped by doubling it
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i++) == '\'') {
+                        if (i < length && sql.charAt(i) == '\'')
+                            i++;
+                        else
+                            break;
+                    }
+                }
+                sb.append('?');
+            } else if (c == '"') {
+                // a quoted identifier is kept as it is
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i)))
+                    i++;
+                if (sb.length() > 0 && i < length)
+                    sb.append(' ');
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !Character.isJavaIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                // a numeric literal, not a digit within an identifier such as T1
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+                    i++;
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package org.dmonix.jdbc;
+
+/**
+ * The management interface of the <code>SQLStatistics</code> of a connection pool. <br>
+ * Register the statistics using <code>SQLStatistics.registerMBean(String)</code> to monitor them using JMX. <br>
+ * All times are in microseconds unless stated otherwise.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public interface SQLStatisticsMXBean {
+
+    /**
+     * Get the statistics of each statement, the statement with the highest total time first.
+     * 
+     * @return The statistics
+     */
+    public SQLStatementStatistics[] getStatements();
+
+    /**
+     * Get the number of distinct statements with statistics.
+     * 
+     * @return The number of statements
+     */
+    public int getStatementCount();
+
+    /**
+     * Get the total number of executed statements.
+     * 
+     * @return The number of executions
+     */
+    public long getExecutionCount();
+
+    /**
+     * Get the number of executions that took longer than the slow query threshold.
+     * 
+     * @return The number of slow queries
+     */
+    public long getSlowQueryCount();
+
+    /**
+     * Get the slow query threshold.
+     * 
+     * @return The threshold in milliseconds, zero (0) if the slow query log is disabled
+     */
+    public long getSlowQueryThresholdMillis();
+
+    /**
+     * Set the slow query threshold.
+     * 
+     * @param threshold
+     *            The threshold in milliseconds, zero (0) disables the slow query log
+     */
+    public void setSlowQueryThresholdMillis(long threshold);
+
+    /**
+     * Resets the statistics of all statements.
+     */
+    public void resetStatistics();
+}
@@ -0,0 +1,32 @@
+package org.dmonix.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a <code>SQLException</code> thrown where a checked exception is not allowed, e.g. while iterating a <code>RowCursor</code>.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs the exception.
+     * 
+     * @param cause
+     *            The wrapped exception
+     */
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * Get the wrapped exception.
+     * 
+     * @return The exception
+     */
+    public SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
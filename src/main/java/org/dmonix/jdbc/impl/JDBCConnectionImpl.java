@@ -7,6 +7,7 @@ import java.util.logging.Logger;
 
 import org.dmonix.jdbc.JDBCConnection;
 import org.dmonix.jdbc.LoggablePreparedStatement;
+import org.dmonix.jdbc.SQLStatistics;
 
 /**
  * 
@@ -27,12 +28,34 @@ public class JDBCConnectionImpl implements JDBCConnection {
 
     private Connection connection;
 
+    private final StatementCache statementCache;
+
+    private volatile SQLStatistics statistics = SQLStatistics.getDefault();
+
     public JDBCConnectionImpl(Connection con) {
+        this(con, 0);
+    }
+
+    /**
+     * Constructs a connection with a cache of prepared statements.
+     * 
+     * @param con
+     *            The connection
+     * @param statementCacheSize
+     *            The maximum number of cached statements, zero (0) disables the cache
+     */
+    public JDBCConnectionImpl(Connection con, int statementCacheSize) {
         this.connection = con;
+        this.statementCache = new StatementCache(statementCacheSize);
     }
 
+    /**
+     * Creates a prepared statement. <br>
+     * If the connection has a statement cache a statement previously prepared for the same SQL is reused, the statement is put back in the cache once it is
+     * closed.
+     */
     public LoggablePreparedStatement prepareStatement(String sql) throws SQLException {
-        return new LoggablePreparedStatementImpl(this.connection, sql);
+        return new LoggablePreparedStatementImpl(this.connection, sql, this.statementCache, this.statistics);
     }
 
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
@@ -48,6 +71,7 @@ public class JDBCConnectionImpl implements JDBCConnection {
     }
 
     public void close() throws SQLException {
+        this.statementCache.close();
         this.connection.close();
     }
 
@@ -63,4 +87,63 @@ public class JDBCConnectionImpl implements JDBCConnection {
         return this.connection.getAutoCommit();
     }
 
+    /**
+     * Get the maximum number of prepared statements cached by the connection.
+     * 
+     * @return The size of the statement cache, zero (0) if disabled
+     */
+    public int getStatementCacheSize() {
+        return this.statementCache.getCapacity();
+    }
+
+    /**
+     * Set the maximum number of prepared statements cached by the connection. <br>
+     * The least recently used statements above the new size are closed.
+     * 
+     * @param size
+     *            The size of the statement cache, zero (0) disables the cache
+     */
+    public void setStatementCacheSize(int size) {
+        this.statementCache.setCapacity(size);
+    }
+
+    /**
+     * Get the number of prepared statements reused from the statement cache.
+     * 
+     * @return The number of cache hits
+     */
+    public long getStatementCacheHitCount() {
+        return this.statementCache.getHitCount();
+    }
+
+    /**
+     * Get the number of prepared statements that were not found in the statement cache.
+     * 
+     * @return The number of cache misses
+     */
+    public long getStatementCacheMissCount() {
+        return this.statementCache.getMissCount();
+    }
+
+    /**
+     * Get the statistics the executions of the prepared statements are recorded in.
+     * 
+     * @return The statistics, <code>null</code> if not recorded
+     */
+    public SQLStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Set the statistics the executions of the prepared statements are recorded in. <br>
+     * The default is the shared <code>SQLStatistics.getDefault()</code>, a pooled connection records in the statistics of its pool. Applies to statements
+     * prepared after the statistics have been set.
+     * 
+     * @param statistics
+     *            The statistics, <code>null</code> to not record the executions
+     */
+    public void setStatistics(SQLStatistics statistics) {
+        this.statistics = statistics;
+    }
+
 }
@@ -1,20 +1,57 @@
 package org.dmonix.jdbc.impl;
 
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.List;
-import java.util.Vector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.dmonix.jdbc.JDBCConnection;
 import org.dmonix.jdbc.JDBCConnectionFactory;
 import org.dmonix.jdbc.JDBCConnectionPool;
+import org.dmonix.jdbc.SQLStatistics;
+import org.dmonix.thread.Scheduler;
+import org.dmonix.thread.ThreadPool;
 
 /**
  * The class makes connections available to calling program in its getConnection method. <br>
  * This method searches for an available connection in the connection pool. <br>
- * If no connection is available from the pool, a new connection is created. <br>
- * If a connection is available from the pool, the getConnection method leases the connection and returns it to the calling program.
+ * If a connection is available from the pool, the getConnection method leases the connection and returns it to the calling program. <br>
+ * If no connection is available a new connection is created unless the pool already has its maximum number of connections, in which case the caller waits
+ * for a connection to be returned to the pool. Waiting callers are served in the order they arrived.
+ * <p>
+ * The pool is created with its initial number of connections, the first connection is opened immediately and the rest are opened in the background so
+ * creating the pool is fast. Connections opened on demand above the initial size are closed again once they have been idle for the idle timeout. <br>
+ * Connections are opened in the background by a small thread pool of the pool's own, the shared <code>Scheduler</code> is only used to trigger the periodic
+ * maintenance so a slow database never holds up the shared threads. If a connection opened in the background for a waiting caller fails to open the caller
+ * gets the <code>SQLException</code>.
+ * </p>
+ * <p>
+ * A connection that has been idle longer than the validation interval is validated before it is leased, a connection failing the validation is closed and
+ * another connection is acquired. The idle connections are also validated in the background so broken connections are evicted before anyone asks for
+ * them.
+ * </p>
+ * <p>
+ * Connections that are never returned are detected by setting a leak detection threshold, a connection leased longer than the threshold is logged
+ * together with the stack trace of the caller that leased it. Recording the stack trace is sampled to keep leasing cheap. Connections leased longer than
+ * the lease timeout are forcibly reclaimed, i.e. closed and removed from the pool so the capacity is given back.
+ * </p>
+ * <p>
+ * Taking an idle connection from the pool and returning a connection to the pool requires no lock, the idle connections are kept in a concurrent deque
+ * where the most recently returned connection is the first to be leased. A returned connection is handed directly to the longest waiting caller, if any.
+ * </p>
  * <p>
  * Copyright: Copyright (c) 2003
  * </p>
@@ -30,97 +67,653 @@ public class JDBCConnectionPoolImpl implements JDBCConnectionPool {
     private static final Logger log = Logger.getLogger(JDBCConnectionPoolImpl.class.getName());
     private static final long TIME_OUT = 60000;
 
-    private List<PooledJDBCConnectionImpl> freeConnections = new Vector<PooledJDBCConnectionImpl>();
-    private List<PooledJDBCConnectionImpl> usedConnections = new Vector<PooledJDBCConnectionImpl>();
-    private ConnectionReaper reaper;
+    /** The default time in milliseconds a connection above the initial size may be idle before it is closed. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+    /** The default time in milliseconds a connection may be idle before it is validated. */
+    public static final long DEFAULT_VALIDATION_INTERVAL = 5000;
+
+    /** The default time in milliseconds to wait for the database when validating a connection. */
+    public static final long DEFAULT_VALIDATION_TIMEOUT = 5000;
+
+    /** The default number of leases per recorded stack trace of the leasing caller. */
+    public static final int DEFAULT_LEAK_TRACE_SAMPLE_RATE = 10;
+
+    /** The maximum number of threads opening connections in the background. */
+    private static final int MAX_BACKGROUND_THREADS = 4;
+
+    /** The time in seconds an idle background thread is kept. */
+    private static final long BACKGROUND_KEEP_ALIVE = 30;
+
+    /** The longest interval in milliseconds between two checks of the idle connections. */
+    private static final long MAX_EVICTION_INTERVAL = 30000;
+
+    private final JDBCConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+
+    /** The number of connections, including connections being opened. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The idle connections, the first connection is the most recently returned. */
+    private final ConcurrentLinkedDeque<PooledJDBCConnectionImpl> freeConnections = new ConcurrentLinkedDeque<PooledJDBCConnectionImpl>();
+
+    /** All connections of the pool, both idle and leased. */
+    private final List<PooledJDBCConnectionImpl> connections = new CopyOnWriteArrayList<PooledJDBCConnectionImpl>();
+
+    /** The threads doing blocking I/O in the background, e.g. opening connections. */
+    private final ThreadPool backgroundExecutor = new ThreadPool(0, MAX_BACKGROUND_THREADS, BACKGROUND_KEEP_ALIVE, TimeUnit.SECONDS);
+
+    /** If a maintenance pass is queued or running on the background executor. */
+    private final AtomicBoolean maintaining = new AtomicBoolean(false);
+
+    /** The callers waiting for a connection, in the order they arrived. */
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+    /** The time in nanoseconds <code>getConnection()</code> waits for a connection. */
+    private volatile long acquireTimeoutNanos = Long.MAX_VALUE;
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+    private volatile long validationTimeout = DEFAULT_VALIDATION_TIMEOUT;
+    private volatile String validationQuery;
+    private volatile int statementCacheSize = 0;
+    private volatile long leakDetectionThreshold = 0;
+    private volatile long leaseTimeout = 0;
+    private volatile int leakTraceSampleRate = DEFAULT_LEAK_TRACE_SAMPLE_RATE;
+
+    private final AtomicInteger leaseCount = new AtomicInteger();
+
+    /** The number of leased connections, maintained by the connections as they are leased and returned. */
+    private final AtomicInteger leasedCount = new AtomicInteger();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong reclaimedCount = new AtomicLong();
+
+    /** The execution times of the statements prepared by the connections of the pool. */
+    private final SQLStatistics statistics = new SQLStatistics();
+
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> evictor;
 
     /**
-     * Constructs a pool of the initial size.
+     * Constructs a pool of the initial size. <br>
+     * The first connection is opened before the constructor returns, the remaining connections of the initial size are opened in the background.
      * 
-     * @param url
-     *            The URL for the connection
-     * @param user
-     *            The user for the connection
-     * @param password
-     *            The password for the connection
+     * @param factory
+     *            The factory for the connections
      * @param initialSize
-     *            The initial size of the pool
-     * @param autoCommit
-     *            If the connections shall be autocommiting
+     *            The initial size of the pool, this is also the minimum size the pool shrinks to
+     * @param maxSize
+     *            The maximum size of the pool, zero (0) means unlimited amount
      * @throws SQLException
+     *             If the first connection could not be opened
      */
     public JDBCConnectionPoolImpl(JDBCConnectionFactory factory, int initialSize, int maxSize) throws SQLException {
-        this.freeConnections = new Vector<PooledJDBCConnectionImpl>(initialSize);
+        this(factory, initialSize, maxSize, true);
+    }
+
+    /**
+     * Constructs a pool of the initial size, optionally without opening any connections. <br>
+     * A pool constructed without connections opens them as they are requested, this is used for databases that may not be reachable at the time.
+     * 
+     * @param factory
+     *            The factory for the connections
+     * @param initialSize
+     *            The initial size of the pool, this is also the minimum size the pool shrinks to
+     * @param maxSize
+     *            The maximum size of the pool, zero (0) means unlimited amount
+     * @param open
+     *            If the connections of the initial size should be opened
+     * @throws SQLException
+     *             If the first connection could not be opened
+     */
+    JDBCConnectionPoolImpl(JDBCConnectionFactory factory, int initialSize, int maxSize, boolean open) throws SQLException {
+        if (initialSize < 0 || (maxSize != 0 && maxSize < initialSize))
+            throw new IllegalArgumentException("Illegal pool size [initial=" + initialSize + "] [max=" + maxSize + "]");
 
-        for (int i = 0; i < initialSize; i++) {
-            PooledJDBCConnectionImpl c = new PooledJDBCConnectionImpl(this, (JDBCConnectionImpl) factory.getConnection());
-            freeConnections.add(c);
+        this.factory = factory;
+        this.minSize = initialSize;
+        this.maxSize = maxSize == 0 ? Integer.MAX_VALUE : maxSize;
+
+        if (open && initialSize > 0) {
+            this.size.incrementAndGet();
+            this.freeConnections.add(this.openConnection());
+            for (int i = 1; i < initialSize; i++) {
+                this.size.incrementAndGet();
+                this.openConnectionLater();
+            }
         }
+
+        this.scheduleEvictor();
     }
 
     /**
-     * This will close and remove all connections from the pool.
+     * This will close and remove all connections from the pool. <br>
+     * Callers waiting for a connection get an <code>SQLException</code>.
      */
     public void close() {
-        for (PooledJDBCConnectionImpl conn : freeConnections) {
-            try {
-                conn.close2();
-            } catch (SQLException ex) {
-            }
+        this.closed = true;
+        synchronized (this) {
+            if (this.evictor != null)
+                this.evictor.cancel(false);
         }
-        freeConnections.clear();
 
-        for (PooledJDBCConnectionImpl conn : usedConnections) {
+        Waiter waiter;
+        while ((waiter = this.waiters.poll()) != null)
+            waiter.cancel();
+        this.backgroundExecutor.shutdown();
+
+        for (PooledJDBCConnectionImpl conn : this.connections) {
             try {
                 conn.close2();
             } catch (SQLException ex) {
             }
         }
-        usedConnections.clear();
+        this.connections.clear();
+        this.freeConnections.clear();
+    }
+
+    /**
+     * Get the time <code>getConnection()</code> waits for a connection to be returned to the pool.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The timeout, <code>Long.MAX_VALUE</code> if waiting forever
+     */
+    public long getAcquireTimeout(TimeUnit unit) {
+        long timeout = this.acquireTimeoutNanos;
+        return timeout == Long.MAX_VALUE ? Long.MAX_VALUE : unit.convert(timeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the time <code>getConnection()</code> waits for a connection to be returned to the pool. <br>
+     * By default the method waits forever.
+     * 
+     * @param timeout
+     *            The timeout, <code>Long.MAX_VALUE</code> to wait forever
+     * @param unit
+     *            The unit of the timeout
+     */
+    public void setAcquireTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("The timeout must not be negative");
+        this.acquireTimeoutNanos = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(timeout);
+    }
+
+    /**
+     * Get the time a connection above the initial size of the pool may be idle before it is closed.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The idle timeout
+     */
+    public long getIdleTimeout(TimeUnit unit) {
+        return unit.convert(this.idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time a connection above the initial size of the pool may be idle before it is closed. <br>
+     * The default is <code>DEFAULT_IDLE_TIMEOUT</code>.
+     * 
+     * @param timeout
+     *            The idle timeout
+     * @param unit
+     *            The unit of the timeout
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("The idle timeout must be positive");
+        this.idleTimeout = unit.toMillis(timeout);
+        this.scheduleEvictor();
+    }
+
+    /**
+     * Get the time a connection may be idle before it is validated.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The validation interval
+     */
+    public long getValidationInterval(TimeUnit unit) {
+        return unit.convert(this.validationInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time a connection may be idle before it is validated. <br>
+     * A connection that has been idle shorter than this is leased without validation, a connection is therefore not validated when it is passed from one
+     * caller to another under load. <br>
+     * The idle connections are checked in the background at the same interval, though at least every 30 seconds. <br>
+     * The default is <code>DEFAULT_VALIDATION_INTERVAL</code>, zero (0) validates the connection every time it is leased.
+     * 
+     * @param interval
+     *            The validation interval
+     * @param unit
+     *            The unit of the interval
+     */
+    public void setValidationInterval(long interval, TimeUnit unit) {
+        if (interval < 0)
+            throw new IllegalArgumentException("The validation interval must not be negative");
+        this.validationInterval = unit.toMillis(interval);
+        this.scheduleEvictor();
+    }
+
+    /**
+     * Get the time to wait for the database when validating a connection.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The validation timeout
+     */
+    public long getValidationTimeout(TimeUnit unit) {
+        return unit.convert(this.validationTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time to wait for the database when validating a connection. <br>
+     * The JDBC API measures the timeout in seconds, the timeout is therefore rounded to at least one second. <br>
+     * The default is <code>DEFAULT_VALIDATION_TIMEOUT</code>.
+     * 
+     * @param timeout
+     *            The validation timeout
+     * @param unit
+     *            The unit of the timeout
+     */
+    public void setValidationTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("The validation timeout must be positive");
+        this.validationTimeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Get the query used to validate connections.
+     * 
+     * @return The query, <code>null</code> if the driver validates the connections
+     */
+    public String getValidationQuery() {
+        return this.validationQuery;
+    }
+
+    /**
+     * Set a query used to validate connections, e.g. <code>SELECT 1</code>. <br>
+     * By default there is no query and the connections are validated with <code>Connection.isValid(int)</code>, a query is only needed for drivers that do
+     * not implement a proper validation.
+     * 
+     * @param query
+     *            The query, <code>null</code> to let the driver validate the connections
+     */
+    public void setValidationQuery(String query) {
+        this.validationQuery = query;
+    }
+
+    /**
+     * Get the maximum number of prepared statements cached by each connection.
+     * 
+     * @return The size of the statement cache, zero (0) if disabled
+     */
+    public int getStatementCacheSize() {
+        return this.statementCacheSize;
+    }
+
+    /**
+     * Set the maximum number of prepared statements cached by each connection. <br>
+     * A connection with a statement cache reuses the prepared statement of a SQL it has prepared before, a statement is put back in the cache when it is
+     * closed and the least recently used statements are closed when the cache is full. <br>
+     * The size applies to all connections of the pool, by default there is no statement cache.
+     * 
+     * @param size
+     *            The size of the statement cache, zero (0) disables the cache
+     */
+    public void setStatementCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("The statement cache size must not be negative");
+        this.statementCacheSize = size;
+        for (PooledJDBCConnectionImpl conn : this.connections)
+            conn.setStatementCacheSize(size);
+    }
+
+    /**
+     * Get the number of prepared statements the current connections of the pool reused from their statement caches.
+     * 
+     * @return The number of cache hits
+     */
+    public long getStatementCacheHitCount() {
+        long count = 0;
+        for (PooledJDBCConnectionImpl conn : this.connections)
+            count += conn.getStatementCacheHitCount();
+        return count;
+    }
+
+    /**
+     * Get the number of prepared statements the current connections of the pool did not find in their statement caches.
+     * 
+     * @return The number of cache misses
+     */
+    public long getStatementCacheMissCount() {
+        long count = 0;
+        for (PooledJDBCConnectionImpl conn : this.connections)
+            count += conn.getStatementCacheMissCount();
+        return count;
+    }
+
+    /**
+     * Get the execution times of the statements prepared by the connections of the pool. <br>
+     * The statistics can be monitored using JMX by registering them, see <code>SQLStatistics.registerMBean(String)</code>.
+     * 
+     * @return The statistics
+     */
+    public SQLStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Get the time a connection may be leased before it is reported as a possible leak.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The threshold, zero (0) if leak detection is disabled
+     */
+    public long getLeakDetectionThreshold(TimeUnit unit) {
+        return unit.convert(this.leakDetectionThreshold, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time a connection may be leased before it is reported as a possible leak. <br>
+     * A connection leased longer than the threshold is logged on level WARNING once per lease, together with the stack trace of the caller that leased it
+     * if it was recorded, see <code>setLeakTraceSampleRate(int)</code>. The leased connections are checked at the same interval as the idle connections,
+     * though at least as often as the threshold. <br>
+     * Leak detection is disabled by default.
+     * 
+     * @param threshold
+     *            The threshold, zero (0) disables leak detection
+     * @param unit
+     *            The unit of the threshold
+     */
+    public void setLeakDetectionThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("The leak detection threshold must not be negative");
+        this.leakDetectionThreshold = unit.toMillis(threshold);
+        this.scheduleEvictor();
+    }
+
+    /**
+     * Get the time a connection may be leased before it is reclaimed by the pool.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The lease timeout, zero (0) if connections are never reclaimed
+     */
+    public long getLeaseTimeout(TimeUnit unit) {
+        return unit.convert(this.leaseTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time a connection may be leased before it is reclaimed by the pool. <br>
+     * A reclaimed connection is closed and removed from the pool so its capacity can be used by other callers, the caller holding the connection gets an
+     * <code>SQLException</code> if it continues using it. <br>
+     * Connections are never reclaimed by default.
+     * 
+     * @param timeout
+     *            The lease timeout, zero (0) to never reclaim connections
+     * @param unit
+     *            The unit of the timeout
+     */
+    public void setLeaseTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("The lease timeout must not be negative");
+        this.leaseTimeout = unit.toMillis(timeout);
+        this.scheduleEvictor();
+    }
+
+    /**
+     * Get how often the stack trace of the leasing caller is recorded.
+     * 
+     * @return The number of leases per recorded stack trace
+     */
+    public int getLeakTraceSampleRate() {
+        return this.leakTraceSampleRate;
+    }
+
+    /**
+     * Set how often the stack trace of the leasing caller is recorded when leak detection or the lease timeout is enabled. <br>
+     * Recording a stack trace is expensive compared to leasing a connection so only every n:th lease is recorded, a leaking caller is still found as it
+     * sooner or later leaks a recorded connection. <br>
+     * The default is <code>DEFAULT_LEAK_TRACE_SAMPLE_RATE</code>.
+     * 
+     * @param rate
+     *            The number of leases per recorded stack trace, one (1) records every lease and zero (0) records none
+     */
+    public void setLeakTraceSampleRate(int rate) {
+        if (rate < 0)
+            throw new IllegalArgumentException("The leak trace sample rate must not be negative");
+        this.leakTraceSampleRate = rate;
+    }
+
+    /**
+     * Get the number of leases that have been reported as possible leaks.
+     * 
+     * @return The number of leaks
+     */
+    public long getLeakCount() {
+        return this.leakCount.get();
+    }
+
+    /**
+     * Get the number of connections that have been reclaimed as they were leased longer than the lease timeout.
+     * 
+     * @return The number of reclaimed connections
+     */
+    public long getReclaimedCount() {
+        return this.reclaimedCount.get();
+    }
+
+    /**
+     * Get the minimum size of the pool, i.e. the initial size.
+     * 
+     * @return The minimum number of connections
+     */
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * Get the maximum size of the pool.
+     * 
+     * @return The maximum number of connections, <code>Integer.MAX_VALUE</code> if unlimited
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
 
+    /**
+     * Get the total number of connections in the pool, including connections that are being opened.
+     * 
+     * @return The number of connections
+     */
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * Get the number of leased connections.
+     * 
+     * @return The number of leased connections
+     */
+    public int getLeasedCount() {
+        return this.leasedCount.get();
+    }
+
+    /**
+     * Counts a connection being leased or returned.
+     * 
+     * @param delta
+     *            1 for a lease, -1 for a return
+     */
+    void countLease(int delta) {
+        this.leasedCount.addAndGet(delta);
+    }
+
+    /**
+     * Get the number of idle connections.
+     * 
+     * @return The number of idle connections
+     */
+    public int getIdleCount() {
+        return this.freeConnections.size();
+    }
+
+    /**
+     * Get the number of callers waiting for a connection.
+     * 
+     * @return The number of waiting callers
+     */
+    public int getWaiterCount() {
+        return this.waiters.size();
     }
 
     /**
      * The method searches for an available connection in the connection pool.<br>
-     * If no connection is available from the pool, the method is put on hold using <code>wait()</code>. If a connection is available from the pool, the
-     * getConnection method leases the connection and returns it to the calling program
+     * If no connection is available from the pool a new connection is opened, unless the pool is at its maximum size in which case the caller waits for at
+     * most the acquire timeout of the pool for a connection to be returned. If a connection is available from the pool, the getConnection method leases the
+     * connection and returns it to the calling program
      * 
      * @return The connection
+     * @throws SQLTimeoutException
+     *             If no connection was available within the acquire timeout
      * @throws SQLException
+     *             If the pool is closed or the calling thread was interrupted while waiting
+     * @see #setAcquireTimeout(long, TimeUnit)
      */
     public JDBCConnection getConnection() throws SQLException {
-        while (freeConnections.size() == 0)
-            try {
-                if (log.isLoggable(Level.INFO))
-                    log.log(Level.INFO, "Connection pool is empty, thread put on hold");
+        return this.getConnection(this.acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The method searches for an available connection in the connection pool.<br>
+     * If no connection is available from the pool a new connection is opened, unless the pool is at its maximum size in which case the caller waits for at
+     * most the provided time for a connection to be returned. If a connection is available from the pool, the getConnection method leases the connection and
+     * returns it to the calling program
+     * 
+     * @param timeout
+     *            The maximum time to wait, <code>Long.MAX_VALUE</code> to wait forever
+     * @param unit
+     *            The unit of the timeout
+     * @return The connection
+     * @throws SQLTimeoutException
+     *             If no connection was available within the timeout
+     * @throws SQLException
+     *             If the pool is closed or the calling thread was interrupted while waiting
+     */
+    public JDBCConnection getConnection(long timeout, TimeUnit unit) throws SQLException {
+        this.checkOpen();
 
-                wait();
-            } catch (java.lang.InterruptedException e) {
+        long timeoutNanos = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(timeout);
+        long deadline = System.nanoTime() + timeoutNanos;
+        PooledJDBCConnectionImpl c;
+        while (true) {
+            // the fast path, an idle connection and nobody waiting before us
+            c = this.waiters.isEmpty() ? this.freeConnections.pollFirst() : null;
+            if (c == null && this.reserveSlot()) {
+                c = this.openConnection();
+                break; // a new connection needs no validation
             }
-        ;
+            if (c == null)
+                c = this.awaitConnection(timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.nanoTime()));
 
-        PooledJDBCConnectionImpl c = (PooledJDBCConnectionImpl) this.freeConnections.remove(0);
-        usedConnections.add(c);
-        c.lease();
+            if (this.isAlive(c))
+                break;
+            log.log(Level.WARNING, "Discarding broken connection : " + c.toString());
+            this.discard(c);
+        }
 
+        c.lease(this.leaseTrace());
         if (log.isLoggable(Level.FINER))
             log.log(Level.FINER, "Got connection : " + c.toString());
 
         return c;
     }
 
+    /**
+     * Waits in line for a connection to be returned to the pool.
+     * 
+     * @param timeoutNanos
+     *            The maximum time to wait
+     * @return The connection
+     * @throws SQLException
+     *             If no connection was available within the timeout, the pool was closed or the calling thread was interrupted
+     */
+    private PooledJDBCConnectionImpl awaitConnection(long timeoutNanos) throws SQLException {
+        if (log.isLoggable(Level.FINE))
+            log.log(Level.FINE, "Connection pool is empty, thread put on hold");
+
+        Waiter waiter = new Waiter();
+        this.waiters.offer(waiter);
+
+        /*
+         * A connection may have been returned after the fast path but before this caller was visible as waiting
+         */
+        PooledJDBCConnectionImpl c = this.freeConnections.pollFirst();
+        if (c != null) {
+            if (waiter.cancel()) {
+                this.waiters.remove(waiter);
+                return c;
+            }
+            this.release(c); // a connection was handed to this waiter at the same time
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        boolean interrupted = false;
+        while (waiter.get() == null) {
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+            if (timeoutNanos == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+
+        if (waiter.cancel()) {
+            this.waiters.remove(waiter);
+            this.checkOpen();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection");
+            }
+            throw new SQLTimeoutException("No connection available within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms [size="
+                    + this.connections.size() + "]");
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        Object handed = waiter.get();
+        if (handed == Waiter.CANCELLED)
+            throw new SQLException("The connection pool has been closed");
+        if (handed instanceof SQLException)
+            throw new SQLException("Failed to open a connection : " + ((SQLException) handed).getMessage(), (SQLException) handed);
+        return (PooledJDBCConnectionImpl) handed;
+    }
+
+    /**
+     * Starts reclaiming connections that have been leased longer than one minute. <br>
+     * Equals setting a lease timeout of one minute, see <code>setLeaseTimeout(long, TimeUnit)</code>.
+     */
     public void startConnectionReaper() {
-        if (this.reaper != null)
+        if (this.leaseTimeout > 0)
             throw new IllegalStateException("The connection reaper has already been started.");
 
-        this.reaper = new ConnectionReaper();
-        this.reaper.start();
+        this.setLeaseTimeout(TIME_OUT, TimeUnit.MILLISECONDS);
     }
 
     /**
      * This will return a connection to the pool. <br>
-     * If the pool was previously empty, the method invokes <code>notify()</code> in order to release any thread waiting in the method
-     * <code>getConnection()</code>
+     * The connection is handed to the longest waiting caller in <code>getConnection()</code>, if there is no waiting caller the connection is put back
+     * among the idle connections. <br>
+     * Returning a connection that is not leased has no effect.
      * 
      * @param conn
      *            The connection to return
@@ -129,59 +722,378 @@ public class JDBCConnectionPoolImpl implements JDBCConnectionPool {
         if (log.isLoggable(Level.FINER))
             log.log(Level.FINER, "Returned connection : " + conn.toString());
 
-        conn.expireLease();
-        usedConnections.remove(conn);
-        freeConnections.add(conn);
-
-        if (freeConnections.size() == 1)
-            notifyAll();
+        if (conn.expireLease())
+            this.release(conn);
     }
 
     /**
-     * The method will remove any hanging, dead connections. <br>
-     * A connection is dead if the following conditions are met.
-     * <ul>
-     * <li>The connection is flagged as being in use.</li>
-     * <li>The connection is older than a preset connection time out.</li>
-     * <li>The connection fails a validation check.</li>
-     * </ul>
+     * Hands a connection to the longest waiting caller or puts it back among the idle connections.
+     * 
+     * @param conn
+     *            The connection
      */
-    private void reapConnections() {
-        long staleTime = System.currentTimeMillis() - TIME_OUT;
-        for (PooledJDBCConnectionImpl conn : usedConnections) {
-            if ((conn.inUse()) && (staleTime > conn.getLastUse()) && (!conn.validate())) {
-                log.log(Level.WARNING, "Found a stale connection : " + conn.toString());
-                usedConnections.remove(conn);
+    private void release(PooledJDBCConnectionImpl conn) {
+        while (true) {
+            if (this.closed) {
+                try {
+                    conn.close2();
+                } catch (SQLException ex) {
+                }
+                return;
             }
+
+            Waiter waiter;
+            while ((waiter = this.waiters.poll()) != null) {
+                if (waiter.offer(conn))
+                    return;
+            }
+            this.freeConnections.offerFirst(conn);
+
+            /*
+             * A caller may have started waiting after the waiters were checked but looked for an idle connection before this connection was put back, take the
+             * connection back and hand it over
+             */
+            if (this.waiters.isEmpty())
+                return;
+            conn = this.freeConnections.pollFirst();
+            if (conn == null)
+                return;
         }
     }
 
     /**
-     * The connection pool class provides a dead connection reaper to handle locked, hanging connections. <br>
-     * At an even interval the class will invoke the method <code>reapConnections</code> on the ConnectionPool class.
-     * <p>
-     * Copyright: Copyright (c) 2003
-     * </p>
-     * <p>
-     * Company: dmonix.org
-     * </p>
+     * Increments the size of the pool unless the pool already has its maximum number of connections.
+     * 
+     * @return <code>true</code> if the size was incremented
+     */
+    private boolean reserveSlot() {
+        int count;
+        do {
+            count = this.size.get();
+            if (count >= this.maxSize)
+                return false;
+        } while (!this.size.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Opens a new connection, the size of the pool must already have been incremented. <br>
+     * Should the connection fail to open the size is decremented again.
      * 
-     * @author Peter Nerg
-     * @since 1.0
+     * @return The connection
+     * @throws SQLException
+     *             If the connection could not be opened
      */
-    private class ConnectionReaper extends Thread {
+    private PooledJDBCConnectionImpl openConnection() throws SQLException {
+        try {
+            PooledJDBCConnectionImpl c = new PooledJDBCConnectionImpl(this, (JDBCConnectionImpl) this.factory.getConnection());
+            this.connections.add(c);
+            c.setStatementCacheSize(this.statementCacheSize); // the size may have changed while the connection was opened
+            if (log.isLoggable(Level.FINE))
+                log.log(Level.FINE, "Opened connection : " + c.toString() + " [size=" + this.size.get() + "]");
+            return c;
+        } catch (SQLException ex) {
+            this.size.decrementAndGet();
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.size.decrementAndGet();
+            throw ex;
+        }
+    }
 
-        private ConnectionReaper() {
+    /**
+     * Opens a new connection in the background on the background executor of the pool, the size of the pool must already have been incremented. <br>
+     * The connection is handed to a waiting caller or put among the idle connections. Should the connection fail to open a waiting caller is handed the
+     * failure.
+     */
+    private void openConnectionLater() {
+        try {
+            this.backgroundExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release(openConnection());
+                    } catch (SQLException ex) {
+                        openFailed(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.size.decrementAndGet();
+            if (!this.closed)
+                this.openFailed(new SQLException("Failed to schedule the opening of a connection", ex));
         }
+    }
 
-        public void run() {
-            while (true) {
-                try {
-                    sleep(TIME_OUT);
-                } catch (InterruptedException e) {
+    /**
+     * Handles a connection that failed to open in the background, the size of the pool must already have been decremented. <br>
+     * The connection may have been opened for a waiting caller, the longest waiting caller is therefore handed the exception instead of waiting for a
+     * connection that will never come.
+     * 
+     * @param ex
+     *            The cause of the failure
+     */
+    private void openFailed(SQLException ex) {
+        log.log(Level.WARNING, "Failed to open a connection in the background", ex);
+        Waiter waiter;
+        while ((waiter = this.waiters.poll()) != null) {
+            if (waiter.fail(ex))
+                return;
+        }
+    }
+
+    /**
+     * Closes and removes a connection from the pool. <br>
+     * A replacement is opened if the pool falls below its minimum size or if callers are waiting for a connection.
+     * 
+     * @param conn
+     *            The connection
+     */
+    private void discard(PooledJDBCConnectionImpl conn) {
+        this.connections.remove(conn);
+        this.size.decrementAndGet();
+        try {
+            conn.close2();
+        } catch (SQLException ex) {
+            log.log(Level.FINE, "Failed to close the connection : " + conn.toString(), ex);
+        }
+
+        // a caller may be waiting for a connection while the pool is at its maximum size, open a replacement for it
+        if (!this.closed && (this.size.get() < this.minSize || !this.waiters.isEmpty()) && this.reserveSlot())
+            this.openConnectionLater();
+    }
+
+    /**
+     * Checks if a connection about to be leased works. <br>
+     * Only connections that have been idle longer than the validation interval are validated.
+     * 
+     * @param conn
+     *            The connection
+     * @return <code>true</code> if the connection can be leased
+     */
+    private boolean isAlive(PooledJDBCConnectionImpl conn) {
+        if (System.currentTimeMillis() - conn.getLastAlive() < this.validationInterval)
+            return true;
+        return conn.validate();
+    }
+
+    /**
+     * Closes idle connections above the minimum size that have been idle longer than the idle timeout. <br>
+     * The connection idle the longest is the last of the idle connections.
+     */
+    private void evictIdleConnections() {
+        long idleSince = System.currentTimeMillis() - this.idleTimeout;
+        PooledJDBCConnectionImpl conn;
+        while (this.size.get() > this.minSize && (conn = this.freeConnections.peekLast()) != null && conn.getIdleSince() < idleSince) {
+            if (this.freeConnections.removeLastOccurrence(conn)) {
+                if (log.isLoggable(Level.FINE))
+                    log.log(Level.FINE, "Closing idle connection : " + conn.toString());
+                this.discard(conn);
+            }
+        }
+    }
+
+    /**
+     * Validates the idle connections that have not been validated within the validation interval and closes the broken ones. <br>
+     * A connection is taken out of the pool while it is validated so it cannot be leased at the same time. The connections are validated in parallel by the
+     * background executor so a database that does not respond costs one validation timeout and not one per connection.
+     */
+    private void evictBrokenConnections() {
+        long aliveSince = System.currentTimeMillis() - this.validationInterval;
+        for (final PooledJDBCConnectionImpl conn : this.freeConnections) {
+            if (this.closed || conn.getLastAlive() >= aliveSince || !this.freeConnections.removeFirstOccurrence(conn))
+                continue;
+
+            try {
+                this.backgroundExecutor.execute(new Runnable() {
+                    public void run() {
+                        validateIdleConnection(conn);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                this.validateIdleConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * Validates an idle connection taken out of the pool, a working connection is put back last among the idle connections and a broken connection is
+     * closed.
+     * 
+     * @param conn
+     *            The connection
+     */
+    private void validateIdleConnection(PooledJDBCConnectionImpl conn) {
+        if (conn.validate()) {
+            this.freeConnections.offerLast(conn);
+            // a caller may have started waiting while the connection was out of the pool
+            if ((this.closed || !this.waiters.isEmpty()) && (conn = this.freeConnections.pollFirst()) != null)
+                this.release(conn);
+        } else {
+            log.log(Level.WARNING, "Discarding broken idle connection : " + conn.toString());
+            this.discard(conn);
+        }
+    }
+
+    /**
+     * Queues a maintenance pass on the background executor unless one is already queued or running. <br>
+     * The maintenance closes and validates connections, i.e. it blocks on the database, and is therefore only triggered by the shared
+     * <code>Scheduler</code>.
+     */
+    private void maintainLater() {
+        if (this.closed || !this.maintaining.compareAndSet(false, true))
+            return;
+        try {
+            this.backgroundExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        evictIdleConnections();
+                        evictBrokenConnections();
+                        reapConnections();
+                    } finally {
+                        maintaining.set(false);
+                    }
                 }
-                reapConnections();
+            });
+        } catch (RejectedExecutionException ex) {
+            this.maintaining.set(false);
+        }
+    }
+
+    /**
+     * Schedules the periodic check of the idle connections using the shared <code>Scheduler</code>, any previous schedule is cancelled.
+     */
+    private synchronized void scheduleEvictor() {
+        if (this.closed)
+            return;
+        if (this.evictor != null)
+            this.evictor.cancel(false);
+
+        long interval = Math.min(this.idleTimeout, MAX_EVICTION_INTERVAL);
+        if (this.validationInterval > 0)
+            interval = Math.min(interval, this.validationInterval);
+        if (this.leakDetectionThreshold > 0)
+            interval = Math.min(interval, this.leakDetectionThreshold);
+        if (this.leaseTimeout > 0)
+            interval = Math.min(interval, this.leaseTimeout);
+        this.evictor = Scheduler.getDefault().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                maintainLater();
             }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Verifies that the pool has not been closed.
+     * 
+     * @throws SQLException
+     *             If the pool is closed
+     */
+    private void checkOpen() throws SQLException {
+        if (this.closed)
+            throw new SQLException("The connection pool has been closed");
+    }
+
+    /**
+     * Records the stack trace of the caller leasing a connection if leak detection is enabled and the lease is sampled.
+     * 
+     * @return The stack trace, <code>null</code> if not recorded
+     */
+    private Throwable leaseTrace() {
+        int rate = this.leakTraceSampleRate;
+        if (rate == 0 || (this.leakDetectionThreshold == 0 && this.leaseTimeout == 0))
+            return null;
+        if (rate > 1 && this.leaseCount.incrementAndGet() % rate != 0)
+            return null;
+        return new Throwable("Connection leased by thread [" + Thread.currentThread().getName() + "]");
+    }
+
+    /**
+     * Reports the connections leased longer than the leak detection threshold and reclaims the connections leased longer than the lease timeout. <br>
+     * A reclaimed connection is closed and removed from the pool, the leasing caller can no longer return it.
+     */
+    private void reapConnections() {
+        long threshold = this.leakDetectionThreshold;
+        long timeout = this.leaseTimeout;
+        if (threshold == 0 && timeout == 0)
+            return;
+
+        long now = System.currentTimeMillis();
+        for (PooledJDBCConnectionImpl conn : this.connections) {
+            long lease = conn.getLeaseId();
+            if (this.closed || (lease & 1) == 0)
+                continue;
+
+            long leasedAt = conn.getLastUse();
+            Throwable trace = conn.getLeaseTrace();
+            // the time and trace are only trusted if the connection was not returned or leased again while they were read
+            if (leasedAt < 0 || conn.getLeaseId() != lease)
+                continue;
+
+            long held = now - leasedAt;
+            if (threshold > 0 && held >= threshold && conn.markLeakReported(lease)) {
+                this.leakCount.incrementAndGet();
+                log.log(Level.WARNING, "Connection leased for " + held + " ms, possible leak : " + conn.toString(), trace);
+            }
+
+            // only expires the lease that was checked, a connection returned and leased again in between is left alone
+            if (timeout > 0 && held >= timeout && conn.expireLease(lease)) {
+                this.reclaimedCount.incrementAndGet();
+                log.log(Level.WARNING, "Reclaiming connection leased for " + held + " ms : " + conn.toString(), trace);
+                this.discard(conn);
+            }
+        }
+    }
+
+    /**
+     * A caller waiting for a connection. <br>
+     * The waiter is either handed a connection or cancelled, whichever happens first.
+     */
+    private static final class Waiter extends AtomicReference<Object> {
+        private static final long serialVersionUID = 1L;
+
+        /** Marks a waiter that timed out, was interrupted or whose pool was closed. */
+        private static final Object CANCELLED = new Object();
+
+        private final Thread thread = Thread.currentThread();
+
+        /**
+         * Hands a connection to the waiter.
+         * 
+         * @param conn
+         *            The connection
+         * @return <code>true</code> if the waiter accepted the connection
+         */
+        private boolean offer(PooledJDBCConnectionImpl conn) {
+            if (!this.compareAndSet(null, conn))
+                return false;
+            LockSupport.unpark(this.thread);
+            return true;
+        }
+
+        /**
+         * Hands the failure to open a connection to the waiter.
+         * 
+         * @param ex
+         *            The failure
+         * @return <code>true</code> if the waiter accepted the failure
+         */
+        private boolean fail(SQLException ex) {
+            if (!this.compareAndSet(null, ex))
+                return false;
+            LockSupport.unpark(this.thread);
+            return true;
+        }
+
+        /**
+         * Cancels the waiter.
+         * 
+         * @return <code>true</code> if cancelled, <code>false</code> if the waiter already has been handed a connection
+         */
+        private boolean cancel() {
+            if (!this.compareAndSet(null, CANCELLED))
+                return false;
+            LockSupport.unpark(this.thread);
+            return true;
         }
     }
 
@@ -1,12 +1,17 @@
 package org.dmonix.jdbc.impl;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.dmonix.jdbc.LoggablePreparedStatement;
+import org.dmonix.jdbc.SQLStatementStatistics;
+import org.dmonix.jdbc.SQLStatistics;
 
 /**
  * This class is wrapped around a <code>java.sql.PreparedStatement</code> object in order to offer additional functionality not included by the Java JDBC API.<br>
@@ -28,6 +33,12 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
 
     private static final int INITIAL_PARAMLIST_SIZE = 10;
 
+    /** The captured value of a parameter bound to SQL <code>NULL</code>. */
+    private static final Object NULL = new Object();
+
+    /** The default number of rows sent to the database in one batch. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
     /** The actual prepared statement */
     private PreparedStatement preparedStatement;
 
@@ -35,14 +46,67 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
     private String sqlStatement;
 
     /**
-     * The bind parameter values for this statement. The key is the parameter position (1..n) The value is the value of the bind parameter.
+     * The bind parameter values for this statement, the value of parameter position n (1..n) is stored at index n-1. <br>
+     * The values are only captured if FINE logging was enabled when the statement was created, the array is reused for every execution.
      */
-    private Map<Integer, String> parameters;
+    private Object[] parameters;
+
+    /** The highest bound parameter position. */
+    private int parameterCount = 0;
+
+    /** If the bind parameter values are captured for logging. */
+    private final boolean captureParameters;
+
+    /** The cache the statement is returned to when closed, <code>null</code> if not cached. */
+    private StatementCache cache;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** The fetch size of the statement before it was first changed, restored before a cached statement is released. -1 if not changed. */
+    private int originalFetchSize = -1;
+
+    /** The number of rows added to the batch but not yet sent to the database. */
+    private int batchRows = 0;
+
+    /** The update counts of the rows sent since the last <code>executeBatch()</code>. */
+    private int[] updateCounts = new int[0];
+    private int updateCountSize = 0;
+
+    /** The first row of the batch not yet sent, only kept if logging is enabled. */
+    private String firstBatchRow;
+
+    /** The statistics the executions are recorded in, <code>null</code> if not recorded. */
+    private final SQLStatistics statistics;
+    private final SQLStatementStatistics statementStatistics;
 
     public LoggablePreparedStatementImpl(Connection con, String stmt) throws SQLException {
+        this(con, stmt, null, null);
+    }
+
+    /**
+     * Constructs a statement, reusing a prepared statement from the cache if there is one for the SQL.
+     * 
+     * @param con
+     *            The connection
+     * @param stmt
+     *            The SQL statement
+     * @param cache
+     *            The statement cache of the connection, <code>null</code> if not cached
+     * @param statistics
+     *            The statistics to record the execution times in, <code>null</code> if not recorded
+     * @throws SQLException
+     *             If the statement could not be prepared
+     */
+    LoggablePreparedStatementImpl(Connection con, String stmt, StatementCache cache, SQLStatistics statistics) throws SQLException {
         this.sqlStatement = stmt;
-        this.preparedStatement = con.prepareStatement(stmt);
-        this.parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+        this.cache = cache;
+        if (cache != null)
+            this.preparedStatement = cache.take(stmt);
+        if (this.preparedStatement == null)
+            this.preparedStatement = con.prepareStatement(stmt);
+        this.statistics = statistics;
+        this.statementStatistics = statistics == null ? null : statistics.getStatement(stmt);
+        this.captureParameters = logger.isLoggable(Level.FINE) || (statistics != null && statistics.isSlowQueryLogEnabled());
     }
 
     /**
@@ -62,11 +126,11 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
             this.preparedStatement.getConnection().commit();
         } catch (SQLException ex) {
             logger.log(Level.WARNING, "commit() : Failed to commit statement : \n" + toString(), ex);
-            parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+            this.clearParameters();
             this.close();
             throw ex;
         }
-        parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+        this.clearParameters();
     }
 
     /**
@@ -84,26 +148,44 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
         } catch (SQLException ex) {
             String error = "Failed to rollback statement : \n" + toString();
             logger.log(Level.SEVERE, "rollback() : " + error, ex);
-            parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+            this.clearParameters();
             throw ex;
         }
-        parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+        this.clearParameters();
     }
 
     /**
-     * Close the statement.
+     * Close the statement. <br>
+     * A statement of a connection with a statement cache is put back in the cache instead of being closed, it is closed once it is evicted from the cache or
+     * the connection is closed.
      */
     public void close() {
         this.checkSessionState();
 
-        try {
-            this.preparedStatement.close();
-        } catch (Exception ex) {
-            logger.log(Level.SEVERE, "close() : Failed to close statement", ex);
+        if (this.batchRows > 0)
+            this.clearBatch();
+
+        if (this.cache != null) {
+            if (this.originalFetchSize >= 0) {
+                try {
+                    this.preparedStatement.setFetchSize(this.originalFetchSize);
+                } catch (SQLException ex) {
+                    logger.log(Level.SEVERE, "close() : Failed to restore the fetch size of statement \n" + this.sqlStatement, ex);
+                }
+                this.originalFetchSize = -1;
+            }
+            this.cache.release(this.sqlStatement, this.preparedStatement);
+        } else {
+            try {
+                this.preparedStatement.close();
+            } catch (Exception ex) {
+                logger.log(Level.SEVERE, "close() : Failed to close statement", ex);
+            }
         }
 
         this.sqlStatement = null;
         this.parameters = null;
+        this.parameterCount = 0;
         this.preparedStatement = null;
     }
 
@@ -127,6 +209,7 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
         this.checkSessionState();
 
         boolean result = false;
+        long start = System.nanoTime();
         try {
 
             if (logger.isLoggable(Level.FINE)) {
@@ -135,12 +218,14 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
 
             result = this.preparedStatement.execute();
         } catch (SQLException ex) {
+            this.executed(start, true);
             logger.log(Level.SEVERE, "execute() : Failed to execute : \n" + toString(), ex);
-            parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+            this.clearParameters();
             throw ex;
         }
 
-        parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
+        this.executed(start, false);
+        this.clearParameters();
         return result;
     }
 
@@ -154,6 +239,7 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
      *             if a database access error occurs or this
      */
     public ResultSet executeQuery() throws SQLException {
+        long start = System.nanoTime();
         try {
             this.checkSessionState();
 
@@ -161,14 +247,213 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
                 logger.log(Level.FINE, "executeQuery() : Executing query\n" + toString());
             }
 
-            parameters = new HashMap<Integer, String>(INITIAL_PARAMLIST_SIZE);
-            return this.preparedStatement.executeQuery();
+            ResultSet rs = this.preparedStatement.executeQuery();
+            this.executed(start, false);
+            this.clearParameters();
+            return rs;
         } catch (SQLException ex) {
+            this.executed(start, true);
             logger.log(Level.SEVERE, "executeQuery() : Failed to execute query : \n" + toString(), ex);
+            this.clearParameters();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds the current set of bind parameters to the batch of this statement. <br>
+     * The batch is sent to the database as soon as it holds <code>getBatchSize()</code> rows, the remaining rows are sent by <code>executeBatch()</code>.
+     * Instead of logging every row a summary is logged for each batch sent to the database.
+     * 
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void addBatch() throws SQLException {
+        this.checkSessionState();
+
+        try {
+            if (this.batchRows == 0 && this.captureParameters)
+                this.firstBatchRow = toString();
+            this.preparedStatement.addBatch();
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "addBatch() : Failed to add to batch : \n" + toString(), ex);
+            this.clearParameters();
+            throw ex;
+        }
+
+        this.clearParameters();
+        if (++this.batchRows >= this.batchSize)
+            this.sendBatch();
+    }
+
+    /**
+     * Sends the rows of the batch not yet sent to the database.
+     * 
+     * @return The update counts of all rows added since the previous call to <code>executeBatch()</code>, in the order they were added
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public int[] executeBatch() throws SQLException {
+        this.checkSessionState();
+
+        if (this.batchRows > 0)
+            this.sendBatch();
+
+        int[] result = Arrays.copyOf(this.updateCounts, this.updateCountSize);
+        this.updateCountSize = 0;
+        return result;
+    }
+
+    /**
+     * Get the number of rows sent to the database in one round trip by <code>addBatch()</code> and <code>executeBatch()</code>.
+     * 
+     * @return The batch size
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Set the number of rows sent to the database in one round trip by <code>addBatch()</code> and <code>executeBatch()</code>. <br>
+     * The default is <code>DEFAULT_BATCH_SIZE</code>.
+     * 
+     * @param batchSize
+     *            The batch size
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("The batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Get the number of rows the driver is asked to fetch in each round trip by the result sets of this statement.
+     * 
+     * @return The fetch size, zero (0) if the choice is left to the driver
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public int getFetchSize() throws SQLException {
+        this.checkSessionState();
+        return this.preparedStatement.getFetchSize();
+    }
+
+    /**
+     * Set the number of rows the driver is asked to fetch in each round trip by the result sets of this statement. <br>
+     * Must be set before the query is executed to affect the first round trip. A cached statement gets its original fetch size back when closed.
+     * 
+     * @param rows
+     *            The fetch size, zero (0) leaves the choice to the driver
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setFetchSize(int rows) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.originalFetchSize < 0 && this.cache != null)
+                this.originalFetchSize = this.preparedStatement.getFetchSize();
+            this.preparedStatement.setFetchSize(rows);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setFetchSize() : Failed to set the fetch size : [rows=" + rows + "] for statement \n" + this.sqlStatement, ex);
             throw ex;
         }
     }
 
+    /**
+     * Sends the rows added to the batch to the database and logs a summary of the batch. <br>
+     * Should the batch fail the update counts of the rows previously sent since the last <code>executeBatch()</code> are discarded.
+     * 
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private void sendBatch() throws SQLException {
+        int rows = this.batchRows;
+        String firstRow = this.firstBatchRow;
+        this.batchRows = 0;
+        this.firstBatchRow = null;
+
+        long start = System.nanoTime();
+        int[] counts;
+        try {
+            counts = this.preparedStatement.executeBatch();
+        } catch (SQLException ex) {
+            this.executed(start, true, rows, firstRow);
+            logger.log(Level.SEVERE, "executeBatch() : Failed to execute batch of [" + rows + "] rows for statement \n" + this.sqlStatement, ex);
+            this.updateCountSize = 0;
+            this.clearBatch();
+            throw ex;
+        }
+
+        long nanos = this.executed(start, false, rows, firstRow);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, "executeBatch() : Executed batch of [" + rows + "] rows in [" + TimeUnit.NANOSECONDS.toMillis(nanos)
+                    + "] ms, first row \n" + firstRow);
+        }
+
+        if (this.updateCountSize + counts.length > this.updateCounts.length)
+            this.updateCounts = Arrays.copyOf(this.updateCounts, Math.max(this.updateCounts.length * 2, this.updateCountSize + counts.length));
+        System.arraycopy(counts, 0, this.updateCounts, this.updateCountSize, counts.length);
+        this.updateCountSize += counts.length;
+    }
+
+    /**
+     * Records the time of an execution in the statistics and logs the execution if it was slow.
+     * 
+     * @param start
+     *            The time the execution started as given by <code>System.nanoTime()</code>
+     * @param failed
+     *            If the execution failed
+     */
+    private void executed(long start, boolean failed) {
+        if (this.statementStatistics != null) {
+            long nanos = System.nanoTime() - start;
+            this.statementStatistics.record(nanos, failed);
+            this.statistics.checkSlowQuery(nanos, this);
+        }
+    }
+
+    /**
+     * Records the time of a batch execution in the statistics and logs the execution if it was slow.
+     * 
+     * @param start
+     *            The time the execution started as given by <code>System.nanoTime()</code>
+     * @param failed
+     *            If the execution failed
+     * @param rows
+     *            The number of rows of the batch
+     * @param firstRow
+     *            The first row of the batch
+     * @return The time the execution took in nanoseconds
+     */
+    private long executed(long start, boolean failed, int rows, String firstRow) {
+        long nanos = System.nanoTime() - start;
+        if (this.statementStatistics != null) {
+            this.statementStatistics.record(nanos, failed);
+            this.statistics.checkSlowQuery(nanos, "batch of [" + rows + "] rows, first row \n" + firstRow);
+        }
+        return nanos;
+    }
+
+    /**
+     * Discards the rows added to the batch but not yet sent.
+     */
+    private void clearBatch() {
+        this.batchRows = 0;
+        this.firstBatchRow = null;
+        try {
+            this.preparedStatement.clearBatch();
+        } catch (SQLException ex) {
+            logger.log(Level.FINE, "clearBatch() : Failed to clear the batch", ex);
+        }
+    }
+
     /**
      * Sets the designated parameter to the given Java <code>int</code> value. The driver converts this to an SQL <code>INTEGER</code> value when it sends it to
      * the database.
@@ -185,7 +470,8 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
     public void setInt(int parameterIndex, int value) throws SQLException {
         try {
             this.checkSessionState();
-            this.storeParameter(parameterIndex, "" + value);
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, Integer.valueOf(value));
             this.preparedStatement.setInt(parameterIndex, value);
         } catch (SQLException ex) {
             logger.log(Level.SEVERE, "setInt() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value + "] for statement \n"
@@ -211,7 +497,8 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
     public void setLong(int parameterIndex, long value) throws SQLException {
         try {
             this.checkSessionState();
-            this.storeParameter(parameterIndex, "" + value);
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, Long.valueOf(value));
             this.preparedStatement.setLong(parameterIndex, value);
         } catch (SQLException ex) {
             logger.log(Level.SEVERE, "setLong() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value + "] for statement \n"
@@ -237,7 +524,8 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
     public void setString(int parameterIndex, String value) throws SQLException {
         try {
             this.checkSessionState();
-            this.storeParameter(parameterIndex, "'" + value + "'");
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, value);
             this.preparedStatement.setString(parameterIndex, value);
         } catch (SQLException ex) {
             logger.log(Level.SEVERE, "setString() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value + "] for statement \n"
@@ -246,22 +534,275 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
         }
     }
 
+    /**
+     * Sets the designated parameter to the given Java <code>double</code> value. The driver converts this to an SQL <code>DOUBLE</code> value when it sends it
+     * to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setDouble(int parameterIndex, double value) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, Double.valueOf(value));
+            this.preparedStatement.setDouble(parameterIndex, value);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setDouble() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value + "] for statement \n"
+                    + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given Java <code>boolean</code> value. The driver converts this to an SQL <code>BIT</code> or <code>BOOLEAN</code>
+     * value when it sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBoolean(int parameterIndex, boolean value) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, Boolean.valueOf(value));
+            this.preparedStatement.setBoolean(parameterIndex, value);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setBoolean() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value + "] for statement \n"
+                    + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given <code>java.math.BigDecimal</code> value. The driver converts this to an SQL <code>NUMERIC</code> value when it
+     * sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBigDecimal(int parameterIndex, BigDecimal value) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, value);
+            this.preparedStatement.setBigDecimal(parameterIndex, value);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setBigDecimal() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value
+                    + "] for statement \n" + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given <code>java.sql.Timestamp</code> value. The driver converts this to an SQL <code>TIMESTAMP</code> value when
+     * it sends it to the database.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setTimestamp(int parameterIndex, Timestamp value) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, value);
+            this.preparedStatement.setTimestamp(parameterIndex, value);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setTimestamp() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value=" + value
+                    + "] for statement \n" + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given Java array of bytes. The driver converts this to an SQL <code>VARBINARY</code> or
+     * <code>LONGVARBINARY</code> value (depending on the argument's size relative to the driver's limits on <code>VARBINARY</code> values) when it sends it to
+     * the database. <br>
+     * Only the length of the array is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the parameter value, may be <code>null</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBytes(int parameterIndex, byte[] value) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, value);
+            this.preparedStatement.setBytes(parameterIndex, value);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setBytes() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [value="
+                    + (value == null ? null : value.length + " bytes") + "] for statement \n" + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to SQL <code>NULL</code>.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param sqlType
+     *            the SQL type code defined in <code>java.sql.Types</code>
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, NULL);
+            this.preparedStatement.setNull(parameterIndex, sqlType);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setNull() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [type=" + sqlType + "] for statement \n"
+                    + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given input stream, which will have the specified number of bytes. Use this to bind large binary values such as
+     * a <code>BLOB</code> without reading them into memory. The stream is read when the statement is executed. <br>
+     * Only the length of the stream is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the stream with the binary value
+     * @param length
+     *            the number of bytes in the stream
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setBinaryStream(int parameterIndex, InputStream value, long length) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, new StreamParameter("binary", length));
+            this.preparedStatement.setBinaryStream(parameterIndex, value, length);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setBinaryStream() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [length=" + length
+                    + "] for statement \n" + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the designated parameter to the given <code>Reader</code> object, which is the given number of characters long. Use this to bind large text
+     * values such as a <code>CLOB</code> without reading them into memory. The reader is read when the statement is executed. <br>
+     * Only the length of the reader is logged.
+     * 
+     * @param parameterIndex
+     *            the first parameter is 1, the second is 2, ...
+     * @param value
+     *            the reader with the character value
+     * @param length
+     *            the number of characters in the reader
+     * @throws IllegalStateException
+     *             If the connection has been closed
+     * @throws SQLException
+     *             if a database access error occurs or this
+     */
+    public void setCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        try {
+            this.checkSessionState();
+            if (this.captureParameters)
+                this.storeParameter(parameterIndex, new StreamParameter("character", length));
+            this.preparedStatement.setCharacterStream(parameterIndex, value, length);
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "setCharacterStream() : Failed to set the bind parameter : [index=" + parameterIndex + "] : [length=" + length
+                    + "] for statement \n" + this.sqlStatement, ex);
+            throw ex;
+        }
+    }
+
     /**
      * Returns a string representation of the SQL statement for this object. The method will attempt to replace all the bind variables with their correct value
-     * before returning the SQL statement.
+     * before returning the SQL statement. <br>
+     * The values are only known if FINE logging was enabled when the statement was created, bind variables without a known value are left as they are.
      */
     public String toString() {
-        // copy the original SQL statement
         String sql = this.sqlStatement;
+        if (sql == null || this.parameterCount == 0)
+            return sql;
 
         /*
-         * Replace each bind parameter in the sql string (:1, :2, ..., :x) with the actual parameter value
+         * Replace each bind parameter (?) outside quoted literals in the sql string with the actual parameter value
          */
-        for (int i = 1; i <= this.parameters.size(); i++) {
-            sql = sql.replaceFirst(":.*", this.parameters.get(i));
+        StringBuilder sb = new StringBuilder(sql.length() + this.parameterCount * 8);
+        int index = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '?' && index < this.parameterCount) {
+                appendParameter(sb, this.parameters[index++]);
+                continue;
+            }
+            sb.append(c);
         }
+        return sb.toString();
+    }
 
-        return sql;
+    /**
+     * Appends the captured value of a bind parameter to the string representation of the statement. <br>
+     * Strings and timestamps are quoted, binary values and streams are represented by their length only.
+     * 
+     * @param sb
+     *            The string representation
+     * @param value
+     *            The captured value, <code>null</code> if not bound
+     */
+    private static void appendParameter(StringBuilder sb, Object value) {
+        if (value == null)
+            sb.append('?');
+        else if (value == NULL)
+            sb.append("NULL");
+        else if (value instanceof String || value instanceof Timestamp)
+            sb.append('\'').append(value).append('\'');
+        else if (value instanceof BigDecimal)
+            sb.append(((BigDecimal) value).toPlainString());
+        else if (value instanceof byte[])
+            sb.append("<").append(((byte[]) value).length).append(" bytes>");
+        else
+            sb.append(value);
     }
 
     /**
@@ -277,12 +818,48 @@ public class LoggablePreparedStatementImpl implements LoggablePreparedStatement
     }
 
     /**
+     * Stores the value of a bind parameter for logging, only to be invoked if the parameters are captured.
      * 
      * @param parameterIndex
+     *            The parameter position (1..n)
      * @param value
+     *            The value, may be <code>null</code>
      */
-    private void storeParameter(int parameterIndex, String value) throws SQLException {
-        if (this.parameters.put(parameterIndex, value) != null)
-            throw new SQLException("The index[" + parameterIndex + "] is already bound for this statement");
+    private void storeParameter(int parameterIndex, Object value) {
+        if (this.parameters == null)
+            this.parameters = new Object[Math.max(INITIAL_PARAMLIST_SIZE, parameterIndex)];
+        else if (parameterIndex > this.parameters.length)
+            this.parameters = Arrays.copyOf(this.parameters, Math.max(this.parameters.length * 2, parameterIndex));
+
+        this.parameters[parameterIndex - 1] = value == null ? NULL : value;
+        if (parameterIndex > this.parameterCount)
+            this.parameterCount = parameterIndex;
+    }
+
+    /**
+     * Forgets the captured bind parameter values, the array is kept for the next execution.
+     */
+    private void clearParameters() {
+        if (this.parameterCount > 0) {
+            Arrays.fill(this.parameters, 0, this.parameterCount, null);
+            this.parameterCount = 0;
+        }
+    }
+
+    /**
+     * The captured value of a parameter bound to a stream.
+     */
+    private static final class StreamParameter {
+        private final String type;
+        private final long length;
+
+        private StreamParameter(String type, long length) {
+            this.type = type;
+            this.length = length;
+        }
+
+        public String toString() {
+            return "<" + this.type + " stream of " + this.length + ">";
+        }
     }
 }
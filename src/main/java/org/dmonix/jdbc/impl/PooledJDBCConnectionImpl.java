@@ -1,16 +1,30 @@
 package org.dmonix.jdbc.impl;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class PooledJDBCConnectionImpl extends JDBCConnectionImpl {
 
+    private static final Logger log = Logger.getLogger(PooledJDBCConnectionImpl.class.getName());
+
     private JDBCConnectionPoolImpl pool;
-    private boolean inUse = false;
-    private long lastUsedTime = -1;
+    /** The generation of the lease, odd while the connection is leased and even while it is in the pool. */
+    private final AtomicLong leaseId = new AtomicLong(0);
+    private volatile long lastUsedTime = -1;
+    private volatile long idleSince = System.currentTimeMillis();
+    private volatile long lastValidated = -1;
+    private volatile Throwable leaseTrace;
+    private volatile long reportedLease = -1;
 
     public PooledJDBCConnectionImpl(JDBCConnectionPoolImpl pool, JDBCConnectionImpl con) {
-        super(con.getConnection());
+        super(con.getConnection(), pool.getStatementCacheSize());
         this.pool = pool;
+        this.setStatistics(pool.getStatistics());
     }
 
     public void close2() throws SQLException {
@@ -22,26 +36,155 @@ public class PooledJDBCConnectionImpl extends JDBCConnectionImpl {
     }
 
     public boolean inUse() {
-        return this.inUse;
+        return (this.leaseId.get() & 1) != 0;
+    }
+
+    /**
+     * Get the identity of the current lease. <br>
+     * Every lease and return of the connection changes the identity, a leased connection has an odd identity.
+     * 
+     * @return The lease identity
+     */
+    public long getLeaseId() {
+        return this.leaseId.get();
     }
 
     public long getLastUse() {
         return this.lastUsedTime;
     }
 
+    /**
+     * Get the time the connection was returned to the pool.
+     * 
+     * @return The time in milliseconds
+     */
+    public long getIdleSince() {
+        return this.idleSince;
+    }
+
+    /**
+     * Get the last time the connection was known to work, i.e. the latest of the time it was returned to the pool and the time it last passed validation.
+     * 
+     * @return The time in milliseconds
+     */
+    public long getLastAlive() {
+        return Math.max(this.idleSince, this.lastValidated);
+    }
+
+    /**
+     * Validates that the connection to the database still works. <br>
+     * If the pool has a validation query it is executed, otherwise the driver is asked through <code>Connection.isValid(int)</code>. <br>
+     * The validation waits at most the validation timeout of the pool for the database to respond.
+     * 
+     * @return <code>true</code> if the connection works
+     * @see JDBCConnectionPoolImpl#setValidationQuery(String)
+     * @see JDBCConnectionPoolImpl#setValidationTimeout(long, TimeUnit)
+     */
     public boolean validate() {
-        // TODO Auto-generated method stub
-        return false;
+        Connection conn = this.getConnection();
+        int timeout = (int) Math.max(1, this.pool.getValidationTimeout(TimeUnit.SECONDS));
+        String query = this.pool.getValidationQuery();
+        try {
+            if (conn.isClosed())
+                return false;
+
+            boolean valid;
+            if (query == null) {
+                valid = conn.isValid(timeout);
+            } else {
+                Statement stmt = conn.createStatement();
+                try {
+                    stmt.setQueryTimeout(timeout);
+                    stmt.execute(query);
+                } finally {
+                    stmt.close();
+                }
+                if (!conn.getAutoCommit())
+                    conn.rollback();
+                valid = true;
+            }
+
+            if (valid)
+                this.lastValidated = System.currentTimeMillis();
+            return valid;
+        } catch (SQLException ex) {
+            if (log.isLoggable(Level.FINE))
+                log.log(Level.FINE, "Connection failed validation : " + this.toString(), ex);
+            return false;
+        }
     }
 
-    public void expireLease() {
-        this.inUse = false;
+    /**
+     * Marks the connection as returned to the pool.
+     * 
+     * @return <code>true</code> if the connection was leased, <code>false</code> if it already had been returned
+     */
+    public boolean expireLease() {
+        while (true) {
+            long lease = this.leaseId.get();
+            if ((lease & 1) == 0)
+                return false;
+            if (this.expireLease(lease))
+                return true;
+        }
+    }
+
+    /**
+     * Marks the connection as returned to the pool, provided it is still held by the given lease. <br>
+     * Only the caller that succeeds in expiring the lease touches the state of the connection.
+     * 
+     * @param lease
+     *            The identity of the lease as returned by <code>getLeaseId()</code>
+     * @return <code>true</code> if the lease was expired, <code>false</code> if the connection already had been returned
+     */
+    public boolean expireLease(long lease) {
+        if ((lease & 1) == 0 || !this.leaseId.compareAndSet(lease, lease + 1))
+            return false;
+        this.pool.countLease(-1);
         this.lastUsedTime = -1;
+        this.leaseTrace = null;
+        this.idleSince = System.currentTimeMillis();
+        return true;
     }
 
     public void lease() {
-        this.inUse = true;
+        this.lease(null);
+    }
+
+    /**
+     * Marks the connection as leased.
+     * 
+     * @param trace
+     *            The stack trace of the caller leasing the connection, <code>null</code> if not recorded
+     */
+    public void lease(Throwable trace) {
         this.lastUsedTime = System.currentTimeMillis();
+        this.leaseTrace = trace;
+        this.leaseId.incrementAndGet();
+        this.pool.countLease(1);
+    }
+
+    /**
+     * Get the stack trace of the caller that leased the connection.
+     * 
+     * @return The stack trace, <code>null</code> if not leased or not recorded
+     */
+    public Throwable getLeaseTrace() {
+        return this.leaseTrace;
+    }
+
+    /**
+     * Marks the given lease as reported as a possible leak.
+     * 
+     * @param lease
+     *            The identity of the lease as returned by <code>getLeaseId()</code>
+     * @return <code>true</code> if the lease is still current and had not already been reported
+     */
+    boolean markLeakReported(long lease) {
+        if (this.leaseId.get() != lease || this.reportedLease == lease)
+            return false;
+        this.reportedLease = lease;
+        return true;
     }
 
 }
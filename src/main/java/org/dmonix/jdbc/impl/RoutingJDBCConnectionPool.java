@@ -0,0 +1,492 @@
+package org.dmonix.jdbc.impl;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dmonix.jdbc.JDBCConnection;
+import org.dmonix.jdbc.JDBCConnectionFactory;
+import org.dmonix.jdbc.JDBCConnectionPool;
+import org.dmonix.thread.Scheduler;
+import org.dmonix.thread.ThreadPool;
+
+/**
+ * A connection pool fronting a primary database and a number of read replicas, each with a pool of its own. <br>
+ * Connections from <code>getConnection()</code> are read-write connections to the primary database. Read-only connections from
+ * <code>getConnection(boolean)</code> are taken from one of the healthy replicas, selected either round-robin or as the replica with the fewest leased
+ * connections. If no replica is healthy the read-only connection is taken from the primary database.
+ * <p>
+ * The replicas are checked in the background by leasing and validating a connection, a replica that fails the check or takes longer than the slow
+ * threshold is marked unhealthy and receives no traffic until it passes a check again. A replica failing to provide a connection is also marked unhealthy
+ * immediately. <br>
+ * A replica that merely has no free connection within the timeout is busy, not broken, and keeps its health. The read-only connection is then taken from
+ * the next healthy replica. Note that the acquire timeout of a pool is infinite by default, set a finite acquire timeout on the replica pools (see
+ * <code>getReplica(int)</code>) or use <code>getConnection(boolean, long, TimeUnit)</code> for busy replicas to be passed over.
+ * </p>
+ * <p>
+ * A replica that cannot be reached when the pool is constructed does not prevent the construction, it starts out unhealthy and receives traffic once it
+ * passes a health check. The primary database must be reachable.
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class RoutingJDBCConnectionPool implements JDBCConnectionPool {
+
+    private static final Logger log = Logger.getLogger(RoutingJDBCConnectionPool.class.getName());
+
+    /** The default time in milliseconds between two health checks of the replicas. */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5000;
+
+    /** The default time in milliseconds a health check may take before the replica is considered slow. */
+    public static final long DEFAULT_SLOW_THRESHOLD = 1000;
+
+    /** The time in seconds an idle health check thread is kept alive. */
+    private static final long HEALTH_CHECK_KEEP_ALIVE = 30;
+
+    /**
+     * The strategies for selecting the replica of a read-only connection.
+     */
+    public enum Strategy {
+        /** The healthy replicas take turns. */
+        ROUND_ROBIN,
+        /** The healthy replica with the fewest leased connections, replicas with the same number of leased connections take turns. */
+        LEAST_IN_USE
+    }
+
+    private final JDBCConnectionPoolImpl primary;
+    private final Replica[] replicas;
+
+    /** The replica to start the selection with. */
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile Strategy strategy = Strategy.LEAST_IN_USE;
+    private volatile long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD);
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> healthCheck;
+
+    /** Runs the blocking health checks, the shared scheduler only triggers them. */
+    private final ThreadPool healthCheckExecutor;
+
+    /**
+     * Constructs the pool, creating a pool of the provided size for the primary database and each replica.
+     * 
+     * @param primary
+     *            The factory for the connections to the primary database
+     * @param replicas
+     *            The factories for the connections to the replicas
+     * @param initialSize
+     *            The initial size of each pool
+     * @param maxSize
+     *            The maximum size of each pool, zero (0) means unlimited amount
+     * @throws SQLException
+     *             If the first connection to the primary database could not be opened
+     */
+    public RoutingJDBCConnectionPool(JDBCConnectionFactory primary, JDBCConnectionFactory[] replicas, int initialSize, int maxSize) throws SQLException {
+        this.primary = new JDBCConnectionPoolImpl(primary, initialSize, maxSize);
+        this.replicas = new Replica[replicas.length];
+        this.healthCheckExecutor = new ThreadPool(0, Math.max(1, replicas.length), HEALTH_CHECK_KEEP_ALIVE, TimeUnit.SECONDS);
+        for (int i = 0; i < replicas.length; i++) {
+            try {
+                this.replicas[i] = new Replica(i, new JDBCConnectionPoolImpl(replicas[i], initialSize, maxSize));
+            } catch (SQLException ex) {
+                // the pool opens its connections once the replica is reachable again
+                this.replicas[i] = new Replica(i, new JDBCConnectionPoolImpl(replicas[i], initialSize, maxSize, false));
+                this.replicas[i].setHealthy(false, ex.getMessage());
+            }
+        }
+        this.scheduleHealthCheck();
+    }
+
+    /**
+     * Closes the primary and replica pools.
+     */
+    public void close() {
+        this.closed = true;
+        synchronized (this) {
+            if (this.healthCheck != null)
+                this.healthCheck.cancel(false);
+        }
+        this.healthCheckExecutor.shutdown();
+        this.primary.close();
+        for (Replica replica : this.replicas) {
+            if (replica != null)
+                replica.pool.close();
+        }
+    }
+
+    /**
+     * Get a read-write connection to the primary database.
+     * 
+     * @return The connection
+     * @throws java.sql.SQLTimeoutException
+     *             If no connection was available within the acquire timeout
+     * @throws SQLException
+     */
+    public JDBCConnection getConnection() throws SQLException {
+        return this.primary.getConnection();
+    }
+
+    /**
+     * Get a read-write connection to the primary database.
+     * 
+     * @param timeout
+     *            The maximum time to wait, <code>Long.MAX_VALUE</code> to wait forever
+     * @param unit
+     *            The unit of the timeout
+     * @return The connection
+     * @throws java.sql.SQLTimeoutException
+     *             If no connection was available within the timeout
+     * @throws SQLException
+     */
+    public JDBCConnection getConnection(long timeout, TimeUnit unit) throws SQLException {
+        return this.primary.getConnection(timeout, unit);
+    }
+
+    /**
+     * Get a connection, a read-only connection is taken from a healthy replica if there is one. <br>
+     * Each pool is waited on for at most its own acquire timeout. The acquire timeout is infinite by default, in which case a busy replica is waited on
+     * rather than passed over.
+     * 
+     * @param readOnly
+     *            If the connection will only be used for reading
+     * @return The connection
+     * @throws java.sql.SQLTimeoutException
+     *             If no connection was available within the acquire timeout
+     * @throws SQLException
+     * @see #getConnection(boolean, long, TimeUnit)
+     */
+    public JDBCConnection getConnection(boolean readOnly) throws SQLException {
+        return this.route(readOnly, 0, null);
+    }
+
+    /**
+     * Get a connection, a read-only connection is taken from a healthy replica if there is one. <br>
+     * A replica failing to provide a connection is marked unhealthy and the next healthy replica is tried. A replica without a free connection within the
+     * timeout keeps its health and the next healthy replica is tried, if all healthy replicas are busy the <code>SQLTimeoutException</code> is thrown rather
+     * than moving the read load to the primary database. The primary database is only used if no replica is healthy.
+     * 
+     * @param readOnly
+     *            If the connection will only be used for reading
+     * @param timeout
+     *            The maximum time to wait for each pool, <code>Long.MAX_VALUE</code> to wait forever
+     * @param unit
+     *            The unit of the timeout
+     * @return The connection
+     * @throws java.sql.SQLTimeoutException
+     *             If no connection was available within the timeout
+     * @throws SQLException
+     */
+    public JDBCConnection getConnection(boolean readOnly, long timeout, TimeUnit unit) throws SQLException {
+        if (unit == null)
+            throw new IllegalArgumentException("The unit must not be null");
+        return this.route(readOnly, timeout, unit);
+    }
+
+    /**
+     * Routes the request for a connection.
+     * 
+     * @param readOnly
+     *            If the connection will only be used for reading
+     * @param timeout
+     *            The maximum time to wait for each pool
+     * @param unit
+     *            The unit of the timeout, <code>null</code> to use the acquire timeout of each pool
+     * @return The connection
+     * @throws SQLException
+     */
+    private JDBCConnection route(boolean readOnly, long timeout, TimeUnit unit) throws SQLException {
+        if (readOnly && !this.closed) {
+            boolean[] busy = new boolean[this.replicas.length];
+            SQLTimeoutException exhausted = null;
+            Replica replica;
+            while ((replica = this.select(busy)) != null) {
+                try {
+                    return lease(replica.pool, timeout, unit);
+                } catch (SQLTimeoutException ex) {
+                    busy[replica.index] = true;
+                    exhausted = ex;
+                } catch (SQLException ex) {
+                    // an interrupted caller says nothing about the replica
+                    if (Thread.currentThread().isInterrupted())
+                        throw ex;
+                    replica.setHealthy(false, ex.getMessage());
+                }
+            }
+            if (exhausted != null)
+                throw exhausted;
+        }
+        return lease(this.primary, timeout, unit);
+    }
+
+    private static JDBCConnection lease(JDBCConnectionPoolImpl pool, long timeout, TimeUnit unit) throws SQLException {
+        return unit == null ? pool.getConnection() : pool.getConnection(timeout, unit);
+    }
+
+    /**
+     * Get the pool of the primary database.
+     * 
+     * @return The pool
+     */
+    public JDBCConnectionPoolImpl getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * Get the number of replicas.
+     * 
+     * @return The number of replicas
+     */
+    public int getReplicaCount() {
+        return this.replicas.length;
+    }
+
+    /**
+     * Get the pool of a replica.
+     * 
+     * @param index
+     *            The index of the replica, in the order the replicas were provided
+     * @return The pool
+     */
+    public JDBCConnectionPoolImpl getReplica(int index) {
+        return this.replicas[index].pool;
+    }
+
+    /**
+     * If a replica is healthy, i.e. receives read-only traffic.
+     * 
+     * @param index
+     *            The index of the replica, in the order the replicas were provided
+     * @return <code>true</code> if healthy
+     */
+    public boolean isReplicaHealthy(int index) {
+        return this.replicas[index].healthy;
+    }
+
+    public Strategy getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * Set how the replica of a read-only connection is selected, the default is <code>LEAST_IN_USE</code>.
+     * 
+     * @param strategy
+     *            The strategy
+     */
+    public void setStrategy(Strategy strategy) {
+        if (strategy == null)
+            throw new IllegalArgumentException("The strategy must not be null");
+        this.strategy = strategy;
+    }
+
+    /**
+     * Get the time between two health checks of the replicas.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The health check interval
+     */
+    public long getHealthCheckInterval(TimeUnit unit) {
+        return unit.convert(this.healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the time between two health checks of the replicas. <br>
+     * The default is <code>DEFAULT_HEALTH_CHECK_INTERVAL</code>.
+     * 
+     * @param interval
+     *            The health check interval
+     * @param unit
+     *            The unit of the interval
+     */
+    public void setHealthCheckInterval(long interval, TimeUnit unit) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("The health check interval must be positive");
+        this.healthCheckInterval = unit.toMillis(interval);
+        this.scheduleHealthCheck();
+    }
+
+    /**
+     * Get the time a health check may take before the replica is considered slow.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The slow threshold
+     */
+    public long getSlowThreshold(TimeUnit unit) {
+        return unit.convert(this.slowThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set the time a health check may take before the replica is considered slow, a slow replica is marked unhealthy. <br>
+     * The time is that of validating a connection, waiting for a free connection in the pool of the replica is not included. A check not getting a
+     * connection within the threshold leaves the health unchanged. The default is <code>DEFAULT_SLOW_THRESHOLD</code>.
+     * 
+     * @param threshold
+     *            The slow threshold
+     * @param unit
+     *            The unit of the threshold
+     */
+    public void setSlowThreshold(long threshold, TimeUnit unit) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("The slow threshold must be positive");
+        this.slowThresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Selects the replica for a read-only connection.
+     * 
+     * @param busy
+     *            The replicas already found to have no free connection, by index
+     * @return The replica, <code>null</code> if no replica is healthy and not busy
+     */
+    private Replica select(boolean[] busy) {
+        int count = this.replicas.length;
+        if (count == 0)
+            return null;
+
+        int start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % count;
+        boolean leastInUse = this.strategy == Strategy.LEAST_IN_USE;
+        Replica selected = null;
+        int selectedInUse = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Replica replica = this.replicas[(start + i) % count];
+            if (!replica.healthy || busy[replica.index])
+                continue;
+            if (!leastInUse)
+                return replica;
+            int inUse = replica.pool.getLeasedCount();
+            if (inUse < selectedInUse) {
+                selected = replica;
+                selectedInUse = inUse;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Starts a check of each replica on the health check executor, the replicas are checked in parallel. <br>
+     * A replica still being checked since the previous round is skipped.
+     */
+    private void checkHealth() {
+        for (final Replica replica : this.replicas) {
+            if (this.closed)
+                return;
+            if (!replica.checking.compareAndSet(false, true))
+                continue;
+            try {
+                this.healthCheckExecutor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            if (!closed)
+                                replica.check(slowThresholdNanos);
+                        } finally {
+                            replica.checking.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // the pool is closing
+                replica.checking.set(false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Schedules the periodic health check using the shared <code>Scheduler</code>, any previous schedule is cancelled. <br>
+     * The scheduled task only hands the checks to the health check executor and never blocks.
+     */
+    private synchronized void scheduleHealthCheck() {
+        if (this.closed || this.replicas.length == 0)
+            return;
+        if (this.healthCheck != null)
+            this.healthCheck.cancel(false);
+
+        this.healthCheck = Scheduler.getDefault().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                checkHealth();
+            }
+        }, this.healthCheckInterval, this.healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A replica and its health.
+     */
+    private static final class Replica {
+        private final int index;
+        private final JDBCConnectionPoolImpl pool;
+        private volatile boolean healthy = true;
+
+        /** If a check of the replica is running. */
+        private final AtomicBoolean checking = new AtomicBoolean(false);
+
+        private Replica(int index, JDBCConnectionPoolImpl pool) {
+            this.index = index;
+            this.pool = pool;
+        }
+
+        /**
+         * Checks the replica by leasing and validating a connection. <br>
+         * A replica without a free connection within the slow threshold is busy and keeps its health.
+         * 
+         * @param slowThresholdNanos
+         *            The time the validation may take, also the time to wait for a free connection
+         */
+        private void check(long slowThresholdNanos) {
+            try {
+                PooledJDBCConnectionImpl con;
+                try {
+                    con = (PooledJDBCConnectionImpl) this.pool.getConnection(slowThresholdNanos, TimeUnit.NANOSECONDS);
+                } catch (SQLTimeoutException ex) {
+                    if (log.isLoggable(Level.FINE))
+                        log.log(Level.FINE, "Replica [" + this.index + "] has no free connection, the health check is skipped : " + ex.getMessage());
+                    return;
+                }
+
+                long start = System.nanoTime();
+                boolean valid;
+                try {
+                    valid = con.validate();
+                } finally {
+                    con.close();
+                }
+
+                long elapsed = System.nanoTime() - start;
+                if (!valid)
+                    this.setHealthy(false, "The connection failed validation");
+                else if (elapsed > slowThresholdNanos)
+                    this.setHealthy(false, "The health check took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+                else
+                    this.setHealthy(true, null);
+            } catch (SQLException ex) {
+                this.setHealthy(false, ex.getMessage());
+            }
+        }
+
+        /**
+         * Changes the health of the replica, changes are logged.
+         * 
+         * @param healthy
+         *            If healthy
+         * @param reason
+         *            The reason the replica is unhealthy
+         */
+        private void setHealthy(boolean healthy, String reason) {
+            if (this.healthy == healthy)
+                return;
+            this.healthy = healthy;
+            if (healthy)
+                log.log(Level.INFO, "Replica [" + this.index + "] is healthy again");
+            else
+                log.log(Level.WARNING, "Replica [" + this.index + "] is unhealthy and receives no traffic : " + reason);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.dmonix.jdbc.impl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A least recently used cache of prepared statements of a single connection, keyed by their SQL. <br>
+ * A statement is taken out of the cache while it is used and put back when the <code>LoggablePreparedStatement</code> wrapping it is closed, a statement is
+ * therefore never used by two callers at the same time. Should the same SQL be prepared twice before the first statement is closed the second statement is
+ * simply prepared by the driver, and closed when the first one already is back in the cache.
+ * <p>
+ * Statements that are evicted from the cache or released when the cache is closed are closed.
+ * </p>
+ *
+ * @author Peter Nerg
+ * @since 3.1
+ */
+class StatementCache {
+    private static final Logger log = Logger.getLogger(StatementCache.class.getName());
+
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    private int capacity;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs a cache.
+     *
+     * @param capacity
+     *            The maximum number of cached statements, zero (0) disables the cache
+     */
+    StatementCache(int capacity) {
+        this.setCapacity(capacity);
+    }
+
+    /**
+     * Takes the statement for the SQL out of the cache.
+     *
+     * @param sql
+     *            The SQL
+     * @return The statement, <code>null</code> if no idle statement was cached
+     */
+    synchronized PreparedStatement take(String sql) {
+        if (this.capacity == 0)
+            return null;
+
+        PreparedStatement stmt = this.statements.remove(sql);
+        if (stmt == null)
+            this.missCount++;
+        else
+            this.hitCount++;
+        return stmt;
+    }
+
+    /**
+     * Puts a statement that no longer is used back in the cache. <br>
+     * The statement is closed if the cache is closed, disabled or already holds a statement for the SQL. The least recently used statement is closed if the
+     * cache is full.
+     *
+     * @param sql
+     *            The SQL of the statement
+     * @param stmt
+     *            The statement
+     */
+    void release(String sql, PreparedStatement stmt) {
+        PreparedStatement evicted = stmt;
+        synchronized (this) {
+            if (!this.closed && this.capacity > 0 && !this.statements.containsKey(sql)) {
+                try {
+                    stmt.clearParameters();
+                } catch (SQLException ex) {
+                    // the statement is probably broken, don't keep it
+                    closeStatement(stmt);
+                    return;
+                }
+                this.statements.put(sql, stmt);
+                evicted = this.evict();
+            }
+        }
+        closeStatement(evicted);
+    }
+
+    /**
+     * Closes all cached statements, statements released after this are closed instead of cached.
+     */
+    void close() {
+        List<PreparedStatement> list;
+        synchronized (this) {
+            this.closed = true;
+            list = new ArrayList<PreparedStatement>(this.statements.values());
+            this.statements.clear();
+        }
+        for (PreparedStatement stmt : list)
+            closeStatement(stmt);
+    }
+
+    /**
+     * Set the maximum number of cached statements, statements above the new capacity are closed.
+     *
+     * @param capacity
+     *            The capacity, zero (0) disables the cache
+     */
+    void setCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("The statement cache size must not be negative");
+
+        List<PreparedStatement> list = new ArrayList<PreparedStatement>();
+        synchronized (this) {
+            this.capacity = capacity;
+            PreparedStatement stmt;
+            while ((stmt = this.evict()) != null)
+                list.add(stmt);
+        }
+        for (PreparedStatement stmt : list)
+            closeStatement(stmt);
+    }
+
+    /**
+     * Get the maximum number of cached statements.
+     *
+     * @return The capacity
+     */
+    synchronized int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the number of cached statements.
+     *
+     * @return The number of statements
+     */
+    synchronized int size() {
+        return this.statements.size();
+    }
+
+    /**
+     * Get the number of times a statement was found in the cache.
+     *
+     * @return The number of hits
+     */
+    synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Get the number of times a statement was not found in the cache and had to be prepared.
+     *
+     * @return The number of misses
+     */
+    synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Removes the least recently used statement if the cache holds more statements than its capacity.
+     *
+     * @return The removed statement, <code>null</code> if none
+     */
+    private PreparedStatement evict() {
+        if (this.statements.size() <= this.capacity)
+            return null;
+
+        Iterator<PreparedStatement> it = this.statements.values().iterator();
+        PreparedStatement stmt = it.next();
+        it.remove();
+        return stmt;
+    }
+
+    /**
+     * Closes a statement, any failure is logged.
+     *
+     * @param stmt
+     *            The statement, may be <code>null</code>
+     */
+    private static void closeStatement(PreparedStatement stmt) {
+        if (stmt == null)
+            return;
+        try {
+            stmt.close();
+        } catch (SQLException ex) {
+            log.log(Level.FINE, "Failed to close the statement", ex);
+        }
+    }
+}
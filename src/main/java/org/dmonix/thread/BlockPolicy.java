@@ -0,0 +1,71 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocks the submitting thread until there is space in the task queue. <br>
+ * If there is no space within the configured timeout the task is rejected by throwing a <code>RejectedExecutionException</code>. <br>
+ * Should the submitting thread be interrupted while waiting the task is rejected and the interrupt status of the thread is restored.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class BlockPolicy implements RejectionPolicy {
+    private final long timeout;
+    private final TimeUnit unit;
+
+    /**
+     * Creates a policy that waits forever for space in the queue.
+     */
+    public BlockPolicy() {
+        this(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a policy that waits for at most the provided time for space in the queue.
+     * 
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of the timeout
+     */
+    public BlockPolicy(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("The timeout must not be negative");
+        this.timeout = timeout;
+        this.unit = unit;
+    }
+
+    /**
+     * Get the maximum time to wait for space in the queue.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The timeout
+     */
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(this.timeout, this.unit);
+    }
+
+    /**
+     * Waits for space in the queue and queues the task.
+     * 
+     * @param task
+     *            The task that could not be queued
+     * @param pool
+     *            The pool
+     * @throws RejectedExecutionException
+     *             If there was no space within the timeout or the thread was interrupted
+     */
+    public void rejected(Runnable task, ThreadPool pool) {
+        try {
+            if (!pool.offer(task, this.timeout, this.unit))
+                throw new RejectedExecutionException("The task queue is still full after " + this.timeout + " " + this.unit + " [capacity="
+                        + pool.getQueueCapacity() + "]");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for space in the task queue", ex);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.dmonix.thread;
+
+/**
+ * Executes the task in the thread that submitted it. <br>
+ * This slows down the submitter to the pace of the pool as it can't submit new tasks while executing the rejected one.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class CallerRunsPolicy implements RejectionPolicy {
+
+    /**
+     * Executes the task in the calling thread.
+     * 
+     * @param task
+     *            The task that could not be queued
+     * @param pool
+     *            The pool
+     */
+    public void rejected(Runnable task, ThreadPool pool) {
+        task.run();
+    }
+}
@@ -0,0 +1,42 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Discards the oldest task in the queue to make room for the new task. <br>
+ * The discarded task is cancelled, i.e. any caller waiting on its <code>Future</code> gets a <code>CancellationException</code>. <br>
+ * If the pool is in <code>WORK_STEALING</code> mode, where queued tasks can't be removed, the task is rejected as by <code>FailFastPolicy</code>.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class DropOldestPolicy implements RejectionPolicy {
+    private static final Logger log = Logger.getLogger(DropOldestPolicy.class.getName());
+
+    /**
+     * Discards the oldest queued task and queues the provided task.
+     * 
+     * @param task
+     *            The task that could not be queued
+     * @param pool
+     *            The pool
+     */
+    public void rejected(Runnable task, ThreadPool pool) {
+        Runnable oldest;
+        while ((oldest = pool.pollOldest()) != null) {
+            if (oldest instanceof Future)
+                ((Future<?>) oldest).cancel(false);
+            if (log.isLoggable(Level.FINE))
+                log.fine("Dropped the task " + oldest);
+
+            if (pool.offer(task))
+                return;
+        }
+
+        // nothing to drop, the queue was emptied by the pool threads or can't be dropped from
+        if (!pool.offer(task))
+            new FailFastPolicy().rejected(task, pool);
+    }
+}
@@ -0,0 +1,30 @@
+package org.dmonix.thread;
+
+/**
+ * The different modes a <code>ThreadPool</code> can execute its tasks in.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public enum ExecutionMode {
+    /**
+     * The tasks are executed by pooled platform threads. <br>
+     * This is the mode to use for CPU bound tasks.
+     */
+    PLATFORM,
+
+    /**
+     * Each task is executed by a virtual thread, the number of concurrently executing tasks is limited by the maximum thread count of the pool. <br>
+     * This is the mode to use for large amounts of blocking tasks such as JDBC or HTTP calls. <br>
+     * Virtual threads require Java 21 or later, on older JVMs the pool falls back to <code>PLATFORM</code>.
+     */
+    VIRTUAL,
+
+    /**
+     * The tasks are executed by a fixed set of platform threads where each thread has its own task deque. <br>
+     * Tasks executing in the pool may fork sub-tasks (<code>ForkJoinTask</code>) that are pushed on the deque of the executing thread, idle threads steal
+     * tasks from the deques of busy threads. <br>
+     * This is the mode to use for recursive or batch CPU bound work that splits itself into smaller tasks.
+     */
+    WORK_STEALING;
+}
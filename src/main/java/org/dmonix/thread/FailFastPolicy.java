@@ -0,0 +1,27 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Rejects the task by throwing a <code>RejectedExecutionException</code>. <br>
+ * This is the default policy of a <code>ThreadPool</code>.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class FailFastPolicy implements RejectionPolicy {
+
+    /**
+     * Throws a <code>RejectedExecutionException</code>.
+     * 
+     * @param task
+     *            The task that could not be queued
+     * @param pool
+     *            The pool
+     * @throws RejectedExecutionException
+     *             Always
+     */
+    public void rejected(Runnable task, ThreadPool pool) {
+        throw new RejectedExecutionException("The task queue is full [capacity=" + pool.getQueueCapacity() + "]");
+    }
+}
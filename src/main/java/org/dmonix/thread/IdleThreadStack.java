@@ -0,0 +1,169 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free stack (Treiber stack) of idle <code>PooledThread</code>s. <br>
+ * An idle thread pushes a node representing itself on the stack and parks until the node is taken by some other thread. <br>
+ * A node can only leave the <code>WAITING</code> state once, either by being signalled (the thread shall look for queued tasks), reserved (the thread is
+ * given to a caller of <code>ThreadPool.getThread()</code>) or cancelled by the idle thread itself. All state changes are made using CAS operations so
+ * neither pushing nor popping a thread requires a lock. <br>
+ * The stack is LIFO in order to hand work to the most recently used, and thus most likely cache warm, thread.
+ * <p>
+ * Company: dmonix.org
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+final class IdleThreadStack {
+    static final int WAITING = 0;
+    static final int SIGNALLED = 1;
+    static final int RESERVED = 2;
+    static final int CANCELLED = 3;
+
+    private final AtomicReference<Node> head = new AtomicReference<Node>();
+
+    /** The number of nodes in the <code>WAITING</code> state. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Push the provided thread on the stack.
+     * 
+     * @param thread
+     *            The idle thread
+     * @return The node representing the thread
+     */
+    Node push(PooledThread thread) {
+        Node node = new Node(thread);
+        size.incrementAndGet();
+        Node h;
+        do {
+            h = head.get();
+            // take the opportunity to unlink cancelled nodes on the top of the stack
+            Node next = h;
+            while (next != null && next.state == CANCELLED) {
+                next = next.next;
+            }
+            node.next = next;
+        } while (!head.compareAndSet(h, node));
+        return node;
+    }
+
+    /**
+     * Pops nodes until one is found that can be signalled, the thread of that node is then unparked.
+     * 
+     * @return The signalled thread, <code>null</code> if there was no idle thread
+     */
+    PooledThread signal() {
+        Node node;
+        while ((node = pop()) != null) {
+            if (node.transition(SIGNALLED)) {
+                size.decrementAndGet();
+                LockSupport.unpark(node.thread);
+                return node.thread;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pops nodes until one is found that can be reserved. <br>
+     * The thread of the reserved node will wait until a runnable is handed to it using <code>PooledThread.execute()</code>.
+     * 
+     * @return The reserved thread, <code>null</code> if there was no idle thread
+     */
+    PooledThread reserve() {
+        Node node;
+        while ((node = pop()) != null) {
+            if (node.transition(RESERVED)) {
+                size.decrementAndGet();
+                LockSupport.unpark(node.thread);
+                return node.thread;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cancels the provided node, i.e. the thread withdraws itself from the stack. <br>
+     * The node is lazily unlinked from the stack.
+     * 
+     * @param node
+     *            The node to cancel
+     * @return <code>true</code> if the node was cancelled, <code>false</code> if the node already had been signalled or reserved
+     */
+    boolean cancel(Node node) {
+        if (node.transition(CANCELLED)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of idle threads.
+     * 
+     * @return The number of waiting threads
+     */
+    int size() {
+        return size.get();
+    }
+
+    private Node pop() {
+        Node h;
+        do {
+            h = head.get();
+            if (h == null)
+                return null;
+        } while (!head.compareAndSet(h, h.next));
+        h.next = null;
+        return h;
+    }
+
+    /**
+     * A node in the stack representing one idle thread.
+     */
+    static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> STATE = AtomicIntegerFieldUpdater.newUpdater(Node.class, "state");
+
+        final PooledThread thread;
+        volatile Node next;
+        volatile int state = WAITING;
+
+        private Node(PooledThread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Parks the current thread until the node has left the <code>WAITING</code> state or the timeout has expired.
+         * 
+         * @param timeoutNanos
+         *            The maximum time to wait, <code>Long.MAX_VALUE</code> means wait forever
+         * @return The state of the node, <code>WAITING</code> if the timeout expired
+         */
+        int await(long timeoutNanos) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (state == WAITING) {
+                // clear any interrupt flag left by a task, it would otherwise make park return immediately
+                Thread.interrupted();
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        break;
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            return state;
+        }
+
+        private boolean transition(int newState) {
+            return STATE.compareAndSet(this, WAITING, newState);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The future created for each task given to a <code>ThreadPool</code>. <br>
+ * The task records the time it was queued so the pool can measure the time it took to acquire a thread and the time it took to run the task. Failures are
+ * reported to the pool so they are counted and, for tasks without a caller holding the future, logged.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+final class PoolTask<T> extends FutureTask<T> {
+    private final ThreadPool pool;
+
+    /** The task provided by the user, used for logging. */
+    private final Object task;
+
+    /** If the future has been returned to the caller, i.e. the caller is responsible for checking the outcome. */
+    private final boolean submitted;
+
+    /** The time (System.nanoTime) the task was queued. */
+    private long queueTime;
+
+    PoolTask(ThreadPool pool, Callable<T> callable) {
+        super(callable);
+        this.pool = pool;
+        this.task = callable;
+        this.submitted = true;
+    }
+
+    PoolTask(ThreadPool pool, Runnable runnable, T result, boolean submitted) {
+        super(runnable, result);
+        this.pool = pool;
+        this.task = runnable;
+        this.submitted = submitted;
+    }
+
+    /**
+     * Marks the time the task was queued.
+     */
+    void queued() {
+        this.queueTime = System.nanoTime();
+    }
+
+    /**
+     * Runs the task and reports the time spent waiting for a thread and the time it took to run the task.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        this.pool.taskStarted(start - this.queueTime);
+        try {
+            super.run();
+        } finally {
+            this.pool.taskFinished(System.nanoTime() - start);
+        }
+    }
+
+    protected void setException(Throwable t) {
+        super.setException(t);
+        this.pool.taskFailed(this.task, t, this.submitted);
+    }
+
+    /**
+     * Returns the string representation of the user provided task.
+     */
+    public String toString() {
+        return String.valueOf(this.task);
+    }
+}
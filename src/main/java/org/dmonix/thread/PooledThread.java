@@ -1,83 +1,114 @@
-package org.dmonix.thread;
-
-/**
- * The thread used in the <code>ThreadPool</code> class. The thread it self does not perform any action. It will merely allow the runnable object that is set
- * for this object to run.
- * <p>
- * Copyright: Copyright (c) 2003
- * </p>
- * <p>
- * Company: dmonix.org
- * </p>
- * 
- * @author Peter Nerg
- * @since 1.0
- */
-public class PooledThread extends Thread {
-    private Object mutex = new Object();
-
-    private ThreadPool pool = null;
-
-    private Runnable runnable = null;
-    private boolean running = false;
-
-    PooledThread(ThreadPool pool, String name) {
-        super(name);
-        this.pool = pool;
-    }
-
-    /**
-     * Allows for this thread to execute its Runnable object once by releasing the mutex lock.
-     */
-    public void execute() {
-        if (this.runnable == null)
-            throw new IllegalStateException("The runnable has not been set");
-
-        synchronized (mutex) {
-            this.running = true;
-            mutex.notifyAll();
-        }
-    }
-
-    /**
-     * Sets the Runnable object to run.
-     * 
-     * @param runnable
-     *            The runnable used by this thread
-     */
-    public void setRunnable(Runnable runnable) {
-        this.runnable = runnable;
-    }
-
-    /**
-     * The thread is immediately put on a mutex wait. <br>
-     * The mutex is released when the <code>execute</code> method is invoked. <br>
-     * Once the mutex lock is released this thread will execute the <code>run</code> method on the Runnable object. <br>
-     * After execution the thread is returned to the pool.
-     * 
-     * @see setRunnable(Runnable)
-     * @see execute
-     */
-    public void run() {
-        while (true) {
-            try {
-                this.pool.returnThread(this);
-
-                /**
-                 * Put the mutex object for wait. The state is released when notify() is invoked, see execute() in this class
-                 */
-                synchronized (mutex) {
-                    while (!running)
-                        mutex.wait();
-                }
-
-                this.running = false;
-                this.runnable.run();
-                this.runnable = null;
-            } catch (InterruptedException ex) {
-            } catch (Exception ex) {
-            }
-        }
-    }
-
-}
\ No newline at end of file
+package org.dmonix.thread;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The thread used in the <code>ThreadPool</code> class. The thread it self does not perform any action. It will either execute the tasks queued in the pool
+ * or the runnable object that is set for this object.
+ * <p>
+ * Copyright: Copyright (c) 2003
+ * </p>
+ * <p>
+ * Company: dmonix.org
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 1.0
+ */
+public class PooledThread extends Thread {
+    private ThreadPool pool = null;
+
+    private volatile Runnable runnable = null;
+    private volatile boolean running = false;
+
+    /** Set if the thread was reserved while it was about to execute a queued task. */
+    private boolean reserved = false;
+
+    PooledThread(ThreadPool pool, String name) {
+        super(name);
+        this.pool = pool;
+    }
+
+    /**
+     * Allows for this thread to execute its Runnable object once by unparking the thread.
+     */
+    public void execute() {
+        if (this.runnable == null)
+            throw new IllegalStateException("The runnable has not been set");
+
+        this.running = true;
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Sets the Runnable object to run.
+     * 
+     * @param runnable
+     *            The runnable used by this thread
+     */
+    public void setRunnable(Runnable runnable) {
+        this.runnable = runnable;
+    }
+
+    /**
+     * The thread will continously take tasks from the pool and execute them. <br>
+     * If there is no queued task the thread is returned to the pool where it is parked until either a task is queued or the thread is reserved using
+     * <code>ThreadPool.getThread()</code>. <br>
+     * A reserved thread is parked until the <code>execute</code> method is invoked, it will then execute the <code>run</code> method on the Runnable object. <br>
+     * The thread terminates if it is retired by the pool or when the pool is shut down.
+     * 
+     * @see setRunnable(Runnable)
+     * @see execute
+     */
+    public void run() {
+        this.pool.threadStarted(this);
+        try {
+            Runnable task;
+            while ((task = this.pool.nextTask(this)) != null) {
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    this.pool.taskFailed(task, ex, false);
+                }
+            }
+        } finally {
+            this.pool.threadTerminated(this);
+        }
+    }
+
+    /**
+     * Parks the thread until the <code>execute</code> method has been invoked.
+     * 
+     * @return The runnable to execute, <code>null</code> if the pool was stopped while waiting
+     */
+    Runnable awaitRunnable() {
+        this.reserved = false;
+        while (!this.running) {
+            Thread.interrupted();
+            if (this.pool.isStopped())
+                return null;
+            LockSupport.park(this);
+        }
+
+        this.running = false;
+        Runnable task = this.runnable;
+        this.runnable = null;
+        return task;
+    }
+
+    /**
+     * Marks that the thread has been reserved and shall wait for its runnable once its current task is done.
+     */
+    void setReserved() {
+        this.reserved = true;
+    }
+
+    /**
+     * If the thread has been reserved.
+     * 
+     * @return <code>true</code> if the thread shall wait for its runnable
+     */
+    boolean isReserved() {
+        return this.reserved;
+    }
+}
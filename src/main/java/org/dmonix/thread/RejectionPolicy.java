@@ -0,0 +1,25 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decides what to do with a task that can't be queued because the task queue of a <code>ThreadPool</code> is full.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ * @see ThreadPool#setRejectionPolicy(RejectionPolicy)
+ */
+public interface RejectionPolicy {
+
+    /**
+     * Invoked by the pool when the provided task can't be queued.
+     * 
+     * @param task
+     *            The task that could not be queued
+     * @param pool
+     *            The pool
+     * @throws RejectedExecutionException
+     *             If the task is rejected
+     */
+    public void rejected(Runnable task, ThreadPool pool);
+}
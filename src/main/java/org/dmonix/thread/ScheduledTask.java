@@ -0,0 +1,110 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The future created for each task given to a <code>Scheduler</code>. <br>
+ * The task keeps the time it is due to run and, for periodic tasks, puts itself back on the queue of the scheduler after each run.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+final class ScheduledTask<T> extends FutureTask<T> implements ScheduledFuture<T> {
+    private final Scheduler scheduler;
+
+    /** The task provided by the user, used for logging. */
+    private final Object task;
+
+    /** Ordering of tasks due at the same time. */
+    private final long sequence;
+
+    /** Zero for a one-shot task, positive for a fixed rate and negative for a fixed delay. */
+    private final long period;
+
+    /** The time (System.nanoTime) the task is due to run. */
+    private volatile long time;
+
+    ScheduledTask(Scheduler scheduler, Callable<T> callable, long time, long sequence) {
+        super(callable);
+        this.scheduler = scheduler;
+        this.task = callable;
+        this.time = time;
+        this.period = 0;
+        this.sequence = sequence;
+    }
+
+    ScheduledTask(Scheduler scheduler, Runnable runnable, long time, long period, long sequence) {
+        super(runnable, null);
+        this.scheduler = scheduler;
+        this.task = runnable;
+        this.time = time;
+        this.period = period;
+        this.sequence = sequence;
+    }
+
+    /**
+     * If the task is run repeatedly.
+     * 
+     * @return <code>true</code> for a periodic task
+     */
+    boolean isPeriodic() {
+        return this.period != 0;
+    }
+
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(this.time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo(Delayed other) {
+        if (other == this)
+            return 0;
+        if (other instanceof ScheduledTask) {
+            ScheduledTask<?> task = (ScheduledTask<?>) other;
+            long diff = this.time - task.time;
+            if (diff != 0)
+                return diff < 0 ? -1 : 1;
+            return this.sequence < task.sequence ? -1 : 1;
+        }
+        long diff = this.getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+
+    /**
+     * Runs the task. <br>
+     * A periodic task is given its next time to run and is put back on the queue of the scheduler, unless it failed or has been cancelled.
+     */
+    public void run() {
+        if (!this.isPeriodic()) {
+            super.run();
+        } else if (super.runAndReset()) {
+            this.time = this.period > 0 ? this.time + this.period : System.nanoTime() - this.period;
+            this.scheduler.reschedule(this);
+        }
+    }
+
+    /**
+     * Cancels the task and removes it from the queue of the scheduler.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)
+            this.scheduler.remove(this);
+        return cancelled;
+    }
+
+    protected void setException(Throwable t) {
+        super.setException(t);
+        this.scheduler.taskFailed(this.task, t, this.isPeriodic());
+    }
+
+    /**
+     * Returns the string representation of the user provided task.
+     */
+    public String toString() {
+        return String.valueOf(this.task);
+    }
+}
@@ -0,0 +1,328 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks after a delay or periodically using a small set of shared threads. <br>
+ * The tasks are kept in a heap ordered by the time they are due, the threads sleep until the first task is due, i.e. there is no polling and an idle
+ * scheduler costs nothing but its threads.
+ * <p>
+ * Use the shared scheduler returned by <code>getDefault()</code> for periodic maintenance such as reaping stale connections instead of dedicating a thread to
+ * each such task. The tasks are executed by the threads of the scheduler, a task that blocks for a long time delays other due tasks and should rather be
+ * handed to a <code>ThreadPool</code>.
+ * </p>
+ * <p>
+ * The threads of the scheduler are daemon threads, they will not prevent the JVM from exiting.
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class Scheduler {
+    private static final Logger log = Logger.getLogger(Scheduler.class.getName());
+
+    /** The number of threads of the shared scheduler. */
+    public static final int DEFAULT_THREAD_COUNT = 2;
+
+    private final DelayQueue<ScheduledTask<?>> taskQueue = new DelayQueue<ScheduledTask<?>>();
+    private final AtomicLong taskSequence = new AtomicLong();
+    private final Thread[] threads;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Lazily creates the shared scheduler.
+     */
+    private static class DefaultHolder {
+        private static final Scheduler DEFAULT = new Scheduler("DefaultScheduler", DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * Get the scheduler shared by all users of the SDK.
+     * 
+     * @return The shared scheduler
+     */
+    public static Scheduler getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Creates a scheduler with the provided number of threads.
+     * 
+     * @param threadCount
+     *            The number of threads
+     */
+    public Scheduler(int threadCount) {
+        this("Scheduler", threadCount);
+    }
+
+    /**
+     * Creates a scheduler with the provided number of threads.
+     * 
+     * @param name
+     *            The name of the scheduler, used to name its threads
+     * @param threadCount
+     *            The number of threads
+     */
+    public Scheduler(String name, int threadCount) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("The thread count must be at least 1 [" + threadCount + "]");
+
+        this.threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            this.threads[i] = new Thread(new Worker(), name + "Thread" + (i + 1));
+            this.threads[i].setDaemon(true);
+            this.threads[i].start();
+        }
+    }
+
+    /**
+     * Runs a task once after the provided delay.
+     * 
+     * @param task
+     *            The task
+     * @param delay
+     *            The delay
+     * @param unit
+     *            The unit of the delay
+     * @return The future of the task, use it to cancel the task
+     * @throws RejectedExecutionException
+     *             If the scheduler has been shut down
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return this.schedule(task, delay, 0, unit);
+    }
+
+    /**
+     * Runs a task once after the provided delay.
+     * 
+     * @param task
+     *            The task
+     * @param delay
+     *            The delay
+     * @param unit
+     *            The unit of the delay
+     * @return The future of the task, use it to get the result or to cancel the task
+     * @throws RejectedExecutionException
+     *             If the scheduler has been shut down
+     */
+    public <T> ScheduledFuture<T> schedule(Callable<T> task, long delay, TimeUnit unit) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+        ScheduledTask<T> scheduledTask = new ScheduledTask<T>(this, task, this.dueTime(delay, unit), this.taskSequence.incrementAndGet());
+        this.reschedule(scheduledTask);
+        return scheduledTask;
+    }
+
+    /**
+     * Runs a task periodically at a fixed rate. <br>
+     * The task is first run after the initial delay and then every period measured from the time the previous run was due. <br>
+     * Should a run take longer than the period the next run starts late, runs are never executed concurrently. <br>
+     * The task is run until it is cancelled, it throws an exception or the scheduler is shut down.
+     * 
+     * @param task
+     *            The task
+     * @param initialDelay
+     *            The delay until the first run
+     * @param period
+     *            The time between two runs
+     * @param unit
+     *            The unit of the delay and the period
+     * @return The future of the task, use it to cancel the task
+     * @throws RejectedExecutionException
+     *             If the scheduler has been shut down
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("The period must be positive [" + period + "]");
+        return this.schedule(task, initialDelay, unit.toNanos(period), unit);
+    }
+
+    /**
+     * Runs a task periodically with a fixed delay. <br>
+     * The task is first run after the initial delay and then with the provided delay between the end of one run and the start of the next. <br>
+     * The task is run until it is cancelled, it throws an exception or the scheduler is shut down.
+     * 
+     * @param task
+     *            The task
+     * @param initialDelay
+     *            The delay until the first run
+     * @param delay
+     *            The delay between two runs
+     * @param unit
+     *            The unit of the delays
+     * @return The future of the task, use it to cancel the task
+     * @throws RejectedExecutionException
+     *             If the scheduler has been shut down
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0)
+            throw new IllegalArgumentException("The delay must be positive [" + delay + "]");
+        return this.schedule(task, initialDelay, -unit.toNanos(delay), unit);
+    }
+
+    /**
+     * Get the number of tasks waiting to be run.
+     * 
+     * @return The number of scheduled tasks
+     */
+    public int getScheduledTaskCount() {
+        return this.taskQueue.size();
+    }
+
+    /**
+     * Get the number of threads of the scheduler.
+     * 
+     * @return The number of threads
+     */
+    public int getThreadCount() {
+        return this.threads.length;
+    }
+
+    /**
+     * Shuts down the scheduler. <br>
+     * All scheduled tasks are cancelled and the threads of the scheduler terminate once they have finished any task they are running. <br>
+     * The shared scheduler can not be shut down.
+     * 
+     * @throws IllegalStateException
+     *             If invoked on the shared scheduler
+     */
+    public void shutdown() {
+        if (this == getDefault())
+            throw new IllegalStateException("The shared scheduler can not be shut down");
+
+        this.shutdown = true;
+        for (Thread t : this.threads)
+            t.interrupt();
+
+        for (Object task : this.taskQueue.toArray())
+            ((ScheduledTask<?>) task).cancel(false);
+        this.taskQueue.clear();
+    }
+
+    /**
+     * If the scheduler has been shut down.
+     * 
+     * @return <code>true</code> if shut down
+     */
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    /**
+     * Creates and queues a task.
+     * 
+     * @param task
+     *            The task
+     * @param delay
+     *            The delay until the first run
+     * @param period
+     *            The period in nanoseconds, zero for a one-shot, positive for a fixed rate and negative for a fixed delay
+     * @param unit
+     *            The unit of the delay
+     * @return The task
+     */
+    private ScheduledFuture<?> schedule(Runnable task, long delay, long period, TimeUnit unit) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+        ScheduledTask<Object> scheduledTask = new ScheduledTask<Object>(this, task, this.dueTime(delay, unit), period, this.taskSequence.incrementAndGet());
+        this.reschedule(scheduledTask);
+        return scheduledTask;
+    }
+
+    /**
+     * Calculates the time (System.nanoTime) a task is due.
+     * 
+     * @param delay
+     *            The delay
+     * @param unit
+     *            The unit of the delay
+     * @return The due time
+     */
+    private long dueTime(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(delay, 0));
+    }
+
+    /**
+     * Queues a task to run at its due time.
+     * 
+     * @param task
+     *            The task
+     * @throws RejectedExecutionException
+     *             If the scheduler has been shut down
+     */
+    void reschedule(ScheduledTask<?> task) {
+        if (this.shutdown) {
+            task.cancel(false);
+            throw new RejectedExecutionException("The scheduler has been shut down");
+        }
+        this.taskQueue.offer(task);
+
+        // a shutdown may have passed unnoticed while the task was queued
+        if (this.shutdown && this.taskQueue.remove(task))
+            task.cancel(false);
+    }
+
+    /**
+     * Removes a cancelled task from the queue.
+     * 
+     * @param task
+     *            The task
+     */
+    void remove(ScheduledTask<?> task) {
+        this.taskQueue.remove(task);
+    }
+
+    /**
+     * Logs a failed task. <br>
+     * Failures of one-shot tasks are logged as <code>FINE</code> as the caller is expected to check the future, failures of periodic tasks are logged as
+     * <code>WARNING</code> as the task will not be run again.
+     * 
+     * @param task
+     *            The task provided by the user
+     * @param t
+     *            The cause of the failure
+     * @param periodic
+     *            If the task was periodic
+     */
+    void taskFailed(Object task, Throwable t, boolean periodic) {
+        Level level = periodic ? Level.WARNING : Level.FINE;
+        if (log.isLoggable(level))
+            log.log(level, "The scheduled task [" + task + "] failed" + (periodic ? ", it will not be run again" : ""), t);
+    }
+
+    /**
+     * The work performed by each thread of the scheduler. <br>
+     * The thread takes the first due task from the queue and runs it.
+     */
+    private class Worker implements Runnable {
+        public void run() {
+            while (!shutdown) {
+                ScheduledTask<?> task;
+                try {
+                    task = taskQueue.take();
+                } catch (InterruptedException ex) {
+                    continue;
+                }
+
+                try {
+                    task.run();
+                } catch (RejectedExecutionException ex) {
+                    // a periodic task could not be rescheduled due to a shutdown
+                } catch (Exception ex) {
+                    taskFailed(task, ex, task.isPeriodic());
+                }
+
+                // clear any interrupt caused by cancelling the task
+                if (!shutdown)
+                    Thread.interrupted();
+            }
+        }
+    }
+}
@@ -1,162 +1,1315 @@
-package org.dmonix.thread;
-
-import java.util.List;
-import java.util.Vector;
-
-/**
- * This class implements a thread pool.
- * <p>
- * Copyright: Copyright (c) 2003
- * </p>
- * <p>
- * Company: dmonix.org
- * </p>
- * 
- * @author Peter Nerg
- * @since 1.0
- */
-public class ThreadPool {
-    private List<PooledThread> pool = new Vector<PooledThread>();
-
-    private int initialThreadCount = -1;
-    private int currentThreadCount = -1;
-    private long threadRequests = 0;
-
-    /**
-     * Creates an empty pool. <br>
-     * Add further <code>PooledThreads</code> using the method <code>addThread</code>
-     * 
-     * @see addThread(Runnable)
-     */
-    public ThreadPool() {
-        this(0);
-    }
-
-    /**
-     * Creates a pool with an initial amount of PooledThreads.
-     * 
-     * @param initialThreadCount
-     *            The inital number of threads
-     */
-    public ThreadPool(int initialThreadCount) {
-        this.initialThreadCount = initialThreadCount;
-        for (int i = 0; i < this.initialThreadCount; i++) {
-            addThread();
-        }
-        resetThreadRequests();
-    }
-
-    /**
-     * Adds a new thread to the pool. <br>
-     * Each Runnable object will be wrapped inside a <code>PooledThread</code> object. <br>
-     * The PooledThread is started immediately after it has been created.
-     * 
-     * @param runnable
-     *            The runnable to use in the PooledThread
-     * @see test.org.dmonix.thread.PooledThread.run
-     */
-    public void addThread() {
-        PooledThread p = new PooledThread(this, "PooledThread" + pool.size() + 1);
-        p.start();
-        resetThreadRequests();
-        this.currentThreadCount++;
-    }
-
-    /**
-     * Adds a new thread to the pool. <br>
-     * Each Runnable object will be wrapped inside a <code>PooledThread</code> object. <br>
-     * The PooledThread is started immediately after it has been created.
-     * 
-     * @param runnable
-     *            The runnable to use in the PooledThread
-     * @see test.org.dmonix.thread.PooledThread.run
-     */
-    public void addThread(Runnable runnable) {
-        PooledThread p = new PooledThread(this, "PooledThread" + pool.size() + 1);
-        p.start();
-        p.setRunnable(runnable);
-        resetThreadRequests();
-        this.currentThreadCount++;
-    }
-
-    /**
-     * Get the initial size of the pool. <br>
-     * This value will never change for the thread pool.
-     * 
-     * @return The initial amount of threads
-     */
-    public int getInitialThreadCount() {
-        return this.initialThreadCount;
-    }
-
-    /**
-     * Get the current size of the pool.
-     * 
-     * @return The current amount of threads
-     */
-    public int getCurrentThreadCount() {
-        return this.currentThreadCount;
-    }
-
-    /**
-     * Get the amount of running/busy threads.
-     * 
-     * @return The amount of running threads
-     */
-    public int getRunningThreadCount() {
-        return this.currentThreadCount - this.pool.size();
-    }
-
-    /**
-     * Get the number of times a thread has been requested from the pool.
-     * 
-     * @return The number of thread requests
-     */
-    public long getThreadRequests() {
-        return this.threadRequests;
-    }
-
-    /**
-     * Reset the counter for the number of times a thread has been requested from the pool.
-     */
-    public void resetThreadRequests() {
-        this.threadRequests = 0;
-    }
-
-    /**
-     * Get a thread from the pool. <br>
-     * If there are no more free threads the method is put on hold using <code>wait()</code>
-     * 
-     * @return The thread
-     */
-    public synchronized PooledThread getThread() {
-        PooledThread t;
-
-        while (pool.size() == 0)
-            try {
-                wait();
-            } catch (java.lang.InterruptedException e) {
-            }
-        ;
-
-        t = (PooledThread) this.pool.remove(0);
-        this.threadRequests++;
-
-        return t;
-    }
-
-    /**
-     * Return a thread to the pool. <br>
-     * If the pool was previously empty, the method invokes <code>notify()</code> in order to release any thread waiting in the method <code>getThread()</code>
-     * 
-     * @param t
-     *            The thread to return
-     */
-    public synchronized void returnThread(PooledThread t) {
-        this.pool.add(t);
-
-        if (this.pool.size() == 1)
-            notifyAll();
-    }
-
-}
\ No newline at end of file
+package org.dmonix.thread;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.dmonix.util.Histogram;
+
+/**
+ * This class implements a thread pool. <br>
+ * Tasks are given to the pool using any of the <code>submit</code> methods. A submitted task is put on a bounded task queue and an idle
+ * <code>PooledThread</code>, if any, is woken up to execute it. Busy threads drain the queue as they finish their current task. <br>
+ * The caller is thus never blocked waiting for a free thread. <br>
+ * Neither submitting a task nor a thread returning to the pool requires a lock, the idle threads are kept in a lock-free stack where each thread is parked
+ * individually until it is needed. <br>
+ * The pool can be elastic, it will then start new threads on demand up to a maximum number of threads when a task is queued and there is no idle thread.
+ * Threads that have been idle longer than a keep-alive time are retired as long as there are more than the minimum number of threads. <br>
+ * In <code>VIRTUAL</code> execution mode the tasks are instead executed by virtual threads that are started on demand, the maximum thread count then limits
+ * the number of concurrently executing tasks. <br>
+ * In <code>WORK_STEALING</code> execution mode the tasks are executed by a fork/join pool where each thread has its own task deque, tasks may fork
+ * sub-tasks that are stolen by idle threads.
+ * <p>
+ * The pool keeps statistics on the time it takes for a task to get a thread, the time it takes to run the task and the number of completed, failed and
+ * rejected tasks. The statistics can be monitored using JMX, see <code>registerMBean(String)</code>.
+ * </p>
+ * <p>
+ * When the task queue is full the <code>RejectionPolicy</code> of the pool decides what to do with the task, the default policy is to fail fast by throwing
+ * a <code>RejectedExecutionException</code>.
+ * </p>
+ * <p>
+ * A pool that is no longer needed is shut down using <code>shutdown()</code>, it then stops accepting tasks and its threads terminate once the queued tasks
+ * have been executed. Use <code>shutdown(long, TimeUnit)</code> to give the queued tasks a deadline, any task not executed within the deadline is abandoned
+ * and returned to the caller.
+ * </p>
+ * 
+ * @see ExecutionMode
+ * @see RejectionPolicy
+ * <p>
+ * Copyright: Copyright (c) 2003
+ * </p>
+ * <p>
+ * Company: dmonix.org
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 1.0
+ */
+public class ThreadPool implements Executor, ThreadPoolMXBean {
+    private static final Logger log = Logger.getLogger(ThreadPool.class.getName());
+
+    /** The default maximum number of tasks waiting for a free thread. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /** The default keep-alive time in seconds for pools created with an execution mode. */
+    public static final long DEFAULT_KEEP_ALIVE_TIME = 60;
+
+    /** The run states of the pool, the state only ever advances. */
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private final ExecutionMode executionMode;
+
+    /** The factory for virtual threads, only set in <code>VIRTUAL</code> mode. */
+    private final ThreadFactory virtualThreadFactory;
+
+    /** The fork/join pool, only set in <code>WORK_STEALING</code> mode. */
+    private final ForkJoinPool forkJoinPool;
+
+    /** The idle threads. */
+    private final IdleThreadStack idleThreads = new IdleThreadStack();
+
+    /** The tasks waiting for a free thread. */
+    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+    private final int queueCapacity;
+
+    /** One permit for each free slot in the task queue. */
+    private final Semaphore queueSlots;
+
+    private volatile RejectionPolicy rejectionPolicy = new FailFastPolicy();
+
+    private volatile int runState = RUNNING;
+
+    /** The threads currently executing tasks for the pool, used to interrupt them on <code>shutdownNow()</code>. */
+    private final Set<Thread> workers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    /** Monitor for callers waiting in <code>awaitTermination</code>. */
+    private final Object terminationMonitor = new Object();
+
+    /** Monitor and counter for callers waiting in <code>getThread()</code>. */
+    private final Object threadWaitersMonitor = new Object();
+    private volatile int threadWaiters = 0;
+
+    private final int initialThreadCount;
+    private final int minThreadCount;
+    private volatile int maxThreadCount;
+    private final long keepAliveNanos;
+
+    private final AtomicInteger currentThreadCount = new AtomicInteger();
+    private final AtomicInteger threadSequence = new AtomicInteger();
+    private final AtomicLong threadRequests = new AtomicLong();
+
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private final AtomicLong failedTaskCount = new AtomicLong();
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+    /** The time in nanoseconds from a task is queued until a thread starts executing it. */
+    private final Histogram acquireTimes = new Histogram();
+
+    /** The time in nanoseconds it takes to run a task. */
+    private final Histogram runTimes = new Histogram();
+
+    /** The name the pool is registered with as a MBean, <code>null</code> if not registered. */
+    private ObjectName objectName;
+
+    /**
+     * Creates an empty pool. <br>
+     * Add further <code>PooledThreads</code> using the method <code>addThread</code>
+     * 
+     * @see addThread(Runnable)
+     */
+    public ThreadPool() {
+        this(0);
+    }
+
+    /**
+     * Creates a pool with a fixed amount of PooledThreads.
+     * 
+     * @param initialThreadCount
+     *            The inital number of threads
+     */
+    public ThreadPool(int initialThreadCount) {
+        this(initialThreadCount, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a pool with a fixed amount of PooledThreads and a task queue of the provided capacity.
+     * 
+     * @param initialThreadCount
+     *            The inital number of threads
+     * @param queueCapacity
+     *            The maximum number of submitted tasks waiting for a free thread
+     */
+    public ThreadPool(int initialThreadCount, int queueCapacity) {
+        this(initialThreadCount, initialThreadCount, Long.MAX_VALUE, TimeUnit.NANOSECONDS, queueCapacity);
+    }
+
+    /**
+     * Creates an elastic pool. <br>
+     * The pool is started with the minimum amount of threads, further threads are started on demand.
+     * 
+     * @param minThreadCount
+     *            The minimum number of threads, these threads are never retired
+     * @param maxThreadCount
+     *            The maximum number of threads
+     * @param keepAliveTime
+     *            The time a thread above the minimum number of threads may be idle before it is retired
+     * @param unit
+     *            The unit of the keep-alive time
+     */
+    public ThreadPool(int minThreadCount, int maxThreadCount, long keepAliveTime, TimeUnit unit) {
+        this(minThreadCount, maxThreadCount, keepAliveTime, unit, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates an elastic pool with a task queue of the provided capacity. <br>
+     * The pool is started with the minimum amount of threads, further threads are started on demand.
+     * 
+     * @param minThreadCount
+     *            The minimum number of threads, these threads are never retired
+     * @param maxThreadCount
+     *            The maximum number of threads
+     * @param keepAliveTime
+     *            The time a thread above the minimum number of threads may be idle before it is retired
+     * @param unit
+     *            The unit of the keep-alive time
+     * @param queueCapacity
+     *            The maximum number of submitted tasks waiting for a free thread
+     */
+    public ThreadPool(int minThreadCount, int maxThreadCount, long keepAliveTime, TimeUnit unit, int queueCapacity) {
+        this(ExecutionMode.PLATFORM, minThreadCount, maxThreadCount, keepAliveTime, unit, queueCapacity);
+    }
+
+    /**
+     * Creates a pool using the provided execution mode. <br>
+     * In <code>PLATFORM</code> mode this creates an elastic pool without any minimum number of threads and a keep-alive time of
+     * <code>DEFAULT_KEEP_ALIVE_TIME</code> seconds. <br>
+     * In <code>VIRTUAL</code> mode each task is executed by a virtual thread. If the JVM doesn't support virtual threads the pool falls back to
+     * <code>PLATFORM</code> mode. <br>
+     * In <code>WORK_STEALING</code> mode the maximum thread count is the parallelism of the fork/join pool, normally the number of available processors.
+     * 
+     * @param mode
+     *            The execution mode
+     * @param maxThreadCount
+     *            The maximum number of threads, i.e. concurrently executing tasks
+     * @param queueCapacity
+     *            The maximum number of submitted tasks waiting for a free thread
+     */
+    public ThreadPool(ExecutionMode mode, int maxThreadCount, int queueCapacity) {
+        this(mode, 0, maxThreadCount, DEFAULT_KEEP_ALIVE_TIME, TimeUnit.SECONDS, queueCapacity);
+    }
+
+    private ThreadPool(ExecutionMode mode, int minThreadCount, int maxThreadCount, long keepAliveTime, TimeUnit unit, int queueCapacity) {
+        if (minThreadCount < 0 || maxThreadCount < minThreadCount)
+            throw new IllegalArgumentException("Illegal thread count [min=" + minThreadCount + "] [max=" + maxThreadCount + "]");
+        if (keepAliveTime <= 0)
+            throw new IllegalArgumentException("The keep-alive time must be positive [" + keepAliveTime + "]");
+        if (queueCapacity <= 0)
+            throw new IllegalArgumentException("The queue capacity must be positive [" + queueCapacity + "]");
+
+        ThreadFactory factory = null;
+        if (mode == ExecutionMode.VIRTUAL) {
+            factory = VirtualThreads.newThreadFactory("VirtualPooledThread");
+            if (factory == null) {
+                log.log(Level.INFO, "Virtual threads are not supported by this JVM, falling back to platform threads");
+                mode = ExecutionMode.PLATFORM;
+            }
+        }
+        this.executionMode = mode;
+        this.virtualThreadFactory = factory;
+        this.forkJoinPool = mode == ExecutionMode.WORK_STEALING ? new ForkJoinPool(maxThreadCount, new WorkStealingThreadFactory(), null, false) : null;
+
+        this.initialThreadCount = minThreadCount;
+        this.minThreadCount = minThreadCount;
+        this.maxThreadCount = maxThreadCount;
+        this.keepAliveNanos = unit.toNanos(keepAliveTime);
+        this.queueCapacity = queueCapacity;
+        this.queueSlots = new Semaphore(queueCapacity);
+        for (int i = 0; i < this.initialThreadCount; i++) {
+            addThread();
+        }
+        resetThreadRequests();
+    }
+
+    /**
+     * Adds a new thread to the pool. <br>
+     * Each Runnable object will be wrapped inside a <code>PooledThread</code> object. <br>
+     * The PooledThread is started immediately after it has been created. <br>
+     * Should the pool already have the maximum number of threads the maximum is raised by one.
+     * 
+     * @param runnable
+     *            The runnable to use in the PooledThread
+     * @throws IllegalStateException
+     *             If the pool is not in <code>PLATFORM</code> mode
+     * @throws RejectedExecutionException
+     *             If the pool has been shut down
+     * @see test.org.dmonix.thread.PooledThread.run
+     */
+    public void addThread() {
+        this.checkPlatformMode();
+        this.checkRunning();
+        this.startThread(null);
+        resetThreadRequests();
+    }
+
+    /**
+     * Adds a new thread to the pool. <br>
+     * Each Runnable object will be wrapped inside a <code>PooledThread</code> object. <br>
+     * The PooledThread is started immediately after it has been created. <br>
+     * Should the pool already have the maximum number of threads the maximum is raised by one.
+     * 
+     * @param runnable
+     *            The runnable to use in the PooledThread
+     * @throws IllegalStateException
+     *             If the pool is not in <code>PLATFORM</code> mode
+     * @throws RejectedExecutionException
+     *             If the pool has been shut down
+     * @see test.org.dmonix.thread.PooledThread.run
+     */
+    public void addThread(Runnable runnable) {
+        this.checkPlatformMode();
+        this.checkRunning();
+        this.startThread(runnable);
+        resetThreadRequests();
+    }
+
+    /**
+     * Get the initial size of the pool. <br>
+     * This value will never change for the thread pool.
+     * 
+     * @return The initial amount of threads
+     */
+    public int getInitialThreadCount() {
+        return this.initialThreadCount;
+    }
+
+    /**
+     * Get the execution mode of the pool. <br>
+     * This is the mode the pool actually uses, i.e. <code>PLATFORM</code> if <code>VIRTUAL</code> was requested on a JVM without virtual threads.
+     * 
+     * @return The execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return this.executionMode;
+    }
+
+    /**
+     * Get the minimum size of the pool. <br>
+     * Threads are never retired below this number.
+     * 
+     * @return The minimum amount of threads
+     */
+    public int getMinThreadCount() {
+        return this.minThreadCount;
+    }
+
+    /**
+     * Get the maximum size of the pool. <br>
+     * Threads are never started on demand above this number.
+     * 
+     * @return The maximum amount of threads
+     */
+    public int getMaxThreadCount() {
+        return this.maxThreadCount;
+    }
+
+    /**
+     * Get the time a thread above the minimum number of threads may be idle before it is retired.
+     * 
+     * @param unit
+     *            The unit of the returned time
+     * @return The keep-alive time
+     */
+    public long getKeepAliveTime(TimeUnit unit) {
+        return unit.convert(this.keepAliveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the current size of the pool.
+     * 
+     * @return The current amount of threads
+     */
+    public int getCurrentThreadCount() {
+        if (this.forkJoinPool != null)
+            return this.forkJoinPool.getPoolSize();
+        return this.currentThreadCount.get();
+    }
+
+    /**
+     * Get the amount of running/busy threads.
+     * 
+     * @return The amount of running threads
+     */
+    public int getRunningThreadCount() {
+        if (this.forkJoinPool != null)
+            return this.forkJoinPool.getActiveThreadCount();
+        return Math.max(0, this.currentThreadCount.get() - this.idleThreads.size());
+    }
+
+    /**
+     * Get the number of times a thread has been requested from the pool.
+     * 
+     * @return The number of thread requests
+     */
+    public long getThreadRequests() {
+        return this.threadRequests.get();
+    }
+
+    /**
+     * Reset the counter for the number of times a thread has been requested from the pool.
+     */
+    public void resetThreadRequests() {
+        this.threadRequests.set(0);
+    }
+
+    /**
+     * Get the policy applied to tasks that can't be queued because the task queue is full.
+     * 
+     * @return The rejection policy
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return this.rejectionPolicy;
+    }
+
+    /**
+     * Set the policy to apply to tasks that can't be queued because the task queue is full.
+     * 
+     * @param rejectionPolicy
+     *            The rejection policy
+     * @see FailFastPolicy
+     * @see BlockPolicy
+     * @see CallerRunsPolicy
+     * @see DropOldestPolicy
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        if (rejectionPolicy == null)
+            throw new NullPointerException("The rejection policy must not be null");
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Get the number of tasks that have been executed.
+     * 
+     * @return The number of completed tasks, including the failed ones
+     */
+    public long getCompletedTaskCount() {
+        return this.completedTaskCount.get();
+    }
+
+    /**
+     * Get the number of tasks that have thrown an exception.
+     * 
+     * @return The number of failed tasks
+     */
+    public long getFailedTaskCount() {
+        return this.failedTaskCount.get();
+    }
+
+    /**
+     * Get the number of tasks that could not be queued because the task queue was full, i.e. the number of times the rejection policy has been applied.
+     * 
+     * @return The number of rejected tasks
+     */
+    public long getRejectedTaskCount() {
+        return this.rejectedTaskCount.get();
+    }
+
+    /**
+     * Get the histogram of the time in nanoseconds from a task is submitted until a thread starts executing it. <br>
+     * The time callers of <code>getThread()</code> wait for a thread is also recorded.
+     * 
+     * @return The histogram
+     */
+    public Histogram getAcquireTimeHistogram() {
+        return this.acquireTimes;
+    }
+
+    /**
+     * Get the histogram of the time in nanoseconds it takes to run a task.
+     * 
+     * @return The histogram
+     */
+    public Histogram getRunTimeHistogram() {
+        return this.runTimes;
+    }
+
+    public double getMeanAcquireTime() {
+        return this.acquireTimes.getMean() / 1000;
+    }
+
+    public long getAcquireTime99thPercentile() {
+        return this.acquireTimes.getValueAtPercentile(99) / 1000;
+    }
+
+    public long getMaxAcquireTime() {
+        return this.acquireTimes.getMax() / 1000;
+    }
+
+    public double getMeanRunTime() {
+        return this.runTimes.getMean() / 1000;
+    }
+
+    public long getRunTime99thPercentile() {
+        return this.runTimes.getValueAtPercentile(99) / 1000;
+    }
+
+    public long getMaxRunTime() {
+        return this.runTimes.getMax() / 1000;
+    }
+
+    /**
+     * Resets all counters and histograms.
+     */
+    public void resetStatistics() {
+        this.resetThreadRequests();
+        this.completedTaskCount.set(0);
+        this.failedTaskCount.set(0);
+        this.rejectedTaskCount.set(0);
+        this.acquireTimes.reset();
+        this.runTimes.reset();
+    }
+
+    /**
+     * Registers the pool as a MBean in the platform MBean server. <br>
+     * The pool is registered with the name <code>org.dmonix.thread:type=ThreadPool,name=[name]</code>.
+     * 
+     * @param name
+     *            The name of the pool
+     * @throws JMException
+     *             If the registration failed
+     * @see ThreadPoolMXBean
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        if (this.objectName != null)
+            throw new IllegalStateException("The pool is already registered as " + this.objectName);
+
+        ObjectName objectName = new ObjectName("org.dmonix.thread:type=ThreadPool,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Unregisters the pool from the platform MBean server. <br>
+     * Does nothing if the pool is not registered.
+     * 
+     * @throws JMException
+     *             If the unregistration failed
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Get the number of submitted tasks waiting for a free thread.
+     * 
+     * @return The number of queued tasks
+     */
+    public int getQueuedTaskCount() {
+        if (this.forkJoinPool != null)
+            return this.forkJoinPool.getQueuedSubmissionCount();
+        return this.queueCapacity - this.queueSlots.availablePermits();
+    }
+
+    /**
+     * Get the maximum number of submitted tasks that can wait for a free thread.
+     * 
+     * @return The capacity of the task queue
+     */
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Submits a task for execution. <br>
+     * The task is executed by the first free thread in the pool.
+     * 
+     * @param task
+     *            The task to execute
+     * @return A future representing the pending completion of the task, the result of the future is <code>null</code>
+     * @throws RejectedExecutionException
+     *             If the task queue is full
+     */
+    public Future<?> submit(Runnable task) {
+        return this.submit(task, null);
+    }
+
+    /**
+     * Submits a task for execution. <br>
+     * The task is executed by the first free thread in the pool.
+     * 
+     * @param task
+     *            The task to execute
+     * @param result
+     *            The result to return by the future
+     * @return A future representing the pending completion of the task
+     * @throws RejectedExecutionException
+     *             If the task queue is full
+     */
+    public <T> Future<T> submit(Runnable task, T result) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+
+        PoolTask<T> future = new PoolTask<T>(this, task, result, true);
+        this.execute(future);
+        return future;
+    }
+
+    /**
+     * Submits a value-returning task for execution. <br>
+     * The task is executed by the first free thread in the pool.
+     * 
+     * @param task
+     *            The task to execute
+     * @return A future representing the pending result of the task
+     * @throws RejectedExecutionException
+     *             If the task queue is full
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+
+        PoolTask<T> future = new PoolTask<T>(this, task);
+        this.execute(future);
+        return future;
+    }
+
+    /**
+     * Executes the provided task some time in the future. <br>
+     * The task is put on the task queue and if there is an idle thread in the pool that thread is woken up to execute the task. <br>
+     * If there is no idle thread a new thread is started unless the pool already has its maximum number of threads. <br>
+     * If the task queue is full the rejection policy of the pool is applied to the task.
+     * 
+     * @param task
+     *            The task to execute
+     * @throws RejectedExecutionException
+     *             If the task queue is full and the task was rejected by the rejection policy or if the pool has been shut down
+     */
+    public void execute(Runnable task) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+        this.checkRunning();
+
+        PoolTask<?> poolTask = task instanceof PoolTask ? (PoolTask<?>) task : new PoolTask<Object>(this, task, null, false);
+        this.threadRequests.incrementAndGet();
+        poolTask.queued();
+
+        if (!this.offer(poolTask)) {
+            this.rejectedTaskCount.incrementAndGet();
+            this.rejectionPolicy.rejected(poolTask, this);
+        }
+
+        /*
+         * The pool may have been shut down while the task was queued, if so the threads may already have terminated and the task must be rejected
+         */
+        if (this.runState != RUNNING && this.forkJoinPool == null && this.taskQueue.remove(poolTask)) {
+            this.queueSlots.release();
+            this.checkRunning();
+        }
+    }
+
+    /**
+     * Submits a fork/join task for execution. <br>
+     * The task may fork sub-tasks, these are pushed on the deque of the executing thread and may be stolen by idle threads.
+     * 
+     * @param task
+     *            The task to execute
+     * @return The task, use it to join the result
+     * @throws IllegalStateException
+     *             If the pool is not in <code>WORK_STEALING</code> mode
+     * @throws RejectedExecutionException
+     *             If the task queue is full, the rejection policy is not applied to fork/join tasks
+     */
+    public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+
+        this.checkWorkStealingMode();
+        if (this.forkJoinPool.getQueuedSubmissionCount() >= this.queueCapacity) {
+            this.rejectedTaskCount.incrementAndGet();
+            throw new RejectedExecutionException("The task queue is full [capacity=" + this.queueCapacity + "]");
+        }
+        this.threadRequests.incrementAndGet();
+        return this.forkJoinPool.submit(task);
+    }
+
+    /**
+     * Executes a fork/join task and waits for its result. <br>
+     * The task may fork sub-tasks, these are pushed on the deque of the executing thread and may be stolen by idle threads.
+     * 
+     * @param task
+     *            The task to execute
+     * @return The result of the task
+     * @throws IllegalStateException
+     *             If the pool is not in <code>WORK_STEALING</code> mode
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        if (task == null)
+            throw new NullPointerException("The task must not be null");
+
+        this.checkWorkStealingMode();
+        return this.forkJoinPool.invoke(task);
+    }
+
+    /**
+     * Initiates an orderly shutdown of the pool. <br>
+     * No new tasks are accepted but the tasks already queued are executed, the threads of the pool terminate once the queue is empty. <br>
+     * The method does not wait for the queued tasks to be executed, use <code>awaitTermination</code> for that. <br>
+     * Invoking the method on a pool that already has been shut down has no effect.
+     * 
+     * @see shutdown(long, TimeUnit)
+     */
+    public void shutdown() {
+        this.advanceRunState(SHUTDOWN);
+        if (this.forkJoinPool != null)
+            this.forkJoinPool.shutdown();
+        this.wakeUpThreads();
+    }
+
+    /**
+     * Shuts down the pool and waits for at most the provided time for the queued tasks to be executed. <br>
+     * Should there still be tasks in the queue once the time has passed the pool is stopped as by <code>shutdownNow()</code>, the tasks that never were
+     * executed are returned.
+     * 
+     * @param timeout
+     *            The maximum time to wait for the queued tasks to be executed
+     * @param unit
+     *            The unit of the timeout
+     * @return The tasks that were abandoned, empty if all tasks were executed
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting, the pool is then shut down but not stopped
+     */
+    public List<Runnable> shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        this.shutdown();
+        if (this.awaitTermination(timeout, unit))
+            return Collections.emptyList();
+        return this.shutdownNow();
+    }
+
+    /**
+     * Stops the pool. <br>
+     * No new tasks are accepted and the tasks still in the queue are removed and cancelled, the threads of the pool are interrupted and terminate as soon
+     * as they have finished their current task. <br>
+     * In <code>WORK_STEALING</code> mode the queued tasks are cancelled by the fork/join pool and can't be returned.
+     * 
+     * @return The queued tasks that never were executed, the tasks are the futures returned by the <code>submit</code> methods
+     */
+    public List<Runnable> shutdownNow() {
+        this.advanceRunState(STOP);
+        List<Runnable> abandoned = new ArrayList<Runnable>();
+        if (this.forkJoinPool != null) {
+            this.forkJoinPool.shutdownNow();
+        } else {
+            Runnable task;
+            while ((task = this.pollTask()) != null) {
+                ((Future<?>) task).cancel(false);
+                abandoned.add(task);
+            }
+        }
+
+        for (Thread t : this.workers)
+            t.interrupt();
+        this.wakeUpThreads();
+
+        if (!abandoned.isEmpty() && log.isLoggable(Level.WARNING))
+            log.log(Level.WARNING, "The pool was stopped, abandoned " + abandoned.size() + " queued tasks");
+        return abandoned;
+    }
+
+    /**
+     * If the pool has been shut down.
+     * 
+     * @return <code>true</code> if shut down
+     */
+    public boolean isShutdown() {
+        return this.runState != RUNNING;
+    }
+
+    /**
+     * If the pool has been shut down and all its threads have terminated.
+     * 
+     * @return <code>true</code> if terminated
+     */
+    public boolean isTerminated() {
+        if (this.forkJoinPool != null)
+            return this.forkJoinPool.isTerminated();
+        return this.runState != RUNNING && this.currentThreadCount.get() == 0;
+    }
+
+    /**
+     * Waits for the pool to terminate after it has been shut down.
+     * 
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of the timeout
+     * @return <code>true</code> if the pool terminated, <code>false</code> if the time passed before the pool terminated
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (this.forkJoinPool != null)
+            return this.forkJoinPool.awaitTermination(timeout, unit);
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.terminationMonitor) {
+            while (!this.isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this.terminationMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a thread from the pool. <br>
+     * If there are no more free threads the method is put on hold using <code>wait()</code>. <br>
+     * The method is not interruptible, should the calling thread be interrupted while waiting the interrupt status is restored before returning.
+     * 
+     * @return The thread
+     * @throws IllegalStateException
+     *             If the pool is not in <code>PLATFORM</code> mode
+     * @throws RejectedExecutionException
+     *             If the pool has been or is shut down while waiting
+     * @deprecated Use any of the <code>submit</code> methods, they will not block if all threads are busy
+     */
+    @Deprecated
+    public PooledThread getThread() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return this.getThread(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get a thread from the pool. <br>
+     * If there are no more free threads the method is put on hold using <code>wait()</code> for at most the provided time.
+     * 
+     * @param timeout
+     *            The maximum time to wait for a free thread
+     * @param unit
+     *            The unit of the timeout
+     * @return The thread, <code>null</code> if there was no free thread within the timeout
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting
+     * @throws IllegalStateException
+     *             If the pool is not in <code>PLATFORM</code> mode
+     * @throws RejectedExecutionException
+     *             If the pool has been or is shut down while waiting
+     * @deprecated Use any of the <code>submit</code> methods, they will not block if all threads are busy
+     */
+    @Deprecated
+    public PooledThread getThread(long timeout, TimeUnit unit) throws InterruptedException {
+        this.checkPlatformMode();
+        this.checkRunning();
+        long start = System.nanoTime();
+        long timeoutNanos = unit.toNanos(timeout);
+        PooledThread t = this.idleThreads.reserve();
+
+        if (t == null) {
+            synchronized (this.threadWaitersMonitor) {
+                this.threadWaiters++;
+                try {
+                    while ((t = this.idleThreads.reserve()) == null) {
+                        this.checkRunning();
+                        if (timeoutNanos == Long.MAX_VALUE) {
+                            this.threadWaitersMonitor.wait();
+                        } else {
+                            long remaining = timeoutNanos - (System.nanoTime() - start);
+                            if (remaining <= 0)
+                                return null;
+                            TimeUnit.NANOSECONDS.timedWait(this.threadWaitersMonitor, remaining);
+                        }
+                    }
+                } finally {
+                    this.threadWaiters--;
+                }
+            }
+        }
+
+        this.threadRequests.incrementAndGet();
+        this.acquireTimes.record(System.nanoTime() - start);
+        return t;
+    }
+
+    /**
+     * Get the next task for the provided thread. <br>
+     * If the task queue is empty the thread is returned to the pool and parked until it either is signalled that a task has been queued or it is reserved
+     * using <code>getThread()</code>. <br>
+     * If there are callers waiting in <code>getThread()</code> they are notified once the thread has been returned to the pool. <br>
+     * A thread that has been idle for the keep-alive time is retired, unless the pool would go below its minimum number of threads. <br>
+     * Once the pool has been shut down the thread terminates as soon as the task queue is empty.
+     * 
+     * @param t
+     *            The thread asking for a task
+     * @return The task, <code>null</code> if the thread has been retired or the pool has been shut down
+     */
+    Runnable nextTask(PooledThread t) {
+        if (t.isReserved())
+            return this.awaitRunnable(t);
+
+        while (true) {
+            if (this.runState == STOP)
+                return this.exitThread();
+
+            Runnable task = this.pollTask();
+            if (task != null)
+                return task;
+            if (this.runState != RUNNING)
+                return this.exitThread();
+
+            IdleThreadStack.Node node = this.idleThreads.push(t);
+            if (this.threadWaiters > 0) {
+                synchronized (this.threadWaitersMonitor) {
+                    this.threadWaitersMonitor.notifyAll();
+                }
+            }
+
+            /*
+             * Check the queue once more as a task may have been queued after the previous poll but before this thread was visible as idle
+             */
+            task = this.pollTask();
+            if (task != null) {
+                if (!this.idleThreads.cancel(node)) {
+                    if (node.state == IdleThreadStack.RESERVED)
+                        t.setReserved();
+                    else
+                        this.idleThreads.signal(); // pass on the signal this thread no longer can serve
+                }
+                return task;
+            }
+
+            // the pool may have been shut down after the previous check but before this thread was visible as idle
+            if (this.runState != RUNNING) {
+                if (this.idleThreads.cancel(node))
+                    return this.exitThread();
+                if (node.state == IdleThreadStack.RESERVED)
+                    return this.awaitRunnable(t);
+                continue;
+            }
+
+            int state = node.await(this.keepAliveNanos);
+            while (state == IdleThreadStack.WAITING) {
+                if (this.tryRetire(node))
+                    return null;
+
+                // still waiting if the pool is at its minimum size
+                state = node.state;
+                if (state == IdleThreadStack.WAITING)
+                    state = node.await(this.keepAliveNanos);
+            }
+
+            if (state == IdleThreadStack.RESERVED)
+                return this.awaitRunnable(t);
+        }
+    }
+
+    /**
+     * Waits for the runnable of a thread reserved using <code>getThread()</code>.
+     * 
+     * @param t
+     *            The reserved thread
+     * @return The runnable, <code>null</code> if the pool was stopped before the runnable was given to the thread
+     */
+    private Runnable awaitRunnable(PooledThread t) {
+        Runnable runnable = t.awaitRunnable();
+        return runnable != null ? runnable : this.exitThread();
+    }
+
+    /**
+     * Removes the calling thread from the thread count as it is about to terminate.
+     * 
+     * @return Always <code>null</code>, i.e. no task
+     */
+    private Runnable exitThread() {
+        this.currentThreadCount.decrementAndGet();
+        return null;
+    }
+
+    /**
+     * Attempts to retire the thread of the provided node after its keep-alive time has expired.
+     * 
+     * @param node
+     *            The node of the idle thread
+     * @return <code>true</code> if the thread shall terminate
+     */
+    private boolean tryRetire(IdleThreadStack.Node node) {
+        int count;
+        do {
+            count = this.currentThreadCount.get();
+            if (count <= this.minThreadCount)
+                return false;
+        } while (!this.currentThreadCount.compareAndSet(count, count - 1));
+
+        if (!this.idleThreads.cancel(node)) {
+            // the thread was signalled or reserved at the last moment
+            this.currentThreadCount.incrementAndGet();
+            return false;
+        }
+
+        /*
+         * A task may have been queued by a submitter that saw this thread as alive but not as idle, keep the thread if possible
+         */
+        if (this.getQueuedTaskCount() > 0 && this.reserveThreadSlot())
+            return false;
+
+        return true;
+    }
+
+    /**
+     * Starts a new thread unless the pool already has its maximum number of threads.
+     */
+    private void tryStartThread() {
+        if (this.reserveThreadSlot())
+            this.newThread(null).start();
+    }
+
+    /**
+     * Increments the thread count unless the pool already has its maximum number of threads.
+     * 
+     * @return <code>true</code> if the count was incremented
+     */
+    private boolean reserveThreadSlot() {
+        int count;
+        do {
+            count = this.currentThreadCount.get();
+            if (count >= this.maxThreadCount)
+                return false;
+        } while (!this.currentThreadCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Starts a new thread regardless of the maximum number of threads, the maximum is raised if necessary.
+     * 
+     * @param runnable
+     *            The runnable to set on the thread, may be <code>null</code>
+     */
+    private void startThread(Runnable runnable) {
+        int count = this.currentThreadCount.incrementAndGet();
+        synchronized (this) {
+            if (count > this.maxThreadCount)
+                this.maxThreadCount = count;
+        }
+
+        PooledThread p = this.newThread(runnable);
+        p.start();
+    }
+
+    /**
+     * Verifies that the pool has not been shut down.
+     * 
+     * @throws RejectedExecutionException
+     *             If the pool has been shut down
+     */
+    private void checkRunning() {
+        if (this.runState != RUNNING)
+            throw new RejectedExecutionException("The pool has been shut down");
+    }
+
+    /**
+     * Advances the run state, the state is never moved backwards.
+     * 
+     * @param state
+     *            The new state
+     */
+    private synchronized void advanceRunState(int state) {
+        if (this.runState < state)
+            this.runState = state;
+    }
+
+    /**
+     * Wakes up all idle threads and callers waiting in <code>getThread()</code> so they can notice that the pool has been shut down.
+     */
+    private void wakeUpThreads() {
+        while (this.idleThreads.signal() != null)
+            ;
+
+        synchronized (this.threadWaitersMonitor) {
+            this.threadWaitersMonitor.notifyAll();
+        }
+        this.threadTerminated(null);
+    }
+
+    /**
+     * If the pool has been stopped using <code>shutdownNow()</code>.
+     * 
+     * @return <code>true</code> if stopped
+     */
+    boolean isStopped() {
+        return this.runState == STOP;
+    }
+
+    /**
+     * Registers a thread that has started executing tasks for the pool.
+     * 
+     * @param t
+     *            The thread
+     */
+    void threadStarted(Thread t) {
+        this.workers.add(t);
+        if (this.runState == STOP)
+            t.interrupt(); // the pool was stopped before the thread was registered
+    }
+
+    /**
+     * Deregisters a thread that is about to terminate. <br>
+     * Callers waiting in <code>awaitTermination</code> are notified if this was the last thread of a pool that has been shut down.
+     * 
+     * @param t
+     *            The thread, <code>null</code> to only check for termination
+     */
+    void threadTerminated(Thread t) {
+        if (t != null)
+            this.workers.remove(t);
+
+        if (this.isTerminated()) {
+            synchronized (this.terminationMonitor) {
+                this.terminationMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Verifies that the pool is in <code>PLATFORM</code> mode.
+     * 
+     * @throws IllegalStateException
+     *             If the pool is in any other mode
+     */
+    private void checkPlatformMode() {
+        if (this.executionMode != ExecutionMode.PLATFORM)
+            throw new IllegalStateException("Pooled threads are not available in " + this.executionMode + " mode");
+    }
+
+    /**
+     * Verifies that the pool is in <code>WORK_STEALING</code> mode.
+     * 
+     * @throws IllegalStateException
+     *             If the pool is in any other mode
+     */
+    private void checkWorkStealingMode() {
+        if (this.executionMode != ExecutionMode.WORK_STEALING)
+            throw new IllegalStateException("Fork/join tasks are not supported in " + this.executionMode + " mode");
+    }
+
+    private PooledThread newThread(Runnable runnable) {
+        PooledThread p = new PooledThread(this, "PooledThread" + this.threadSequence.incrementAndGet());
+        p.setRunnable(runnable);
+        return p;
+    }
+
+    /**
+     * Records the time a task waited for a thread.
+     * 
+     * @param waitNanos
+     *            The time in nanoseconds
+     */
+    void taskStarted(long waitNanos) {
+        this.acquireTimes.record(waitNanos);
+    }
+
+    /**
+     * Records the time it took to run a task.
+     * 
+     * @param runNanos
+     *            The time in nanoseconds
+     */
+    void taskFinished(long runNanos) {
+        this.runTimes.record(runNanos);
+        this.completedTaskCount.incrementAndGet();
+    }
+
+    /**
+     * Counts a failed task. <br>
+     * The failure is logged as a warning unless the task was submitted, in which case the caller gets the exception from the future.
+     * 
+     * @param task
+     *            The task that failed
+     * @param t
+     *            The exception thrown by the task
+     * @param submitted
+     *            If the task was submitted
+     */
+    void taskFailed(Object task, Throwable t, boolean submitted) {
+        this.failedTaskCount.incrementAndGet();
+        Level level = submitted ? Level.FINE : Level.WARNING;
+        if (log.isLoggable(level))
+            log.log(level, "The task [" + task + "] failed", t);
+    }
+
+    /**
+     * Puts a task on the task queue unless the queue is full. <br>
+     * An idle thread is woken up, or a new thread started, to execute the task.
+     * 
+     * @param task
+     *            The task
+     * @return <code>true</code> if the task was queued
+     */
+    boolean offer(Runnable task) {
+        if (this.forkJoinPool != null) {
+            if (this.forkJoinPool.getQueuedSubmissionCount() >= this.queueCapacity)
+                return false;
+            this.forkJoinPool.execute(task);
+            return true;
+        }
+
+        if (!this.queueSlots.tryAcquire())
+            return false;
+        this.enqueue(task);
+        return true;
+    }
+
+    /**
+     * Puts a task on the task queue, waiting for at most the provided time for the queue to have space for the task. <br>
+     * An idle thread is woken up, or a new thread started, to execute the task.
+     * 
+     * @param task
+     *            The task
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of the timeout
+     * @return <code>true</code> if the task was queued
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting
+     */
+    boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        if (this.forkJoinPool != null) {
+            // the fork/join pool has no means to wait for space, poll for it
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!this.offer(task)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                LockSupport.parkNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(1)));
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return true;
+        }
+
+        if (!this.queueSlots.tryAcquire(timeout, unit))
+            return false;
+        this.enqueue(task);
+        return true;
+    }
+
+    /**
+     * Removes the oldest task from the task queue.
+     * 
+     * @return The task, <code>null</code> if the queue is empty or the pool is in <code>WORK_STEALING</code> mode
+     */
+    Runnable pollOldest() {
+        return this.forkJoinPool != null ? null : this.pollTask();
+    }
+
+    /**
+     * Puts a task on the task queue, a free slot in the queue must already have been acquired. <br>
+     * An idle thread is woken up, or a new thread started, to execute the task.
+     * 
+     * @param task
+     *            The task
+     */
+    private void enqueue(Runnable task) {
+        this.taskQueue.offer(task);
+
+        if (this.executionMode == ExecutionMode.VIRTUAL) {
+            if (this.reserveThreadSlot())
+                this.virtualThreadFactory.newThread(new VirtualThreadWorker()).start();
+        } else if (this.idleThreads.signal() == null) {
+            this.tryStartThread();
+        }
+    }
+
+    /**
+     * Takes the first task from the task queue.
+     * 
+     * @return The task, <code>null</code> if the queue is empty
+     */
+    private Runnable pollTask() {
+        Runnable task = this.taskQueue.poll();
+        if (task != null)
+            this.queueSlots.release();
+        return task;
+    }
+
+    /**
+     * The work performed by a virtual thread. <br>
+     * The thread executes queued tasks until the queue is empty, it then terminates.
+     */
+    private class VirtualThreadWorker implements Runnable {
+        public void run() {
+            threadStarted(Thread.currentThread());
+            try {
+                do {
+                    Runnable task;
+                    while (!isStopped() && (task = pollTask()) != null) {
+                        try {
+                            task.run();
+                        } catch (Exception ex) {
+                            taskFailed(task, ex, false);
+                        }
+                    }
+                    currentThreadCount.decrementAndGet();
+
+                    /*
+                     * A task may have been queued by a submitter that saw this thread as alive, keep on running if possible
+                     */
+                } while (getQueuedTaskCount() > 0 && !isStopped() && reserveThreadSlot());
+            } finally {
+                threadTerminated(Thread.currentThread());
+            }
+        }
+    }
+
+    /**
+     * Creates the named threads of the fork/join pool.
+     */
+    private static class WorkStealingThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger threadSequence = new AtomicInteger();
+
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+            };
+            thread.setName("WorkStealingThread" + this.threadSequence.incrementAndGet());
+            return thread;
+        }
+    }
+}
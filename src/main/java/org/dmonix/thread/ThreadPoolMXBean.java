@@ -0,0 +1,143 @@
+package org.dmonix.thread;
+
+/**
+ * The management interface of a <code>ThreadPool</code>. <br>
+ * Register a pool using <code>ThreadPool.registerMBean(String)</code> to monitor it using JMX. <br>
+ * All times are in microseconds.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public interface ThreadPoolMXBean {
+
+    /**
+     * Get the execution mode of the pool.
+     * 
+     * @return The execution mode
+     */
+    public ExecutionMode getExecutionMode();
+
+    /**
+     * If the pool has been shut down.
+     * 
+     * @return <code>true</code> if shut down
+     */
+    public boolean isShutdown();
+
+    /**
+     * If the pool has been shut down and all its threads have terminated.
+     * 
+     * @return <code>true</code> if terminated
+     */
+    public boolean isTerminated();
+
+    /**
+     * Get the current number of threads.
+     * 
+     * @return The current amount of threads
+     */
+    public int getCurrentThreadCount();
+
+    /**
+     * Get the number of threads executing a task.
+     * 
+     * @return The amount of running threads
+     */
+    public int getRunningThreadCount();
+
+    /**
+     * Get the maximum number of threads.
+     * 
+     * @return The maximum amount of threads
+     */
+    public int getMaxThreadCount();
+
+    /**
+     * Get the number of tasks waiting for a free thread.
+     * 
+     * @return The queue depth
+     */
+    public int getQueuedTaskCount();
+
+    /**
+     * Get the maximum number of tasks that can wait for a free thread.
+     * 
+     * @return The capacity of the task queue
+     */
+    public int getQueueCapacity();
+
+    /**
+     * Get the number of times a thread has been requested, i.e. tasks submitted and threads taken using <code>getThread()</code>.
+     * 
+     * @return The number of thread requests
+     */
+    public long getThreadRequests();
+
+    /**
+     * Get the number of tasks that have been executed.
+     * 
+     * @return The number of completed tasks, including the failed ones
+     */
+    public long getCompletedTaskCount();
+
+    /**
+     * Get the number of tasks that have thrown an exception.
+     * 
+     * @return The number of failed tasks
+     */
+    public long getFailedTaskCount();
+
+    /**
+     * Get the number of tasks that have been rejected.
+     * 
+     * @return The number of rejected tasks
+     */
+    public long getRejectedTaskCount();
+
+    /**
+     * Get the mean time from a task was submitted until a thread started executing it.
+     * 
+     * @return The mean time
+     */
+    public double getMeanAcquireTime();
+
+    /**
+     * Get the 99th percentile of the time from a task was submitted until a thread started executing it.
+     * 
+     * @return The 99th percentile
+     */
+    public long getAcquireTime99thPercentile();
+
+    /**
+     * Get the longest time from a task was submitted until a thread started executing it.
+     * 
+     * @return The max time
+     */
+    public long getMaxAcquireTime();
+
+    /**
+     * Get the mean time it took to run a task.
+     * 
+     * @return The mean time
+     */
+    public double getMeanRunTime();
+
+    /**
+     * Get the 99th percentile of the time it took to run a task.
+     * 
+     * @return The 99th percentile
+     */
+    public long getRunTime99thPercentile();
+
+    /**
+     * Get the longest time it took to run a task.
+     * 
+     * @return The max time
+     */
+    public long getMaxRunTime();
+
+    /**
+     * Resets all counters and histograms.
+     */
+    public void resetStatistics();
+}
@@ -0,0 +1,73 @@
+package org.dmonix.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Utility for creating virtual threads. <br>
+ * Virtual threads are accessed using reflection as the SDK is compiled for JVMs that lack them.
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+final class VirtualThreads {
+    private static final Logger log = Logger.getLogger(VirtualThreads.class.getName());
+
+    /** The method <code>Thread.ofVirtual()</code>, <code>null</code> if not supported by the JVM. */
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+        } catch (Exception ex) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * If the JVM supports virtual threads.
+     * 
+     * @return <code>true</code> if virtual threads can be created
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory for virtual threads. <br>
+     * The threads are named with the provided prefix followed by a sequence number.
+     * 
+     * @param namePrefix
+     *            The prefix of the thread names
+     * @return The factory, <code>null</code> if the JVM doesn't support virtual threads
+     */
+    static ThreadFactory newThreadFactory(String namePrefix) {
+        if (!isSupported())
+            return null;
+
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (Exception ex) {
+            log.log(Level.WARNING, "Failed to create a factory for virtual threads", ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.dmonix.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram for recording non-negative values such as latencies in nanoseconds. <br>
+ * The values are counted in log-linear buckets in the same manner as a HDR histogram, each power of two is split into 32 linear sub-buckets giving a
+ * relative precision of about 3% over the whole range of <code>long</code>. Such a histogram holds 1888 counters, about 15 KB. A coarser histogram can be
+ * created for uses where many histograms are kept, e.g. 8 sub-buckets give a precision of about 12% using 488 counters, about 4 KB. <br>
+ * Recording a value is thread safe, lock-free and allocation-free, it is merely a few atomic increments on pre-allocated counters. Reading percentiles scans
+ * the buckets and is meant to be done by monitoring tools, not on the hot path.
+ * <p>
+ * Company: dmonix.org
+ * </p>
+ * 
+ * @author Peter Nerg
+ * @since 3.1
+ */
+public class Histogram {
+    /** The default number of bits of the sub-buckets, i.e. 32 sub-buckets per power of two. */
+    public static final int DEFAULT_PRECISION_BITS = 5;
+
+    private final int subBucketBits;
+    private final int bucketCount;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructs a histogram with 32 sub-buckets per power of two.
+     */
+    public Histogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Constructs a histogram with the provided precision.
+     * 
+     * @param precisionBits
+     *            The number of bits of the sub-buckets, each power of two is split into <code>2^precisionBits</code> sub-buckets (1 - 10)
+     */
+    public Histogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 10)
+            throw new IllegalArgumentException("The precision bits must be within 1-10 [" + precisionBits + "]");
+        this.subBucketBits = precisionBits;
+        this.bucketCount = bucketCount(precisionBits);
+        this.buckets = new AtomicLongArray(this.bucketCount);
+    }
+
+    /**
+     * Records a value. <br>
+     * Negative values are recorded as zero.
+     * 
+     * @param value
+     *            The value to record
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        buckets.incrementAndGet(indexOf(value, subBucketBits));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value))
+                break;
+        }
+    }
+
+    /**
+     * Get the number of recorded values.
+     * 
+     * @return The count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the highest recorded value.
+     * 
+     * @return The max value, zero if no value has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     * 
+     * @return The mean, zero if no value has been recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Get the value at the provided percentile. <br>
+     * The returned value is the highest value of the bucket the percentile falls in, but never higher than the highest recorded value.
+     * 
+     * @param percentile
+     *            The percentile, 0.0 - 100.0
+     * @return The value, zero if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be within 0-100 [" + percentile + "]");
+
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long accumulated = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            accumulated += buckets.get(i);
+            if (accumulated >= target)
+                return Math.min(highestValueOf(i, subBucketBits), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values. <br>
+     * Values recorded concurrently with the reset may or may not be cleared.
+     */
+    public void reset() {
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns a summary of the histogram, e.g. <code>count=10 mean=12.5 p50=12 p99=20 max=20</code>
+     */
+    public String toString() {
+        return "count=" + getCount() + " mean=" + getMean() + " p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99) + " max=" + getMax();
+    }
+
+    /**
+     * Get the number of buckets of a histogram with the provided precision.
+     */
+    static int bucketCount(int subBucketBits) {
+        int subBucketCount = 1 << subBucketBits;
+        return subBucketCount + (63 - subBucketBits) * subBucketCount;
+    }
+
+    /**
+     * Get the index of the bucket for the provided value in a histogram with the default precision.
+     */
+    static int indexOf(long value) {
+        return indexOf(value, DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Get the index of the bucket for the provided value.
+     */
+    static int indexOf(long value, int subBucketBits) {
+        int subBucketCount = 1 << subBucketBits;
+        if (value < subBucketCount)
+            return (int) value;
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - subBucketBits;
+        int subBucket = (int) (value >>> shift) - subBucketCount;
+        return subBucketCount + shift * subBucketCount + subBucket;
+    }
+
+    /**
+     * Get the highest value that is counted in the provided bucket of a histogram with the default precision.
+     */
+    static long highestValueOf(int index) {
+        return highestValueOf(index, DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Get the highest value that is counted in the provided bucket.
+     */
+    static long highestValueOf(int index, int subBucketBits) {
+        int subBucketCount = 1 << subBucketBits;
+        if (index < subBucketCount)
+            return index;
+
+        int shift = (index - subBucketCount) / subBucketCount;
+        long subBucket = (index - subBucketCount) % subBucketCount;
+        long lowest = (subBucketCount + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,160 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>AsyncQueryExecutor</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestAsyncQueryExecutor extends AbstractTestCase {
+
+    private static final RowMapper<Integer> INT_MAPPER = new RowMapper<Integer>() {
+        public Integer mapRow(ResultSet rs, int rowNumber) throws SQLException {
+            return rs.getInt(1);
+        }
+    };
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestAsyncQueryExecutor;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnectionPoolImpl pool;
+    private AsyncQueryExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 2);
+        this.executor = new AsyncQueryExecutor(this.pool, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executor.shutdown();
+        this.pool.close();
+    }
+
+    /**
+     * Test executing independent queries at the same time.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testQuery() throws Exception {
+        Future<List<Integer>> range = this.executor.query("SELECT X FROM SYSTEM_RANGE(?, ?)", INT_MAPPER, 1, 5);
+        Future<List<Integer>> single = this.executor.query("SELECT CAST(? AS INT) + 1", INT_MAPPER, 41);
+        Future<List<Integer>> empty = this.executor.query("SELECT X FROM SYSTEM_RANGE(1, 5) WHERE X > ?", INT_MAPPER, 10L);
+
+        List<Integer> rows = range.get(10, TimeUnit.SECONDS);
+        assertEquals(5, rows.size());
+        assertEquals(1, rows.get(0).intValue());
+        assertEquals(5, rows.get(4).intValue());
+        assertEquals(42, single.get(10, TimeUnit.SECONDS).get(0).intValue());
+        assertTrue(empty.get(10, TimeUnit.SECONDS).isEmpty());
+
+        // all connections have been returned
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+
+    /**
+     * Test binding parameters of the supported types.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testParameters() throws Exception {
+        RowMapper<String> mapper = new RowMapper<String>() {
+            public String mapRow(ResultSet rs, int rowNumber) throws SQLException {
+                return rs.getString(1) + "," + rs.getString(2) + "," + rs.getBoolean(3) + "," + rs.getString(4);
+            }
+        };
+        Future<List<String>> future = this.executor.query("SELECT CAST(? AS VARCHAR), CAST(? AS DOUBLE), CAST(? AS BOOLEAN), CAST(? AS INT)", mapper,
+                "text", 1.5, true, null);
+        assertEquals("text,1.5,true,null", future.get(10, TimeUnit.SECONDS).get(0));
+
+        try {
+            this.executor.query("SELECT CAST(? AS VARCHAR)", INT_MAPPER, new Object()).get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+
+    /**
+     * Test the callback of a completed and a failed query.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCallback() throws Exception {
+        final AtomicReference<Object> outcome = new AtomicReference<Object>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        QueryCallback<List<Integer>> callback = new QueryCallback<List<Integer>>() {
+            public void completed(List<Integer> result) {
+                outcome.set(result);
+                latch.countDown();
+            }
+
+            public void failed(Throwable cause) {
+                outcome.set(cause);
+                latch.countDown();
+            }
+        };
+
+        this.executor.query("SELECT CAST(? AS INT)", INT_MAPPER, callback, 7);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(7, ((List<?>) outcome.get()).get(0));
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        Future<List<Integer>> future = this.executor.query("SELECT 1 / CAST(? AS INT)", INT_MAPPER, new QueryCallback<List<Integer>>() {
+            public void completed(List<Integer> result) {
+            }
+
+            public void failed(Throwable cause) {
+                outcome.set(cause);
+                failed.countDown();
+            }
+        }, 0);
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        assertTrue(outcome.get() instanceof SQLException);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertSame(outcome.get(), ex.getCause());
+        }
+    }
+
+    /**
+     * Test that a failure to end the transaction does not replace the failure of the query.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFailedRollback() throws Exception {
+        Future<List<Integer>> future = this.executor.query("SELECT CAST(? AS INT)", new RowMapper<Integer>() {
+            public Integer mapRow(ResultSet rs, int rowNumber) throws SQLException {
+                // breaks the connection so ending the transaction fails as well
+                rs.getStatement().getConnection().close();
+                throw new SQLException("The mapper failed");
+            }
+        }, 1);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertEquals("The mapper failed", ex.getCause().getMessage());
+        }
+    }
+}
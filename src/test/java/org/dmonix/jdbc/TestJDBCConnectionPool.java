@@ -0,0 +1,553 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.dmonix.jdbc.impl.PooledJDBCConnectionImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>JDBCConnectionPoolImpl</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestJDBCConnectionPool extends AbstractTestCase {
+
+    private static final String URL = "jdbc:h2:mem:TestJDBCConnectionPool;DB_CLOSE_DELAY=-1";
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory(URL, "sa", "");
+    private JDBCConnectionPoolImpl pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = this.createPool(2, 2);
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.close();
+    }
+
+    /**
+     * Creates a pool and waits for the connections of the initial size to be opened.
+     * 
+     * @param initialSize
+     *            The initial size
+     * @param maxSize
+     *            The maximum size
+     * @return The pool
+     * @throws Exception
+     */
+    private JDBCConnectionPoolImpl createPool(int initialSize, int maxSize) throws Exception {
+        JDBCConnectionPoolImpl pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(initialSize, maxSize);
+        for (int i = 0; i < 500 && pool.getIdleCount() < initialSize; i++)
+            sleep(10);
+        assertEquals(initialSize, pool.getIdleCount());
+        return pool;
+    }
+
+    /**
+     * Test that a returned connection is leased again.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGetConnection() throws Exception {
+        JDBCConnection con = this.pool.getConnection();
+        assertEquals(1, this.pool.getIdleCount());
+        con.close();
+        assertEquals(2, this.pool.getIdleCount());
+
+        // the most recently returned connection is leased first
+        assertSame(con, this.pool.getConnection());
+
+        // returning the connection twice must not add it twice to the pool
+        con.close();
+        con.close();
+        assertEquals(2, this.pool.getIdleCount());
+        assertEquals(2, this.pool.getSize());
+    }
+
+    /**
+     * Get the id of the database session of a connection.
+     * 
+     * @param con
+     *            The connection
+     * @return The session id
+     * @throws SQLException
+     */
+    private static int getSessionId(JDBCConnection con) throws SQLException {
+        Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            ResultSet rs = stmt.executeQuery("SELECT SESSION_ID()");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Breaks a connection by having the database abort its session.
+     * 
+     * @param broken
+     *            The connection to break
+     * @param con
+     *            Another connection used to abort the session
+     * @throws SQLException
+     */
+    private static void abortSession(JDBCConnection broken, JDBCConnection con) throws SQLException {
+        int sessionId = getSessionId(broken);
+        Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            stmt.execute("CALL ABORT_SESSION(" + sessionId + ")");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Test that the caller gets a timeout if no connection is returned within the timeout.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGetConnectionTimeout() throws Exception {
+        this.pool.getConnection();
+        this.pool.getConnection();
+        try {
+            this.pool.getConnection(50, TimeUnit.MILLISECONDS);
+        } catch (SQLTimeoutException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+        assertEquals(0, this.pool.getWaiterCount());
+    }
+
+    /**
+     * Test that waiting callers are handed connections in the order they arrived.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFairHandOff() throws Exception {
+        JDBCConnection con1 = this.pool.getConnection();
+        JDBCConnection con2 = this.pool.getConnection();
+
+        final List<String> order = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 2; i++) {
+            final String name = "waiter" + i;
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        JDBCConnection con = pool.getConnection(5, TimeUnit.SECONDS);
+                        synchronized (order) {
+                            order.add(name);
+                        }
+                        con.close();
+                    } catch (SQLException ex) {
+                        logger.log(java.util.logging.Level.WARNING, "Failed to get a connection", ex);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+
+            // make sure the waiter is in line before starting the next one
+            while (this.pool.getWaiterCount() <= i)
+                sleep(5);
+        }
+
+        con1.close();
+        for (Thread t : threads)
+            t.join(5000);
+        con2.close();
+
+        assertEquals(2, order.size());
+        assertEquals("waiter0", order.get(0));
+        assertEquals("waiter1", order.get(1));
+        assertEquals(2, this.pool.getIdleCount());
+    }
+
+    /**
+     * Test that a waiting caller is released with an exception if the pool is closed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCloseReleasesWaiters() throws Exception {
+        this.pool.getConnection();
+        this.pool.getConnection();
+
+        final AtomicReference<SQLException> failure = new AtomicReference<SQLException>();
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    pool.getConnection();
+                } catch (SQLException ex) {
+                    failure.set(ex);
+                }
+            }
+        };
+        t.start();
+        while (this.pool.getWaiterCount() == 0)
+            sleep(5);
+
+        this.pool.close();
+        t.join(5000);
+        assertNotNull(failure.get());
+    }
+
+    /**
+     * Test that the pool opens connections on demand up to its maximum size.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGrowToMaxSize() throws Exception {
+        JDBCConnectionPoolImpl pool = this.createPool(1, 3);
+        try {
+            for (int i = 0; i < 3; i++)
+                pool.getConnection(1, TimeUnit.SECONDS);
+            assertEquals(3, pool.getSize());
+
+            try {
+                pool.getConnection(50, TimeUnit.MILLISECONDS);
+            } catch (SQLTimeoutException ex) {
+                setExceptionCaught();
+            }
+            assertExceptionCaught();
+            assertEquals(3, pool.getSize());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that connections above the initial size are closed once they have been idle for the idle timeout.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIdleShrink() throws Exception {
+        JDBCConnectionPoolImpl pool = this.createPool(1, 3);
+        try {
+            pool.setIdleTimeout(50, TimeUnit.MILLISECONDS);
+            List<JDBCConnection> connections = new ArrayList<JDBCConnection>();
+            for (int i = 0; i < 3; i++)
+                connections.add(pool.getConnection());
+            for (JDBCConnection con : connections)
+                con.close();
+            assertEquals(3, pool.getIdleCount());
+
+            for (int i = 0; i < 200 && pool.getSize() > 1; i++)
+                sleep(10);
+            assertEquals(1, pool.getSize());
+            assertEquals(1, pool.getIdleCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that the connections of the initial size are opened in the background.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPrewarm() throws Exception {
+        JDBCConnectionPoolImpl pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(4, 4);
+        try {
+            assertEquals(4, pool.getSize());
+
+            // all connections are leased, including those still being opened
+            List<JDBCConnection> connections = new ArrayList<JDBCConnection>();
+            for (int i = 0; i < 4; i++)
+                connections.add(pool.getConnection(5, TimeUnit.SECONDS));
+            assertEquals(4, pool.getSize());
+            for (JDBCConnection con : connections)
+                con.close();
+            assertEquals(4, pool.getIdleCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that concurrent callers share the connections without losing any.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int threadCount = 8;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 500; j++) {
+                            pool.getConnection(5, TimeUnit.SECONDS).close();
+                        }
+                    } catch (Exception ex) {
+                        failure.set(ex);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(2, this.pool.getIdleCount());
+        assertEquals(0, this.pool.getWaiterCount());
+    }
+
+    /**
+     * Test that a broken connection is discarded and replaced when it is leased.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testValidateOnBorrow() throws Exception {
+        this.pool.setValidationInterval(0, TimeUnit.MILLISECONDS);
+        JDBCConnection broken = this.pool.getConnection();
+        JDBCConnection con = this.pool.getConnection();
+        abortSession(broken, con);
+        con.close();
+        broken.close();
+
+        // the broken connection is the first idle connection but must not be leased
+        JDBCConnection leased = this.pool.getConnection();
+        assertNotSame(broken, leased);
+        getSessionId(leased);
+
+        // the pool is refilled to its minimum size
+        for (int i = 0; i < 500 && this.pool.getIdleCount() < 1; i++)
+            sleep(10);
+        assertEquals(1, this.pool.getIdleCount());
+        assertEquals(2, this.pool.getSize());
+        leased.close();
+    }
+
+    /**
+     * Test that connections are validated using the validation query.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testValidationQuery() throws Exception {
+        this.pool.setValidationInterval(0, TimeUnit.MILLISECONDS);
+        this.pool.setValidationQuery("SELECT 1");
+        JDBCConnection con = this.pool.getConnection();
+        con.close();
+        assertSame(con, this.pool.getConnection());
+        con.close();
+        assertEquals(2, this.pool.getSize());
+    }
+
+    /**
+     * Test that broken idle connections are evicted in the background.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testEvictBrokenConnection() throws Exception {
+        JDBCConnectionPoolImpl pool = this.createPool(1, 2);
+        try {
+            pool.setValidationInterval(50, TimeUnit.MILLISECONDS);
+            JDBCConnection broken = pool.getConnection();
+            JDBCConnection con = pool.getConnection();
+            abortSession(broken, con);
+            broken.close();
+            con.close();
+            assertEquals(2, pool.getSize());
+
+            for (int i = 0; i < 500 && pool.getSize() > 1; i++)
+                sleep(10);
+            assertEquals(1, pool.getSize());
+            assertSame(con, pool.getConnection());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that a connection leased longer than the leak detection threshold is reported with the stack trace of the caller.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLeakDetection() throws Exception {
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Handler handler = new Handler() {
+            public synchronized void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(JDBCConnectionPoolImpl.class.getName());
+        logger.addHandler(handler);
+        try {
+            this.pool.setLeakTraceSampleRate(1);
+            this.pool.setLeakDetectionThreshold(50, TimeUnit.MILLISECONDS);
+            JDBCConnection con = this.pool.getConnection();
+            assertEquals(1, this.pool.getLeasedCount());
+
+            for (int i = 0; i < 500 && this.pool.getLeakCount() == 0; i++)
+                sleep(10);
+            assertEquals(1, this.pool.getLeakCount());
+            synchronized (handler) {
+                Throwable trace = records.get(0).getThrown();
+                assertNotNull(trace);
+                boolean found = false;
+                for (StackTraceElement element : trace.getStackTrace())
+                    found |= element.getMethodName().equals("testLeakDetection");
+                assertTrue(found);
+            }
+
+            // a leak is only reported once per lease and the connection is not reclaimed
+            sleep(150);
+            assertEquals(1, this.pool.getLeakCount());
+            con.close();
+            assertEquals(0, this.pool.getLeasedCount());
+            assertEquals(2, this.pool.getSize());
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+
+    /**
+     * Test that an expired lease cannot be expired again once the connection has been leased anew.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExpireStaleLease() throws Exception {
+        JDBCConnectionPoolImpl pool = this.createPool(1, 1);
+        try {
+            PooledJDBCConnectionImpl con = (PooledJDBCConnectionImpl) pool.getConnection();
+            long lease = con.getLeaseId();
+            con.close();
+            assertFalse(con.inUse());
+            assertFalse(con.expireLease(lease));
+
+            assertSame(con, pool.getConnection());
+            assertTrue(lease != con.getLeaseId());
+            long lastUse = con.getLastUse();
+            assertFalse(con.expireLease(lease));
+            assertTrue(con.inUse());
+            assertEquals(lastUse, con.getLastUse());
+
+            assertTrue(con.expireLease(con.getLeaseId()));
+            assertFalse(con.inUse());
+            assertEquals(-1, con.getLastUse());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that a connection leased longer than the lease timeout is reclaimed and its capacity given to a waiting caller.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReclaimLeakedConnection() throws Exception {
+        JDBCConnectionPoolImpl pool = this.createPool(1, 1);
+        try {
+            pool.setLeaseTimeout(50, TimeUnit.MILLISECONDS);
+            JDBCConnection leaked = pool.getConnection();
+
+            JDBCConnection con = pool.getConnection(5, TimeUnit.SECONDS);
+            assertNotSame(leaked, con);
+            assertEquals(1, pool.getReclaimedCount());
+            assertEquals(1, pool.getSize());
+            assertEquals(1, pool.getLeasedCount());
+            try {
+                leaked.commit();
+                fail("Expected an SQLException");
+            } catch (SQLException ex) {
+                // expected, the connection has been closed
+            }
+
+            // returning the reclaimed connection has no effect
+            leaked.close();
+            assertEquals(1, pool.getSize());
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(1, pool.getLeasedCount());
+            con.close();
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(0, pool.getLeasedCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Test that a caller waiting for a connection opened in the background gets the exception if the connection fails to open.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBackgroundOpenFailure() throws Exception {
+        final AtomicBoolean down = new AtomicBoolean(false);
+        JDBCConnectionFactory factory = new GenericJDBCConnectionFactory(URL, "sa", "") {
+            public JDBCConnection getConnection() throws SQLException {
+                if (down.get())
+                    throw new SQLException("The database is down");
+                return super.getConnection();
+            }
+        };
+        final JDBCConnectionPoolImpl pool = new JDBCConnectionPoolImpl(factory, 1, 1);
+        try {
+            pool.getConnection();
+            down.set(true);
+
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread waiter = new Thread() {
+                public void run() {
+                    try {
+                        pool.getConnection();
+                    } catch (Throwable ex) {
+                        failure.set(ex);
+                    }
+                }
+            };
+            waiter.start();
+            for (int i = 0; i < 500 && pool.getWaiterCount() == 0; i++)
+                sleep(10);
+
+            // the leaked connection is reclaimed and the replacement fails to open
+            pool.setLeaseTimeout(50, TimeUnit.MILLISECONDS);
+            waiter.join(5000);
+            assertFalse(waiter.isAlive());
+            assertTrue(failure.get() instanceof SQLException);
+            assertEquals(0, pool.getSize());
+        } finally {
+            pool.close();
+        }
+    }
+}
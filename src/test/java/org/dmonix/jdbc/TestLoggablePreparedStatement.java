@@ -0,0 +1,246 @@
+package org.dmonix.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.dmonix.jdbc.impl.LoggablePreparedStatementImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>LoggablePreparedStatementImpl</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestLoggablePreparedStatement extends AbstractTestCase {
+
+    private static final Logger logger = Logger.getLogger(LoggablePreparedStatementImpl.class.getName());
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestLoggablePreparedStatement;DB_CLOSE_DELAY=-1", "sa",
+            "");
+    private JDBCConnectionPoolImpl pool;
+    private JDBCConnection con;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 1);
+        this.pool.setStatementCacheSize(4);
+        this.con = this.pool.getConnection();
+        this.update("CREATE TABLE ITEM (ID INT PRIMARY KEY, NAME VARCHAR(32))");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        logger.setLevel(null);
+        this.update("DROP TABLE ITEM");
+        this.con.close();
+        this.pool.close();
+    }
+
+    /**
+     * Executes an update statement.
+     * 
+     * @param sql
+     *            The SQL
+     * @throws SQLException
+     */
+    private void update(String sql) throws SQLException {
+        Statement stmt = this.con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            stmt.executeUpdate(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Counts the rows of the test table.
+     * 
+     * @return The number of rows
+     * @throws SQLException
+     */
+    private int countRows() throws SQLException {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT COUNT(*) FROM ITEM");
+        try {
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Adds a row to the batch of a statement inserting into the test table.
+     * 
+     * @param stmt
+     *            The statement
+     * @param id
+     *            The id of the row
+     * @throws SQLException
+     */
+    private static void addRow(LoggablePreparedStatement stmt, int id) throws SQLException {
+        stmt.setInt(1, id);
+        stmt.setString(2, "item" + id);
+        stmt.addBatch();
+    }
+
+    /**
+     * Test that the bind parameter values are shown in the string representation if FINE logging is enabled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testToString() throws Exception {
+        logger.setLevel(Level.FINE);
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT ID FROM ITEM WHERE ID = ? AND NAME <> '?' AND NAME = ?");
+        assertEquals("SELECT ID FROM ITEM WHERE ID = ? AND NAME <> '?' AND NAME = ?", stmt.toString());
+
+        stmt.setLong(1, 42);
+        stmt.setString(2, "item");
+        assertEquals("SELECT ID FROM ITEM WHERE ID = 42 AND NAME <> '?' AND NAME = 'item'", stmt.toString());
+
+        // a parameter may be bound again
+        stmt.setInt(1, 7);
+        assertEquals("SELECT ID FROM ITEM WHERE ID = 7 AND NAME <> '?' AND NAME = 'item'", stmt.toString());
+
+        // the values are forgotten once the statement is executed
+        stmt.executeQuery().close();
+        assertEquals("SELECT ID FROM ITEM WHERE ID = ? AND NAME <> '?' AND NAME = ?", stmt.toString());
+        stmt.close();
+    }
+
+    /**
+     * Test that the bind parameter values are not captured if FINE logging is disabled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testToStringWithoutCapture() throws Exception {
+        logger.setLevel(Level.INFO);
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT ID FROM ITEM WHERE ID = ?");
+        stmt.setInt(1, 42);
+        assertEquals("SELECT ID FROM ITEM WHERE ID = ?", stmt.toString());
+        stmt.executeQuery().close();
+        stmt.close();
+    }
+
+    /**
+     * Test binding parameters of all types.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testTypedParameters() throws Exception {
+        logger.setLevel(Level.FINE);
+        this.update("CREATE TABLE TYPED (D DOUBLE, N DECIMAL(10,2), T TIMESTAMP, B VARBINARY(16), BL BLOB, CL CLOB, S VARCHAR(8))");
+        try {
+            Timestamp timestamp = Timestamp.valueOf("2014-05-01 12:30:00.5");
+            byte[] bytes = new byte[] { 1, 2, 3 };
+            LoggablePreparedStatement stmt = this.con.prepareStatement("INSERT INTO TYPED VALUES (?, ?, ?, ?, ?, ?, ?)");
+            stmt.setDouble(1, 1.5);
+            stmt.setBigDecimal(2, new BigDecimal("1E+3"));
+            stmt.setTimestamp(3, timestamp);
+            stmt.setBytes(4, bytes);
+            stmt.setBinaryStream(5, new ByteArrayInputStream(new byte[100]), 100);
+            stmt.setCharacterStream(6, new StringReader("clob"), 4);
+            stmt.setNull(7, Types.VARCHAR);
+            assertEquals("INSERT INTO TYPED VALUES (1.5, 1000, '2014-05-01 12:30:00.5', <3 bytes>, <binary stream of 100>, <character stream of 4>, NULL)",
+                    stmt.toString());
+            stmt.execute();
+            stmt.close();
+
+            stmt = this.con.prepareStatement("SELECT D, N, T, B, BL, CL, S FROM TYPED");
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(1.5, rs.getDouble(1), 0);
+            assertEquals(0, new BigDecimal(1000).compareTo(rs.getBigDecimal(2)));
+            assertEquals(timestamp, rs.getTimestamp(3));
+            assertTrue(Arrays.equals(bytes, rs.getBytes(4)));
+            assertEquals(100, rs.getBlob(5).length());
+            assertEquals("clob", rs.getString(6));
+            assertNull(rs.getString(7));
+            rs.close();
+            stmt.close();
+        } finally {
+            this.update("DROP TABLE TYPED");
+        }
+    }
+
+    /**
+     * Test that the batch is sent in chunks of the batch size.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBatch() throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("INSERT INTO ITEM (ID, NAME) VALUES (?, ?)");
+        stmt.setBatchSize(3);
+        for (int i = 0; i < 7; i++)
+            addRow(stmt, i);
+
+        // two full batches have been sent
+        assertEquals(6, this.countRows());
+
+        int[] counts = stmt.executeBatch();
+        assertEquals(7, counts.length);
+        for (int count : counts)
+            assertEquals(1, count);
+        assertEquals(7, this.countRows());
+
+        // the update counts are only returned once
+        assertEquals(0, stmt.executeBatch().length);
+        stmt.close();
+    }
+
+    /**
+     * Test that a failing batch is discarded.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBatchFailure() throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("INSERT INTO ITEM (ID, NAME) VALUES (?, ?)");
+        addRow(stmt, 1);
+        addRow(stmt, 1);
+        try {
+            stmt.executeBatch();
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+
+        addRow(stmt, 2);
+        assertEquals(1, stmt.executeBatch().length);
+        stmt.close();
+    }
+
+    /**
+     * Test that rows not sent are discarded when the statement is closed, also when the statement is cached.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCloseDiscardsBatch() throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("INSERT INTO ITEM (ID, NAME) VALUES (?, ?)");
+        addRow(stmt, 1);
+        stmt.close();
+
+        stmt = this.con.prepareStatement("INSERT INTO ITEM (ID, NAME) VALUES (?, ?)");
+        addRow(stmt, 2);
+        assertEquals(1, stmt.executeBatch().length);
+        stmt.close();
+        assertEquals(1, this.countRows());
+    }
+}
@@ -0,0 +1,212 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>QueryResultCache</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestQueryResultCache extends AbstractTestCase {
+
+    private static final String[] COUNTRY = new String[] { "country" };
+    private static final String SELECT_NAME = "SELECT NAME FROM COUNTRY WHERE CODE = ?";
+
+    private static final RowMapper<String> STRING_MAPPER = new RowMapper<String>() {
+        public String mapRow(ResultSet rs, int rowNumber) throws SQLException {
+            return rs.getString(1);
+        }
+    };
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestQueryResultCache;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnectionPoolImpl pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 1);
+        this.update("CREATE TABLE COUNTRY (CODE VARCHAR(2) PRIMARY KEY, NAME VARCHAR(32))");
+        this.update("INSERT INTO COUNTRY VALUES ('SE', 'Sweden'), ('NO', 'Norway'), ('DK', 'Denmark')");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.update("DROP TABLE COUNTRY");
+        this.pool.close();
+    }
+
+    /**
+     * Executes an update statement and commits it.
+     * 
+     * @param sql
+     *            The SQL
+     * @throws SQLException
+     */
+    private void update(String sql) throws SQLException {
+        JDBCConnection con = this.pool.getConnection();
+        try {
+            Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                stmt.executeUpdate(sql);
+            } finally {
+                stmt.close();
+            }
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    /**
+     * Creates a new instance of the same mapper class on each call, as a caller creating its mapper in place does.
+     * 
+     * @return The mapper
+     */
+    private static RowMapper<String> newMapper() {
+        return new RowMapper<String>() {
+            public String mapRow(ResultSet rs, int rowNumber) throws SQLException {
+                return rs.getString(1);
+            }
+        };
+    }
+
+    private String name(QueryResultCache cache, String code) throws SQLException {
+        List<String> rows = cache.query(this.pool, COUNTRY, SELECT_NAME, STRING_MAPPER, code);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Test that results are cached per parameter and invalidated by table.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCacheAndInvalidate() throws Exception {
+        QueryResultCache cache = new QueryResultCache();
+        assertEquals("Sweden", this.name(cache, "SE"));
+        assertEquals("Sweden", this.name(cache, "SE"));
+        assertEquals("Norway", this.name(cache, "NO"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getSize());
+        assertEquals(1.0 / 3, cache.getHitRatio(), 0.0001);
+
+        // the cached result is used until the table is invalidated
+        this.update("UPDATE COUNTRY SET NAME = 'Sverige' WHERE CODE = 'SE'");
+        assertEquals("Sweden", this.name(cache, "SE"));
+        cache.invalidate("COUNTRY");
+        assertEquals(0, cache.getSize());
+        assertEquals("Sverige", this.name(cache, "SE"));
+
+        // a table not read by the query does not invalidate it
+        cache.invalidate("CITY");
+        assertEquals(1, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+
+    /**
+     * Test that a new instance of the same mapper class finds the cached result and that changing a parameter after the query does not change the key.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testKey() throws Exception {
+        QueryResultCache cache = new QueryResultCache();
+        String sql = "SELECT NAME FROM COUNTRY WHERE CODE = CAST(? AS VARCHAR(2)) AND ? > TIMESTAMP '2000-01-01 00:00:00'";
+        Timestamp time = Timestamp.valueOf("2014-05-01 12:00:00.5");
+        for (int i = 0; i < 2; i++) {
+            List<String> rows = cache.query(this.pool, COUNTRY, sql, newMapper(), "SE", time);
+            assertEquals("Sweden", rows.get(0));
+        }
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // the cached key keeps the value of the parameter at the time of the query
+        time.setNanos(0);
+        cache.query(this.pool, COUNTRY, sql, newMapper(), "SE", time);
+        assertEquals(2, cache.getMissCount());
+        time.setNanos(500000000);
+        cache.query(this.pool, COUNTRY, sql, newMapper(), "SE", time);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getSize());
+    }
+
+    /**
+     * Test that the least recently used result is evicted when the cache is full.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        QueryResultCache cache = new QueryResultCache(2, 1, TimeUnit.HOURS);
+        this.name(cache, "SE");
+        this.name(cache, "NO");
+        this.name(cache, "SE");
+        this.name(cache, "DK");
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.resetStatistics();
+        this.name(cache, "SE");
+        this.name(cache, "DK");
+        assertEquals(2, cache.getHitCount());
+        this.name(cache, "NO");
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Test that an expired result is fetched again.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testTimeToLive() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 50, TimeUnit.MILLISECONDS);
+        assertEquals("Sweden", this.name(cache, "SE"));
+        this.update("UPDATE COUNTRY SET NAME = 'Sverige' WHERE CODE = 'SE'");
+        sleep(100);
+        assertEquals("Sverige", this.name(cache, "SE"));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * Test that the cached result can not be modified and that a failed query is not cached.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testResult() throws Exception {
+        QueryResultCache cache = new QueryResultCache();
+        List<String> rows = cache.query(this.pool, COUNTRY, "SELECT NAME FROM COUNTRY ORDER BY CODE", STRING_MAPPER);
+        assertEquals(3, rows.size());
+        try {
+            rows.clear();
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+
+        try {
+            cache.query(this.pool, COUNTRY, "SELECT 1 / (LENGTH(NAME) - 6) FROM COUNTRY", STRING_MAPPER);
+            fail("Expected an SQLException");
+        } catch (SQLException ex) {
+            // expected
+        }
+        assertEquals(1, cache.getSize());
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+}
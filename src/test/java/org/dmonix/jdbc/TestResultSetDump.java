@@ -0,0 +1,224 @@
+package org.dmonix.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the classes <code>ResultSetDumpWriter</code> and <code>ResultSetDumpReader</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestResultSetDump extends AbstractTestCase {
+
+    private static final String SELECT_ALL = "SELECT ID, BIG, D, N, B, T, BIN, S FROM DUMP ORDER BY ID";
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestResultSetDump;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnection con;
+    private Statement stmt;
+
+    @Before
+    public void setUp() throws Exception {
+        this.con = this.factory.getConnection();
+        this.stmt = this.con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        String columns = " (ID INT, BIG BIGINT, D DOUBLE, N DECIMAL(12,3), B BOOLEAN, T TIMESTAMP, BIN VARBINARY(8), S VARCHAR(16))";
+        this.stmt.executeUpdate("CREATE TABLE DUMP" + columns);
+        this.stmt.executeUpdate("CREATE TABLE RESTORED" + columns);
+        this.stmt.executeUpdate("INSERT INTO DUMP SELECT X, X * 10000000000, X / 4.0, X / 8.0, MOD(X, 2) = 0, "
+                + "DATEADD(SECOND, X, TIMESTAMP '2014-05-01 12:00:00.123456'), CAST(X AS VARBINARY(8)), 'status' || MOD(X, 5) FROM SYSTEM_RANGE(1, 2500)");
+        this.stmt.executeUpdate("INSERT INTO DUMP VALUES (-7, NULL, NULL, NULL, NULL, NULL, NULL, NULL)");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.stmt.executeUpdate("DROP TABLE DUMP");
+        this.stmt.executeUpdate("DROP TABLE RESTORED");
+        this.stmt.close();
+        this.con.close();
+    }
+
+    /**
+     * Dumps the result of a query.
+     * 
+     * @param sql
+     *            The query
+     * @param compress
+     *            If to compress the dump
+     * @return The dump
+     * @throws Exception
+     */
+    private byte[] dump(String sql, boolean compress) throws Exception {
+        ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+        ResultSetDumpWriter writer = new ResultSetDumpWriter(ostream, compress);
+        writer.setBlockSize(1000);
+        ResultSet rs = this.stmt.executeQuery(sql);
+        try {
+            writer.write(rs);
+        } finally {
+            rs.close();
+        }
+        writer.close();
+        return ostream.toByteArray();
+    }
+
+    /**
+     * Asserts that a dump holds the same rows as the test table.
+     * 
+     * @param dump
+     *            The dump
+     * @throws Exception
+     */
+    private void assertDump(byte[] dump) throws Exception {
+        ResultSetDumpReader reader = new ResultSetDumpReader(new ByteArrayInputStream(dump));
+        assertEquals(8, reader.getColumnCount());
+        assertEquals("ID", reader.getColumnLabel(1));
+        assertEquals(Types.DECIMAL, reader.getColumnType(4));
+
+        ResultSet rs = this.stmt.executeQuery(SELECT_ALL);
+        int rows = 0;
+        while (rs.next()) {
+            assertTrue(reader.next());
+            assertEquals(rs.getInt(1), reader.getInt(1));
+            assertEquals(rs.getLong(2), reader.getLong(2));
+            assertEquals(rs.wasNull(), reader.wasNull());
+            assertEquals(rs.getDouble(3), reader.getDouble(3), 0);
+            assertEquals(rs.getBigDecimal(4), reader.getBigDecimal(4));
+            assertEquals(rs.getBoolean(5), reader.getBoolean(5));
+            assertEquals(rs.getTimestamp(6), reader.getTimestamp(6));
+            assertTrue(Arrays.equals(rs.getBytes(7), reader.getBytes(7)));
+            assertEquals(rs.getString(8), reader.getString(8));
+            assertEquals(rs.wasNull(), reader.wasNull());
+            rows++;
+        }
+        rs.close();
+        assertFalse(reader.next());
+        assertFalse(reader.next());
+        reader.close();
+        assertEquals(2501, rows);
+    }
+
+    /**
+     * Test dumping and reading an uncompressed dump.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDump() throws Exception {
+        this.assertDump(this.dump(SELECT_ALL, false));
+    }
+
+    /**
+     * Test dumping and reading a compressed dump.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCompressedDump() throws Exception {
+        byte[] dump = this.dump(SELECT_ALL, true);
+        assertTrue(dump.length < this.dump(SELECT_ALL, false).length);
+        this.assertDump(dump);
+    }
+
+    /**
+     * Test dumping the result of a prepared statement.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDumpStatement() throws Exception {
+        ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+        ResultSetDumpWriter writer = new ResultSetDumpWriter(ostream, true);
+        writer.setFetchSize(100);
+        LoggablePreparedStatement pstmt = this.con.prepareStatement(SELECT_ALL);
+        try {
+            assertEquals(2501, writer.write(pstmt));
+            assertEquals(100, pstmt.getFetchSize());
+        } finally {
+            pstmt.close();
+        }
+        writer.close();
+        this.assertDump(ostream.toByteArray());
+    }
+
+    /**
+     * Test that a value not fitting in an int is not truncated.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIntOverflow() throws Exception {
+        ResultSetDumpReader reader = new ResultSetDumpReader(new ByteArrayInputStream(this.dump("SELECT BIG FROM DUMP WHERE ID = 1", false)));
+        assertTrue(reader.next());
+        assertEquals(10000000000L, reader.getLong(1));
+        try {
+            reader.getInt(1);
+            fail("Expected an ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+        reader.close();
+    }
+
+    /**
+     * Test restoring a dump into a table.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRestore() throws Exception {
+        ResultSetDumpReader reader = new ResultSetDumpReader(new ByteArrayInputStream(this.dump(SELECT_ALL, true)));
+        assertEquals(2501, reader.restore(this.con, "RESTORED"));
+        reader.close();
+
+        ResultSet rs = this.stmt.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM DUMP EXCEPT SELECT * FROM RESTORED)");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+
+        rs = this.stmt.executeQuery("SELECT COUNT(*) FROM RESTORED");
+        rs.next();
+        assertEquals(2501, rs.getInt(1));
+        rs.close();
+    }
+
+    /**
+     * Test a string column with more distinct values than fit in the dictionary.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDictionaryOverflow() throws Exception {
+        int count = DumpColumn.MAX_DICTIONARY_SIZE + 5000;
+        ResultSetDumpReader reader = new ResultSetDumpReader(new ByteArrayInputStream(this.dump("SELECT 'value' || X FROM SYSTEM_RANGE(1, " + count + ")",
+                true)));
+        for (int i = 1; i <= count; i++) {
+            assertTrue(reader.next());
+            assertEquals("value" + i, reader.getString(1));
+        }
+        assertFalse(reader.next());
+    }
+
+    /**
+     * Test that a stream that is not a dump is rejected.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testNotADump() throws Exception {
+        try {
+            new ResultSetDumpReader(new ByteArrayInputStream("ID\tNAME\n".getBytes()));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+}
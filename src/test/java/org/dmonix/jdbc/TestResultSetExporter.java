@@ -0,0 +1,135 @@
+package org.dmonix.jdbc;
+
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>ResultSetExporter</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestResultSetExporter extends AbstractTestCase {
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestResultSetExporter;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnection con;
+    private Statement stmt;
+
+    @Before
+    public void setUp() throws Exception {
+        this.con = this.factory.getConnection();
+        this.stmt = this.con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        this.stmt.executeUpdate("CREATE TABLE EXPORT (ID INT, BIG BIGINT, D DOUBLE, N DECIMAL(10,2), B BOOLEAN, S VARCHAR(32))");
+        this.stmt.executeUpdate("INSERT INTO EXPORT VALUES (1, 10000000000, 1.5, 2.50, TRUE, 'plain')");
+        this.stmt.executeUpdate("INSERT INTO EXPORT VALUES (2, NULL, NULL, NULL, NULL, 'a,\"b\"' || CHAR(9) || 'c' || CHAR(10) || 'd')");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.stmt.executeUpdate("DROP TABLE EXPORT");
+        this.stmt.close();
+        this.con.close();
+    }
+
+    /**
+     * Exports the test table.
+     * 
+     * @param exporter
+     *            The exporter
+     * @return The exported text
+     * @throws Exception
+     */
+    private String export(ResultSetExporter exporter) throws Exception {
+        StringWriter writer = new StringWriter();
+        ResultSet rs = this.stmt.executeQuery("SELECT ID, BIG, D, N, B, S FROM EXPORT ORDER BY ID");
+        try {
+            assertEquals(2, exporter.export(rs, writer));
+        } finally {
+            rs.close();
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Test exporting tab separated values.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testTSV() throws Exception {
+        ResultSetExporter exporter = new ResultSetExporter();
+        assertEquals("ID\tBIG\tD\tN\tB\tS\n1\t10000000000\t1.5\t2.50\ttrue\tplain\n2\t\t\t\t\ta,\"b\"\\tc\\nd\n", this.export(exporter));
+        assertEquals(2, exporter.getRowCount());
+        assertTrue(exporter.getRowsPerSecond() > 0);
+    }
+
+    /**
+     * Test exporting comma separated values.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCSV() throws Exception {
+        ResultSetExporter exporter = new ResultSetExporter(ResultSetExporter.Format.CSV);
+        exporter.setHeader(false);
+        assertEquals("1,10000000000,1.5,2.50,true,plain\n2,,,,,\"a,\"\"b\"\"\tc\nd\"\n", this.export(exporter));
+    }
+
+    /**
+     * Test that rows larger than the buffer are exported.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSmallBuffer() throws Exception {
+        ResultSetExporter exporter = new ResultSetExporter();
+        exporter.setBufferSize(4);
+        exporter.setFetchSize(1);
+        exporter.setProgressInterval(1);
+        assertTrue(this.export(exporter).endsWith("a,\"b\"\\tc\\nd\n"));
+    }
+
+    /**
+     * Test exporting the result of a prepared statement.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExportStatement() throws Exception {
+        ResultSetExporter exporter = new ResultSetExporter(ResultSetExporter.Format.CSV);
+        exporter.setHeader(false);
+        exporter.setFetchSize(1);
+        LoggablePreparedStatement pstmt = this.con.prepareStatement("SELECT ID, S FROM EXPORT WHERE ID = ?");
+        try {
+            pstmt.setInt(1, 1);
+            StringWriter writer = new StringWriter();
+            assertEquals(1, exporter.export(pstmt, writer));
+            assertEquals("1,plain\n", writer.toString());
+            assertEquals(1, pstmt.getFetchSize());
+        } finally {
+            pstmt.close();
+        }
+    }
+
+    /**
+     * Test that the export stops at a failure.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testClosedResultSet() throws Exception {
+        ResultSet rs = this.stmt.executeQuery("SELECT ID FROM EXPORT");
+        rs.close();
+        try {
+            new ResultSetExporter().export(rs, new StringWriter());
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.RoutingJDBCConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>RoutingJDBCConnectionPool</code> using in-memory H2 databases.
+ * 
+ * @author Peter Nerg
+ */
+public class TestRoutingJDBCConnectionPool extends AbstractTestCase {
+
+    private RoutingJDBCConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        JDBCConnectionFactory primary = factory("PRIMARY");
+        JDBCConnectionFactory[] replicas = new JDBCConnectionFactory[] { factory("REPLICA0"), factory("REPLICA1") };
+        this.pool = new RoutingJDBCConnectionPool(primary, replicas, 1, 2);
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.close();
+    }
+
+    private static JDBCConnectionFactory factory(String name) {
+        return new GenericJDBCConnectionFactory("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    /**
+     * Get the name of the database of a connection.
+     * 
+     * @param con
+     *            The connection
+     * @return The name
+     * @throws Exception
+     */
+    private static String database(JDBCConnection con) throws Exception {
+        LoggablePreparedStatement stmt = con.prepareStatement("SELECT DATABASE()");
+        try {
+            ResultSet rs = stmt.executeQuery();
+            rs.next();
+            return rs.getString(1);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Get a read-only connection, read its database name and return it.
+     * 
+     * @return The name of the database
+     * @throws Exception
+     */
+    private String readOnlyDatabase() throws Exception {
+        JDBCConnection con = this.pool.getConnection(true);
+        try {
+            return database(con);
+        } finally {
+            con.close();
+        }
+    }
+
+    /**
+     * Test that read-write connections go to the primary database.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReadWrite() throws Exception {
+        JDBCConnection con = this.pool.getConnection();
+        assertEquals("PRIMARY", database(con));
+        con.close();
+        con = this.pool.getConnection(false);
+        assertEquals("PRIMARY", database(con));
+        con.close();
+    }
+
+    /**
+     * Test that the replicas take turns with round-robin selection.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRoundRobin() throws Exception {
+        this.pool.setStrategy(RoutingJDBCConnectionPool.Strategy.ROUND_ROBIN);
+        String first = this.readOnlyDatabase();
+        String second = this.readOnlyDatabase();
+        assertTrue(first.startsWith("REPLICA"));
+        assertTrue(second.startsWith("REPLICA"));
+        assertFalse(first.equals(second));
+        assertEquals(first, this.readOnlyDatabase());
+    }
+
+    /**
+     * Test that the replica with the fewest leased connections is selected.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLeastInUse() throws Exception {
+        JDBCConnection con = this.pool.getConnection(true);
+        String leased = database(con);
+        try {
+            for (int i = 0; i < 4; i++)
+                assertFalse(leased.equals(this.readOnlyDatabase()));
+        } finally {
+            con.close();
+        }
+    }
+
+    /**
+     * Test that a replica failing to provide a connection receives no traffic.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFailedReplica() throws Exception {
+        this.pool.getReplica(0).close();
+        for (int i = 0; i < 4; i++)
+            assertEquals("REPLICA1", this.readOnlyDatabase());
+        assertFalse(this.pool.isReplicaHealthy(0));
+        assertTrue(this.pool.isReplicaHealthy(1));
+
+        this.pool.getReplica(1).close();
+        assertEquals("PRIMARY", this.readOnlyDatabase());
+        assertFalse(this.pool.isReplicaHealthy(1));
+    }
+
+    /**
+     * Test that a replica without free connections keeps its health and that the read load is not moved to the primary database.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBusyReplica() throws Exception {
+        this.pool.setStrategy(RoutingJDBCConnectionPool.Strategy.ROUND_ROBIN);
+        JDBCConnection busy1 = this.pool.getReplica(0).getConnection();
+        JDBCConnection busy2 = this.pool.getReplica(0).getConnection();
+        for (int i = 0; i < 2; i++) {
+            JDBCConnection con = this.pool.getConnection(true, 50, TimeUnit.MILLISECONDS);
+            assertEquals("REPLICA1", database(con));
+            con.close();
+        }
+        assertTrue(this.pool.isReplicaHealthy(0));
+
+        JDBCConnection busy3 = this.pool.getReplica(1).getConnection();
+        JDBCConnection busy4 = this.pool.getReplica(1).getConnection();
+        try {
+            this.pool.getConnection(true, 50, TimeUnit.MILLISECONDS);
+            fail("Expected an SQLTimeoutException");
+        } catch (SQLTimeoutException ex) {
+            // expected, all replicas are busy
+        }
+        assertTrue(this.pool.isReplicaHealthy(0));
+        assertTrue(this.pool.isReplicaHealthy(1));
+
+        busy1.close();
+        busy2.close();
+        busy3.close();
+        busy4.close();
+        assertTrue(this.readOnlyDatabase().startsWith("REPLICA"));
+    }
+
+    /**
+     * Test that a replica unreachable at construction starts out unhealthy and receives traffic once it is reachable.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testUnreachableReplica() throws Exception {
+        JDBCConnectionFactory late = new GenericJDBCConnectionFactory("jdbc:h2:mem:LATE;IFEXISTS=TRUE", "sa", "");
+        RoutingJDBCConnectionPool routing = new RoutingJDBCConnectionPool(factory("PRIMARY"), new JDBCConnectionFactory[] { late }, 1, 2);
+        JDBCConnection keeper = null;
+        try {
+            assertFalse(routing.isReplicaHealthy(0));
+            JDBCConnection con = routing.getConnection(true);
+            assertEquals("PRIMARY", database(con));
+            con.close();
+
+            // creates the database and keeps it alive
+            keeper = factory("LATE").getConnection();
+            routing.setHealthCheckInterval(20, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < 500 && !routing.isReplicaHealthy(0); i++)
+                sleep(10);
+            assertTrue(routing.isReplicaHealthy(0));
+            con = routing.getConnection(true);
+            assertEquals("LATE", database(con));
+            con.close();
+        } finally {
+            routing.close();
+            if (keeper != null)
+                keeper.close();
+        }
+    }
+
+    /**
+     * Test that slow replicas are marked unhealthy by the health check and healthy again once they are fast.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSlowReplica() throws Exception {
+        this.pool.setSlowThreshold(1, TimeUnit.NANOSECONDS);
+        this.pool.setHealthCheckInterval(20, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 500 && (this.pool.isReplicaHealthy(0) || this.pool.isReplicaHealthy(1)); i++)
+            sleep(10);
+        assertFalse(this.pool.isReplicaHealthy(0));
+        assertFalse(this.pool.isReplicaHealthy(1));
+        assertEquals("PRIMARY", this.readOnlyDatabase());
+
+        this.pool.setSlowThreshold(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 500 && !(this.pool.isReplicaHealthy(0) && this.pool.isReplicaHealthy(1)); i++)
+            sleep(10);
+        assertTrue(this.pool.isReplicaHealthy(0));
+        assertTrue(this.pool.isReplicaHealthy(1));
+        assertTrue(this.readOnlyDatabase().startsWith("REPLICA"));
+    }
+}
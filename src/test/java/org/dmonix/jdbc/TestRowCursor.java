@@ -0,0 +1,143 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>RowCursor</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestRowCursor extends AbstractTestCase {
+
+    private static final RowMapper<Long> LONG_MAPPER = new RowMapper<Long>() {
+        public Long mapRow(ResultSet rs, int rowNumber) throws SQLException {
+            return rs.getLong(1);
+        }
+    };
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestRowCursor;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnectionPoolImpl pool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+    }
+
+    /**
+     * Test iterating all rows, the connection is returned once the last row has been read.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIterate() throws Exception {
+        RowCursor<Long> cursor = new RowCursor<Long>(this.pool, "SELECT X FROM SYSTEM_RANGE(1, ?)", LONG_MAPPER, 10000);
+        cursor.setFetchSize(100);
+        assertEquals(1, this.pool.getLeasedCount());
+
+        long sum = 0;
+        for (Long value : cursor)
+            sum += value;
+        assertEquals(10000L * 10001 / 2, sum);
+        assertEquals(10000, cursor.getRowCount());
+        assertEquals(0, this.pool.getLeasedCount());
+        assertFalse(cursor.hasNext());
+        try {
+            cursor.next();
+            fail("Expected a NoSuchElementException");
+        } catch (NoSuchElementException ex) {
+            // expected
+        }
+        try {
+            cursor.iterator();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Test closing a cursor before all rows have been read.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testClose() throws Exception {
+        RowCursor<Long> cursor = new RowCursor<Long>(this.pool, "SELECT X FROM SYSTEM_RANGE(1, 1000)", LONG_MAPPER);
+        Iterator<Long> it = cursor.iterator();
+        assertEquals(1L, it.next().longValue());
+        assertEquals(2L, it.next().longValue());
+        cursor.close();
+        cursor.close();
+        assertEquals(0, this.pool.getLeasedCount());
+        assertFalse(it.hasNext());
+
+        // a cursor that is never iterated also returns the connection
+        cursor = new RowCursor<Long>(this.pool, "SELECT X FROM SYSTEM_RANGE(1, 1000)", LONG_MAPPER);
+        cursor.close();
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+
+    /**
+     * Test that a failing query closes the cursor.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFailure() throws Exception {
+        RowCursor<Long> cursor = new RowCursor<Long>(this.pool, "SELECT 10 / (X - 3) FROM SYSTEM_RANGE(1, 5)", LONG_MAPPER);
+        try {
+            for (Long value : cursor)
+                assertNotNull(value);
+            fail("Expected an UncheckedSQLException");
+        } catch (UncheckedSQLException ex) {
+            assertNotNull(ex.getCause());
+        }
+        assertEquals(0, this.pool.getLeasedCount());
+
+        try {
+            new RowCursor<Long>(this.pool, "SELECT X FROM NO_SUCH_TABLE", LONG_MAPPER);
+            fail("Expected an SQLException");
+        } catch (SQLException ex) {
+            // expected
+        }
+        assertEquals(0, this.pool.getLeasedCount());
+    }
+
+    /**
+     * Test a cursor using a connection of the caller, the connection is left open.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCallerConnection() throws Exception {
+        JDBCConnection con = this.pool.getConnection();
+        try {
+            RowCursor<Long> cursor = new RowCursor<Long>(con, "SELECT X FROM SYSTEM_RANGE(?, ?)", LONG_MAPPER, 5L, 6L);
+            assertTrue(cursor.hasNext());
+            assertEquals(5L, cursor.next().longValue());
+            assertEquals(6L, cursor.next().longValue());
+            assertFalse(cursor.hasNext());
+            assertEquals(1, this.pool.getLeasedCount());
+
+            cursor = new RowCursor<Long>(con, "SELECT CAST(? AS BIGINT)", LONG_MAPPER, 7);
+            assertEquals(7L, cursor.next().longValue());
+            cursor.close();
+        } finally {
+            con.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.dmonix.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the class <code>SQLStatistics</code> using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestSQLStatistics extends AbstractTestCase {
+
+    private static final Logger logger = Logger.getLogger(SQLStatistics.class.getName());
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestSQLStatistics;DB_CLOSE_DELAY=-1", "sa", "");
+    private final List<String> messages = new ArrayList<String>();
+    private final Handler handler = new Handler() {
+        public void publish(LogRecord record) {
+            messages.add(record.getMessage());
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    };
+    private JDBCConnectionPoolImpl pool;
+    private JDBCConnection con;
+
+    @Before
+    public void setUp() throws Exception {
+        logger.addHandler(this.handler);
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 1);
+        this.con = this.pool.getConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        logger.removeHandler(this.handler);
+        this.con.close();
+        this.pool.close();
+    }
+
+    /**
+     * Executes a query selecting the provided value.
+     * 
+     * @param sql
+     *            The SQL
+     * @param value
+     *            The value
+     * @throws Exception
+     */
+    private void select(String sql, int value) throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement(sql);
+        try {
+            stmt.setInt(1, value);
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Test that the executions of a connection not belonging to a pool are recorded in the shared statistics.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPlainConnection() throws Exception {
+        String sql = "SELECT CAST(? AS INT) AS PLAIN_CONNECTION";
+        SQLStatistics statistics = SQLStatistics.getDefault();
+        JDBCConnection plain = this.factory.getConnection();
+        try {
+            LoggablePreparedStatement stmt = plain.prepareStatement(sql);
+            stmt.setInt(1, 1);
+            stmt.executeQuery().close();
+            stmt.close();
+        } finally {
+            plain.close();
+        }
+        assertEquals(1, statistics.getHistogram(sql).getCount());
+        assertNull(this.pool.getStatistics().getHistogram(sql));
+    }
+
+    /**
+     * Test normalizing SQL.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testNormalize() throws Exception {
+        assertEquals("SELECT * FROM T1 WHERE ID = ? AND NAME = ?", SQLStatistics.normalize("SELECT *  FROM T1\n WHERE ID = 42 AND NAME = 'it''s'"));
+        assertEquals("SELECT \"A 1\" FROM T WHERE X IN (?, ?)", SQLStatistics.normalize(" SELECT \"A 1\" FROM T WHERE X IN (1.5, ?) "));
+    }
+
+    /**
+     * Test that the executions are counted per normalized SQL.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testStatementStatistics() throws Exception {
+        SQLStatistics statistics = this.pool.getStatistics();
+        this.select("SELECT CAST(? AS INT) + 1", 1);
+        this.select("SELECT CAST(? AS INT) + 1", 2);
+        this.select("SELECT CAST(? AS INT)  +  2", 3);
+        try {
+            this.select("SELECT 1 / CAST(? AS INT)", 0);
+            fail("Expected an exception");
+        } catch (Exception ex) {
+            // expected
+        }
+
+        SQLStatementStatistics statement = statistics.getStatement("SELECT CAST(? AS INT) + 1");
+        assertEquals("SELECT CAST(? AS INT) + ?", statement.getSql());
+        assertEquals(3, statement.getExecutionCount());
+        assertEquals(0, statement.getFailureCount());
+        assertTrue(statement.getMaxTime() >= statement.getMeanTime());
+        assertEquals(3, statistics.getHistogram("SELECT CAST(? AS INT) + 3").getCount());
+
+        assertEquals(1, statistics.getStatement("SELECT 1 / CAST(? AS INT)").getFailureCount());
+        assertEquals(2, statistics.getStatementCount());
+        assertEquals(4, statistics.getExecutionCount());
+
+        statistics.resetStatistics();
+        assertEquals(0, statistics.getExecutionCount());
+    }
+
+    /**
+     * Test that slow queries are logged with their bind values.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSlowQueryLog() throws Exception {
+        SQLStatistics statistics = this.pool.getStatistics();
+        this.select("SELECT CAST(? AS INT)", 1);
+        assertEquals(0, statistics.getSlowQueryCount());
+        assertTrue(this.messages.isEmpty());
+
+        statistics.setSlowQueryThreshold(1, TimeUnit.NANOSECONDS);
+        try {
+            this.select("SELECT CAST(? AS INT)", 42);
+        } finally {
+            statistics.setSlowQueryThreshold(0, TimeUnit.NANOSECONDS);
+        }
+        assertEquals(1, statistics.getSlowQueryCount());
+        assertEquals(1, this.messages.size());
+        assertTrue(this.messages.get(0), this.messages.get(0).contains("SELECT CAST(42 AS INT)"));
+    }
+
+    /**
+     * Test reading the statistics using JMX.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testMBean() throws Exception {
+        SQLStatistics statistics = this.pool.getStatistics();
+        statistics.registerMBean("TestSQLStatistics");
+        try {
+            this.select("SELECT CAST(? AS INT)", 1);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.dmonix.jdbc:type=SQLStatistics,name=\"TestSQLStatistics\"");
+            assertEquals(1L, server.getAttribute(name, "ExecutionCount"));
+
+            CompositeData[] statements = (CompositeData[]) server.getAttribute(name, "Statements");
+            assertEquals(1, statements.length);
+            assertEquals("SELECT CAST(? AS INT)", statements[0].get("sql"));
+            assertEquals(1L, statements[0].get("executionCount"));
+        } finally {
+            statistics.unregisterMBean();
+        }
+    }
+}
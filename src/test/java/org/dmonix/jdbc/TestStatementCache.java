@@ -0,0 +1,156 @@
+package org.dmonix.jdbc;
+
+import java.sql.ResultSet;
+
+import org.dmonix.AbstractTestCase;
+import org.dmonix.jdbc.impl.JDBCConnectionImpl;
+import org.dmonix.jdbc.impl.JDBCConnectionPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the prepared statement cache of the pooled connections using an in-memory H2 database.
+ * 
+ * @author Peter Nerg
+ */
+public class TestStatementCache extends AbstractTestCase {
+
+    private final JDBCConnectionFactory factory = new GenericJDBCConnectionFactory("jdbc:h2:mem:TestStatementCache;DB_CLOSE_DELAY=-1", "sa", "");
+    private JDBCConnectionPoolImpl pool;
+    private JDBCConnectionImpl con;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = (JDBCConnectionPoolImpl) this.factory.getConnectionPool(1, 1);
+        this.pool.setStatementCacheSize(2);
+        this.con = (JDBCConnectionImpl) this.pool.getConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.con.close();
+        this.pool.close();
+    }
+
+    /**
+     * Executes a statement selecting the provided value.
+     * 
+     * @param stmt
+     *            The statement
+     * @param value
+     *            The value
+     * @throws Exception
+     */
+    private static void assertSelect(LoggablePreparedStatement stmt, int value) throws Exception {
+        stmt.setInt(1, value);
+        ResultSet rs = stmt.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(value, rs.getInt(1));
+        rs.close();
+    }
+
+    /**
+     * Test that a closed statement is reused.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testReuse() throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        assertSelect(stmt, 1);
+        stmt.close();
+        assertEquals(0, this.con.getStatementCacheHitCount());
+        assertEquals(1, this.con.getStatementCacheMissCount());
+
+        stmt = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        assertSelect(stmt, 2);
+        stmt.close();
+        assertEquals(1, this.con.getStatementCacheHitCount());
+        assertEquals(1, this.con.getStatementCacheMissCount());
+
+        // the cache survives the connection being returned to the pool
+        this.con.close();
+        this.con = (JDBCConnectionImpl) this.pool.getConnection();
+        this.con.prepareStatement("SELECT CAST(? AS INT)").close();
+        assertEquals(2, this.pool.getStatementCacheHitCount());
+    }
+
+    /**
+     * Test that a cached statement gets its original fetch size back when closed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFetchSizeRestored() throws Exception {
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        int original = stmt.getFetchSize();
+        stmt.setFetchSize(original + 10);
+        assertEquals(original + 10, stmt.getFetchSize());
+        assertSelect(stmt, 1);
+        stmt.close();
+
+        stmt = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        assertEquals(1, this.con.getStatementCacheHitCount());
+        assertEquals(original, stmt.getFetchSize());
+        stmt.close();
+    }
+
+    /**
+     * Test that the least recently used statement is evicted when the cache is full.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        this.con.prepareStatement("SELECT 1").close();
+        this.con.prepareStatement("SELECT 2").close();
+        this.con.prepareStatement("SELECT 1").close();
+        this.con.prepareStatement("SELECT 3").close(); // evicts SELECT 2
+        assertEquals(1, this.con.getStatementCacheHitCount());
+        assertEquals(3, this.con.getStatementCacheMissCount());
+
+        this.con.prepareStatement("SELECT 1").close();
+        this.con.prepareStatement("SELECT 2").close();
+        assertEquals(2, this.con.getStatementCacheHitCount());
+        assertEquals(4, this.con.getStatementCacheMissCount());
+    }
+
+    /**
+     * Test that a statement is not shared by two callers preparing the same SQL.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSameSqlInUse() throws Exception {
+        LoggablePreparedStatement stmt1 = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        LoggablePreparedStatement stmt2 = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        assertEquals(2, this.con.getStatementCacheMissCount());
+
+        assertSelect(stmt1, 1);
+        assertSelect(stmt2, 2);
+        stmt1.close();
+        stmt2.close();
+
+        this.con.prepareStatement("SELECT CAST(? AS INT)").close();
+        assertEquals(1, this.con.getStatementCacheHitCount());
+    }
+
+    /**
+     * Test that a disabled cache neither reuses nor counts statements.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        this.pool.setStatementCacheSize(0);
+        assertEquals(0, this.con.getStatementCacheSize());
+
+        LoggablePreparedStatement stmt = this.con.prepareStatement("SELECT CAST(? AS INT)");
+        assertSelect(stmt, 1);
+        stmt.close();
+        this.con.prepareStatement("SELECT CAST(? AS INT)").close();
+        assertEquals(0, this.con.getStatementCacheHitCount());
+        assertEquals(0, this.con.getStatementCacheMissCount());
+    }
+}
@@ -0,0 +1,150 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.Test;
+
+public class TestRejectionPolicy extends AbstractTestCase {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private final Runnable blocker = new Runnable() {
+        public void run() {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+            }
+        }
+    };
+
+    /**
+     * Creates a pool with one thread and a queue of one task, the thread is occupied and the queue is full.
+     * 
+     * @return The pool
+     * @throws Exception
+     */
+    private ThreadPool createFullPool() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1, 1);
+        threadPool.submit(this.blocker);
+        assertTrue(this.started.await(5, TimeUnit.SECONDS));
+        threadPool.submit(this.blocker);
+        return threadPool;
+    }
+
+    /**
+     * Test that the caller runs policy executes the task in the submitting thread.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCallerRuns() throws Exception {
+        ThreadPool threadPool = this.createFullPool();
+        threadPool.setRejectionPolicy(new CallerRunsPolicy());
+
+        final AtomicReference<Thread> executor = new AtomicReference<Thread>();
+        Future<?> future = threadPool.submit(new Runnable() {
+            public void run() {
+                executor.set(Thread.currentThread());
+            }
+        });
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), executor.get());
+        assertEquals(1, threadPool.getRejectedTaskCount());
+        this.latch.countDown();
+    }
+
+    /**
+     * Test that the drop oldest policy cancels the oldest queued task and queues the new task.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1, 1);
+        threadPool.setRejectionPolicy(new DropOldestPolicy());
+        threadPool.submit(this.blocker);
+        assertTrue(this.started.await(5, TimeUnit.SECONDS));
+        Future<?> oldest = threadPool.submit(this.blocker);
+
+        Future<String> newest = threadPool.submit(new Runnable() {
+            public void run() {
+            }
+        }, "newest");
+        this.latch.countDown();
+
+        assertEquals("newest", newest.get(5, TimeUnit.SECONDS));
+        try {
+            oldest.get(5, TimeUnit.SECONDS);
+        } catch (CancellationException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that the block policy waits for space in the queue.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBlock() throws Exception {
+        ThreadPool threadPool = this.createFullPool();
+        threadPool.setRejectionPolicy(new BlockPolicy(5, TimeUnit.SECONDS));
+
+        new Thread() {
+            public void run() {
+                TestRejectionPolicy.this.sleep(100);
+                latch.countDown();
+            }
+        }.start();
+
+        Future<String> future = threadPool.submit(new Runnable() {
+            public void run() {
+            }
+        }, "result");
+        assertEquals("result", future.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that the block policy rejects the task if there is no space in the queue within the timeout.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testBlockTimeout() throws Exception {
+        ThreadPool threadPool = this.createFullPool();
+        threadPool.setRejectionPolicy(new BlockPolicy(50, TimeUnit.MILLISECONDS));
+        try {
+            threadPool.submit(this.blocker);
+        } catch (RejectedExecutionException ex) {
+            setExceptionCaught();
+        }
+        this.latch.countDown();
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that getting a thread with a timeout returns null if there are no free threads.
+     * 
+     * @throws Exception
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testGetThreadTimeout() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1);
+        sleep(100); // let the thread become idle
+        PooledThread thread = threadPool.getThread(1, TimeUnit.SECONDS);
+        assertNotNull(thread);
+        assertNull(threadPool.getThread(50, TimeUnit.MILLISECONDS));
+        thread.setRunnable(this.blocker);
+        thread.execute();
+        this.latch.countDown();
+    }
+}
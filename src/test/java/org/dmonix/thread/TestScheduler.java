@@ -0,0 +1,141 @@
+package org.dmonix.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestScheduler extends AbstractTestCase {
+    private final Scheduler scheduler = new Scheduler(2);
+
+    @After
+    public void tearDown() {
+        this.scheduler.shutdown();
+    }
+
+    /**
+     * Test that a task is run once after the delay and that tasks are run in the order they are due.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSchedule() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<Long> late = this.scheduler.schedule(new Callable<Long>() {
+            public Long call() throws Exception {
+                return System.nanoTime();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Long> early = this.scheduler.schedule(new Callable<Long>() {
+            public Long call() throws Exception {
+                return System.nanoTime();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+
+        long lateTime = late.get(5, TimeUnit.SECONDS);
+        long earlyTime = early.get(5, TimeUnit.SECONDS);
+        assertTrue(earlyTime - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(lateTime - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(earlyTime < lateTime);
+        assertEquals(0, this.scheduler.getScheduledTaskCount());
+    }
+
+    /**
+     * Test that periodic tasks are run repeatedly until cancelled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPeriodic() throws Exception {
+        final CountDownLatch rate = new CountDownLatch(5);
+        final CountDownLatch delay = new CountDownLatch(5);
+        ScheduledFuture<?> rateFuture = this.scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                rate.countDown();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> delayFuture = this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                delay.countDown();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(rate.await(5, TimeUnit.SECONDS));
+        assertTrue(delay.await(5, TimeUnit.SECONDS));
+        assertTrue(rateFuture.cancel(false));
+        assertTrue(delayFuture.cancel(false));
+        assertTrue(rateFuture.isCancelled());
+        assertEquals(0, this.scheduler.getScheduledTaskCount());
+    }
+
+    /**
+     * Test that a periodic task that fails is not run again.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testPeriodicFailure() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = this.scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                throw new IllegalStateException("failed on purpose");
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+        sleep(100);
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * Test that a shut down scheduler cancels its tasks and rejects new tasks.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        ScheduledFuture<?> future = this.scheduler.schedule(new Runnable() {
+            public void run() {
+            }
+        }, 1, TimeUnit.HOURS);
+        this.scheduler.shutdown();
+        assertTrue(this.scheduler.isShutdown());
+        assertTrue(future.isCancelled());
+
+        try {
+            this.scheduler.schedule(new Runnable() {
+                public void run() {
+                }
+            }, 0, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that the shared scheduler can not be shut down.
+     */
+    @Test
+    public void testShutdownDefault() {
+        try {
+            Scheduler.getDefault().shutdown();
+        } catch (IllegalStateException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+}
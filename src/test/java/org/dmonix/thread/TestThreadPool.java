@@ -0,0 +1,503 @@
+package org.dmonix.thread;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.Test;
+
+public class TestThreadPool extends AbstractTestCase {
+
+    /**
+     * Test that a submitted callable is executed and its result is returned by the future.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitCallable() throws Exception {
+        ThreadPool threadPool = new ThreadPool(2);
+        Future<String> future = threadPool.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return "result";
+            }
+        });
+        assertEquals("result", future.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that more tasks than there are threads are queued and executed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitMoreTasksThanThreads() throws Exception {
+        ThreadPool threadPool = new ThreadPool(2);
+        final AtomicInteger counter = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(threadPool.submit(new Runnable() {
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            assertNull(future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(100, counter.get());
+    }
+
+    /**
+     * Test that no task is lost when many threads concurrently submit tasks while the pool threads go idle and are woken up.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentSubmit() throws Exception {
+        final ThreadPool threadPool = new ThreadPool(4, 100000);
+        final int producers = 8;
+        final int tasksPerProducer = 5000;
+        final CountDownLatch done = new CountDownLatch(producers * tasksPerProducer);
+        final Runnable task = new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < producers; i++) {
+            new Thread() {
+                public void run() {
+                    for (int j = 0; j < tasksPerProducer; j++) {
+                        threadPool.execute(task);
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue("Not all tasks were executed, " + done.getCount() + " remaining", done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, threadPool.getQueuedTaskCount());
+    }
+
+    /**
+     * Test that an elastic pool starts threads on demand and retires them after the keep-alive time.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testElasticPool() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1, 4, 100, TimeUnit.MILLISECONDS);
+        assertEquals(1, threadPool.getCurrentThreadCount());
+
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            threadPool.submit(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException ex) {
+                    }
+                }
+            });
+        }
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(4, threadPool.getCurrentThreadCount());
+        assertEquals(4, threadPool.getRunningThreadCount());
+
+        // the pool is at its maximum, further tasks are queued
+        Future<?> queued = threadPool.submit(new Runnable() {
+            public void run() {
+            }
+        });
+        assertEquals(4, threadPool.getCurrentThreadCount());
+        latch.countDown();
+        queued.get(5, TimeUnit.SECONDS);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (threadPool.getCurrentThreadCount() > 1 && System.currentTimeMillis() < deadline) {
+            sleep(50);
+        }
+        assertEquals(1, threadPool.getCurrentThreadCount());
+        assertEquals(0, threadPool.getRunningThreadCount());
+
+        // the remaining thread still executes tasks
+        assertNull(threadPool.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that an elastic pool without a minimum number of threads starts a new thread after all threads have been retired.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testElasticPoolFromZero() throws Exception {
+        ThreadPool threadPool = new ThreadPool(0, 2, 20, TimeUnit.MILLISECONDS);
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                return "result";
+            }
+        };
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("result", threadPool.submit(task).get(5, TimeUnit.SECONDS));
+            sleep(i * 10);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (threadPool.getCurrentThreadCount() > 0 && System.currentTimeMillis() < deadline) {
+            sleep(20);
+        }
+        assertEquals(0, threadPool.getCurrentThreadCount());
+        assertEquals("result", threadPool.submit(task).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test executing blocking tasks in virtual mode, on JVMs without virtual threads the pool shall fall back to platform mode.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testVirtualMode() throws Exception {
+        ThreadPool threadPool = new ThreadPool(ExecutionMode.VIRTUAL, 100, 1000);
+        assertEquals(VirtualThreads.isSupported() ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM, threadPool.getExecutionMode());
+
+        final CountDownLatch done = new CountDownLatch(500);
+        for (int i = 0; i < 500; i++) {
+            threadPool.submit(new Runnable() {
+                public void run() {
+                    sleep(1);
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(threadPool.getCurrentThreadCount() <= 100);
+    }
+
+    /**
+     * Test executing a recursive task that forks sub-tasks in work-stealing mode.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testWorkStealingMode() throws Exception {
+        ThreadPool threadPool = new ThreadPool(ExecutionMode.WORK_STEALING, 4, 1000);
+        assertEquals(ExecutionMode.WORK_STEALING, threadPool.getExecutionMode());
+
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        assertEquals(4999950000L, threadPool.invoke(new SumTask(values, 0, values.length)).longValue());
+        assertEquals(4999950000L, threadPool.submit(new SumTask(values, 0, values.length)).get(5, TimeUnit.SECONDS).longValue());
+
+        // plain tasks are also accepted
+        assertEquals("result", threadPool.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return "result";
+            }
+        }).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that fork/join tasks are not accepted in platform mode.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testForkJoinTaskInPlatformMode() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1);
+        try {
+            threadPool.invoke(new SumTask(new long[10], 0, 10));
+        } catch (IllegalStateException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that a task is rejected if the task queue is full.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitQueueFull() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                }
+            }
+        };
+
+        // occupy the only thread and then fill the queue
+        threadPool.submit(blocker);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        threadPool.submit(blocker);
+        try {
+            threadPool.submit(blocker);
+        } catch (RejectedExecutionException ex) {
+            setExceptionCaught();
+        }
+        latch.countDown();
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that an exception thrown by a task is reported by the future.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitFailingTask() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1);
+        Future<?> future = threadPool.submit(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failed on purpose");
+            }
+        });
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (java.util.concurrent.ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test the statistics on completed, failed and rejected tasks and the time histograms.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testStatistics() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        threadPool.execute(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                }
+                throw new IllegalStateException("failed on purpose");
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the only thread is busy, fill the queue
+        threadPool.execute(new Runnable() {
+            public void run() {
+            }
+        });
+        try {
+            threadPool.execute(new Runnable() {
+                public void run() {
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+        latch.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (threadPool.getCompletedTaskCount() < 2 && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+        assertEquals(2, threadPool.getCompletedTaskCount());
+        assertEquals(1, threadPool.getFailedTaskCount());
+        assertEquals(1, threadPool.getRejectedTaskCount());
+        assertEquals(3, threadPool.getThreadRequests());
+        assertEquals(2, threadPool.getAcquireTimeHistogram().getCount());
+        assertEquals(2, threadPool.getRunTimeHistogram().getCount());
+
+        threadPool.resetStatistics();
+        assertEquals(0, threadPool.getCompletedTaskCount());
+        assertEquals(0, threadPool.getRunTimeHistogram().getCount());
+    }
+
+    /**
+     * Test registering the pool as a MBean.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRegisterMBean() throws Exception {
+        ThreadPool threadPool = new ThreadPool(2, 100);
+        threadPool.registerMBean("testRegisterMBean");
+        try {
+            ObjectName name = new ObjectName("org.dmonix.thread:type=ThreadPool,name=\"testRegisterMBean\"");
+            assertEquals(100, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "QueueCapacity"));
+            assertEquals("PLATFORM", ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ExecutionMode"));
+            assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FailedTaskCount"));
+        } finally {
+            threadPool.unregisterMBean();
+        }
+    }
+
+    /**
+     * Test that a shut down pool executes the queued tasks and then terminates.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        ThreadPool threadPool = new ThreadPool(2, 4, 1, TimeUnit.MINUTES);
+        final AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            threadPool.submit(new Runnable() {
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+
+        threadPool.shutdown();
+        assertTrue(threadPool.isShutdown());
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(threadPool.isTerminated());
+        assertEquals(100, counter.get());
+        assertEquals(0, threadPool.getCurrentThreadCount());
+
+        try {
+            threadPool.submit(new Runnable() {
+                public void run() {
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            setExceptionCaught();
+        }
+        assertExceptionCaught();
+    }
+
+    /**
+     * Test that the tasks not executed within the deadline of a shutdown are cancelled and returned.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testShutdownDeadline() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        threadPool.submit(new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<?> queued = threadPool.submit(new Runnable() {
+            public void run() {
+            }
+        });
+
+        List<Runnable> abandoned = threadPool.shutdown(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, abandoned.size());
+        assertSame(queued, abandoned.get(0));
+        assertTrue(queued.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(threadPool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Test that pools in the virtual and work stealing modes terminate when shut down.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testShutdownModes() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            ThreadPool threadPool = new ThreadPool(mode, 4, 100);
+            Future<String> future = threadPool.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return "result";
+                }
+            });
+            assertEquals("result", future.get(5, TimeUnit.SECONDS));
+            assertTrue(threadPool.shutdown(5, TimeUnit.SECONDS).isEmpty());
+            assertTrue(threadPool.isTerminated());
+        }
+    }
+
+    /**
+     * Test the legacy way of getting a thread and executing a runnable on it.
+     * 
+     * @throws Exception
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testGetThread() throws Exception {
+        ThreadPool threadPool = new ThreadPool(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        PooledThread thread = threadPool.getThread();
+        thread.setRunnable(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        });
+        thread.execute();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Sums a range of an array by recursively splitting the range.
+     */
+    private static class SumTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final long[] values;
+        private final int from;
+        private final int to;
+
+        private SumTask(long[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Long compute() {
+            if (to - from <= 1000) {
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += values[i];
+                }
+                return sum;
+            }
+
+            int middle = (from + to) >>> 1;
+            SumTask left = new SumTask(values, from, middle);
+            left.fork();
+            return new SumTask(values, middle, to).compute() + left.join();
+        }
+    }
+}
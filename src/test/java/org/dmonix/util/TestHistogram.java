@@ -0,0 +1,65 @@
+package org.dmonix.util;
+
+import org.dmonix.AbstractTestCase;
+import org.junit.Test;
+
+public class TestHistogram extends AbstractTestCase {
+
+    /**
+     * Test that every value maps to a bucket whose range includes the value.
+     */
+    @Test
+    public void testBucketRange() {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = Histogram.indexOf(value);
+            assertTrue("value " + value, Histogram.highestValueOf(index) >= value);
+            if (index > 0)
+                assertTrue("value " + value, Histogram.highestValueOf(index - 1) < value);
+
+            index = Histogram.indexOf(value, 3);
+            assertTrue("value " + value, index < Histogram.bucketCount(3));
+            assertTrue("value " + value, Histogram.highestValueOf(index, 3) >= value);
+            if (index > 0)
+                assertTrue("value " + value, Histogram.highestValueOf(index - 1, 3) < value);
+        }
+        assertEquals(Histogram.bucketCount(5) - 1, Histogram.indexOf(Long.MAX_VALUE));
+    }
+
+    /**
+     * Test the percentiles of a coarse histogram.
+     */
+    @Test
+    public void testCoarsePercentiles() {
+        Histogram histogram = new Histogram(3);
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 * 0.13);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 * 0.13);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Test the percentiles of a uniform distribution.
+     */
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 * 0.04);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 * 0.04);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}